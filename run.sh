@@ -13,6 +13,10 @@
 # and can probably be lower. Setting it as the minimum also prevents
 # the JVM from having to dynamically allocate memory, which takes time.
 # -Xms128m -Xmx128m
+#
+# If application.cache.offheap is set, make sure the JVM is allowed
+# enough direct memory to hold it, e.g.:
+# -XX:MaxDirectMemorySize=512m
 
 JAR_PATH=`find target -type f -name "conciliator*.jar" -print`
 
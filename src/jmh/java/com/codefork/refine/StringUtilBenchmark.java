@@ -0,0 +1,50 @@
+package com.codefork.refine;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Levenshtein distance on the kinds of pairs VIAF and ORCID results are
+ * scored with: a query against a heading with dates and qualifiers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class StringUtilBenchmark {
+
+    @Param({ "short", "long" })
+    public String length;
+
+    private String query;
+    private String name;
+
+    @Setup
+    public void setUp() {
+        if ("short".equals(length)) {
+            query = "Charles Dickens";
+            name = "Dickens, Charles, 1812-1870";
+        } else {
+            query = "Chesterton, Gilbert Keith, author of The Man Who Was Thursday";
+            name = "Chesterton, G.K. (Gilbert Keith), 1874-1936. The man who was Thursday : a nightmare";
+        }
+    }
+
+    @Benchmark
+    public int levenshteinDistance() {
+        return StringUtil.levenshteinDistance(query, name);
+    }
+
+    @Benchmark
+    public double levenshteinDistanceRatio() {
+        return StringUtil.levenshteinDistanceRatio(query, name);
+    }
+
+}
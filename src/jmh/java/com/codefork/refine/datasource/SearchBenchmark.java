@@ -0,0 +1,61 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.SearchResponse;
+import com.codefork.refine.viaf.VIAF;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A batch of VIAF queries through WebServiceDataSource.search(), end to
+ * end except for the network: thread pool, URL building, parsing and
+ * scoring, with responses served by SimulatedConnectionFactory and the
+ * cache turned off.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SearchBenchmark {
+
+    private VIAF viaf;
+    private Map<String, SearchQuery> queries;
+
+    @Setup
+    public void setUp() {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        viaf = new VIAF(config, null, new ThreadPoolFactory(), new SimulatedConnectionFactory());
+        viaf.setCacheEnabled(false);
+
+        NameType person = new NameType("/people/person", "Person");
+        queries = new HashMap<>();
+        queries.put("q0", new SearchQuery("shakespeare", 3, person, "should"));
+        queries.put("q1", new SearchQuery("wittgenstein", 3, person, "should"));
+        queries.put("q2", new SearchQuery("steinbeck", 3, null, "should"));
+        queries.put("q3", new SearchQuery("Shakespeare, William, 1564-1616.", 3, person, "should"));
+    }
+
+    @TearDown
+    public void tearDown() {
+        viaf.shutdown();
+    }
+
+    @Benchmark
+    public Map<String, SearchResponse> search() {
+        return viaf.search(queries);
+    }
+
+}
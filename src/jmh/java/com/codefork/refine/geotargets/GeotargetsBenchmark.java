@@ -0,0 +1,52 @@
+package com.codefork.refine.geotargets;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.resources.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Jaro-Winkler lookups in the geotargets name index.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class GeotargetsBenchmark {
+
+    @Param({ "Berlin", "Munchen", "Frankfurt am Main", "x" })
+    public String query;
+
+    private Geotargets geotargets;
+    private SearchQuery searchQuery;
+
+    @Setup
+    public void setUp() {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        geotargets = new Geotargets(config, null, new ThreadPoolFactory(), null);
+        searchQuery = new SearchQuery(query, 3, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        geotargets.shutdown();
+    }
+
+    @Benchmark
+    public List<Result> search() {
+        return geotargets.search(searchQuery);
+    }
+
+}
@@ -0,0 +1,51 @@
+package com.codefork.refine.orcid;
+
+import com.codefork.refine.resources.Result;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses recorded ORCID search responses and records held in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OrcidParserBenchmark {
+
+    @Param({ "/orcid_results.xml", "/0000-0002-4166-6322.xml" })
+    public String fixture;
+
+    private byte[] xml;
+    private SAXParserFactory spf;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream is = getClass().getResourceAsStream(fixture)) {
+            xml = IOUtils.toByteArray(is);
+        }
+        spf = SAXParserFactory.newInstance();
+    }
+
+    @Benchmark
+    public List<Result> parse() throws Exception {
+        SAXParser parser = spf.newSAXParser();
+        OrcidParser orcidParser = new OrcidParser();
+        parser.parse(new ByteArrayInputStream(xml), orcidParser);
+        return orcidParser.getResults();
+    }
+
+}
@@ -0,0 +1,73 @@
+package com.codefork.refine.parsers.json;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads the first 3 docs of an OpenLibrary search response with 100 docs,
+ * made from the recorded one, by reading the whole tree and with a
+ * JsonArrayExtractor. Run with -prof gc to compare allocation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class JsonArrayExtractorBenchmark {
+
+    private static final int LIMIT = 3;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final JsonArrayExtractor extractor = new JsonArrayExtractor("/docs", "key", "title");
+    private byte[] json;
+
+    @Setup
+    public void setUp() throws Exception {
+        JsonNode root;
+        try (InputStream is = getClass().getResourceAsStream("/openlibrary_rainforest.json")) {
+            root = mapper.readTree(is);
+        }
+        ArrayNode docs = (ArrayNode) root.get("docs");
+        JsonNode doc = docs.get(0);
+        for (int i = 1; i < 100; i++) {
+            docs.add(doc.deepCopy());
+        }
+        json = mapper.writeValueAsBytes(root);
+    }
+
+    @Benchmark
+    public List<String> readTree() throws Exception {
+        List<String> titles = new ArrayList<>();
+        JsonNode docs = mapper.readTree(new ByteArrayInputStream(json)).get("docs");
+        Iterator<JsonNode> iter = docs.iterator();
+        while (iter.hasNext() && titles.size() < LIMIT) {
+            JsonNode doc = iter.next();
+            titles.add(doc.get("key").asText() + doc.get("title").asText());
+        }
+        return titles;
+    }
+
+    @Benchmark
+    public List<String> extract() throws Exception {
+        List<String> titles = new ArrayList<>();
+        for (ObjectNode doc : extractor.extract(new ByteArrayInputStream(json), LIMIT)) {
+            titles.add(doc.path("key").asText() + doc.path("title").asText());
+        }
+        return titles;
+    }
+
+}
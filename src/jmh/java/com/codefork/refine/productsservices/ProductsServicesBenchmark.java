@@ -0,0 +1,52 @@
+package com.codefork.refine.productsservices;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.resources.Result;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The Jaro-Winkler scan over every category's labels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProductsServicesBenchmark {
+
+    @Param({ "Bags & Packs", "Bags and Packs", "nothing like any category" })
+    public String query;
+
+    private ProductsServices productsServices;
+    private SearchQuery searchQuery;
+
+    @Setup
+    public void setUp() {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        productsServices = new ProductsServices(config, null, new ThreadPoolFactory(), null);
+        searchQuery = new SearchQuery(query, 3, null, null);
+    }
+
+    @TearDown
+    public void tearDown() {
+        productsServices.shutdown();
+    }
+
+    @Benchmark
+    public List<Result> search() {
+        return productsServices.search(searchQuery);
+    }
+
+}
@@ -0,0 +1,58 @@
+package com.codefork.refine.solr;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a recorded Solr response held in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SolrParserBenchmark {
+
+    private byte[] xml;
+    private SAXParserFactory spf;
+    private NameType nameType;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream is = getClass().getResourceAsStream("/solr_results.xml")) {
+            xml = IOUtils.toByteArray(is);
+        }
+        spf = SAXParserFactory.newInstance();
+        nameType = new NameType("/book/book", "Book");
+    }
+
+    @Benchmark
+    public List<Result> parse() throws Exception {
+        SAXParser parser = spf.newSAXParser();
+        SolrParser solrParser = new SolrParser("id", "title_display", null, null, nameType);
+        parser.parse(new ByteArrayInputStream(xml), solrParser);
+        return solrParser.getResults();
+    }
+
+    @Benchmark
+    public List<Result> parseMultiValueConcat() throws Exception {
+        SAXParser parser = spf.newSAXParser();
+        SolrParser solrParser = new SolrParser("id", "subject_topic_facet", MultiValueFieldStrategy.CONCAT, ", ", nameType);
+        parser.parse(new ByteArrayInputStream(xml), solrParser);
+        return solrParser.getResults();
+    }
+
+}
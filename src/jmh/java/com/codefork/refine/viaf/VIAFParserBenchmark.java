@@ -0,0 +1,82 @@
+package com.codefork.refine.viaf;
+
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import com.codefork.refine.viaf.sources.VIAFSource;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses recorded VIAF search responses held in memory, as a SAX handler,
+ * with the pull parser, which stops once the query limit is reached, and
+ * by feeding chunks to the parser.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VIAFParserBenchmark {
+
+    @Param({ "/shakespeare.xml", "/wittgenstein.xml", "/steinbeck_no_type.xml" })
+    public String fixture;
+
+    private byte[] xml;
+    private SAXParserFactory spf;
+    private VIAFSource source;
+    private SearchQuery query;
+
+    @Setup
+    public void setUp() throws Exception {
+        try (InputStream is = getClass().getResourceAsStream(fixture)) {
+            xml = IOUtils.toByteArray(is);
+        }
+        spf = SAXParserFactory.newInstance();
+        source = new VIAFSource();
+        query = new SearchQuery("shakespeare", 3, new NameType("/people/person", "Person"), "should");
+    }
+
+    @Benchmark
+    public List<Result> parse() throws Exception {
+        SAXParser parser = spf.newSAXParser();
+        VIAFParser viafParser = new VIAFParser(source, query);
+        parser.parse(new ByteArrayInputStream(xml), viafParser);
+        return viafParser.getResults();
+    }
+
+    @Benchmark
+    public List<Result> pullParse() throws Exception {
+        VIAFParser viafParser = new VIAFParser(source, query);
+        viafParser.parse(new ByteArrayInputStream(xml));
+        return viafParser.getResults();
+    }
+
+    /**
+     * Feeds the response in 8KB chunks, as the async HTTP client would.
+     */
+    @Benchmark
+    public List<Result> feed() throws Exception {
+        VIAFParser viafParser = new VIAFParser(source, query);
+        for (int offset = 0; offset < xml.length; offset += 8192) {
+            if (viafParser.feed(xml, offset, Math.min(8192, xml.length - offset))) {
+                break;
+            }
+        }
+        viafParser.endOfInput();
+        return viafParser.getResults();
+    }
+
+}
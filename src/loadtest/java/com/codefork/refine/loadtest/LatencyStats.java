@@ -0,0 +1,46 @@
+package com.codefork.refine.loadtest;
+
+import java.util.Arrays;
+
+/**
+ * Latencies and errors of the requests to one data source.
+ */
+public class LatencyStats {
+
+    private long[] latenciesNs = new long[1024];
+    private int count;
+    private int errors;
+
+    public synchronized void add(long latencyNs, boolean error) {
+        if (count == latenciesNs.length) {
+            latenciesNs = Arrays.copyOf(latenciesNs, count * 2);
+        }
+        latenciesNs[count++] = latencyNs;
+        if (error) {
+            errors++;
+        }
+    }
+
+    public synchronized int getCount() {
+        return count;
+    }
+
+    public synchronized int getErrors() {
+        return errors;
+    }
+
+    /**
+     * @param percentile e.g. 99 for the 99th percentile
+     * @return latency in ms, by the nearest-rank method
+     */
+    public synchronized double getPercentileMs(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(latenciesNs, count);
+        Arrays.sort(sorted);
+        int rank = (int) Math.ceil(percentile / 100.0 * count);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+}
@@ -0,0 +1,222 @@
+package com.codefork.refine.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.util.EntityUtils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Replays recorded OpenRefine requests against a running conciliator,
+ * with the upstream services replaced by a StubUpstreamServer, and
+ * reports throughput, latency percentiles and error rates per data source.
+ *
+ * Start conciliator pointing at the stub, then run the load test:
+ *
+ *   java -jar conciliator.jar --application.http.upstream-url=http://127.0.0.1:8099
+ *   mvn -P loadtest test -Dloadtest.args="--concurrency=16 --iterations=50"
+ *
+ * Each line of the requests file is a JSON object like:
+ *
+ *   {"path": "/reconcile/viaf", "params": {"queries": {"q0": {"query": "shakespeare"}}}}
+ *
+ * Params are sent form-encoded in a POST, as OpenRefine does; params
+ * that are JSON objects are sent as their JSON text. The data source is
+ * reported under the "datasource" field if there is one, otherwise the
+ * path after /reconcile/, e.g. viafproxy/BNF.
+ *
+ * Options (defaults in brackets):
+ *   --target              conciliator base URL [http://localhost:8080]
+ *   --requests            JSONL file of requests [the bundled loadtest-requests.jsonl]
+ *   --concurrency         number of concurrent clients [8]
+ *   --iterations          times to replay the file [10]
+ *   --stub-port           port for the stub server, 0 to not start one [8099]
+ *   --latency-ms          stub response latency [200]
+ *   --latency-jitter-ms   random +/- added to the latency [100]
+ *   --error-rate          share of stub responses that are 500s [0.01]
+ *   --too-many-requests-rate  share of stub responses that are 429s [0.02]
+ */
+public class LoadTest {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static class RecordedRequest {
+        String datasource;
+        String path;
+        List<NameValuePair> params = new ArrayList<>();
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        options.put("target", "http://localhost:8080");
+        options.put("concurrency", "8");
+        options.put("iterations", "10");
+        options.put("stub-port", "8099");
+        for (String arg : args) {
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Expected --option=value but got: " + arg);
+            }
+            String[] parts = arg.substring(2).split("=", 2);
+            options.put(parts[0], parts[1]);
+        }
+        return options;
+    }
+
+    private static List<RecordedRequest> readRequests(String path) throws Exception {
+        List<RecordedRequest> requests = new ArrayList<>();
+        try (InputStream is = path != null
+                ? new FileInputStream(new File(path))
+                : LoadTest.class.getResourceAsStream("/loadtest-requests.jsonl")) {
+            for (String line : IOUtils.readLines(is, StandardCharsets.UTF_8)) {
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                JsonNode node = mapper.readTree(line);
+                RecordedRequest request = new RecordedRequest();
+                request.path = node.path("path").asText();
+                request.datasource = node.has("datasource")
+                        ? node.get("datasource").asText()
+                        : datasourceFromPath(request.path);
+                Iterator<Map.Entry<String, JsonNode>> params = node.path("params").fields();
+                while (params.hasNext()) {
+                    Map.Entry<String, JsonNode> param = params.next();
+                    String value = param.getValue().isTextual()
+                            ? param.getValue().asText()
+                            : mapper.writeValueAsString(param.getValue());
+                    request.params.add(new BasicNameValuePair(param.getKey(), value));
+                }
+                requests.add(request);
+            }
+        }
+        return requests;
+    }
+
+    private static String datasourceFromPath(String path) {
+        int i = path.indexOf("/reconcile/");
+        return i != -1 ? path.substring(i + "/reconcile/".length()) : path;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        String target = options.get("target");
+        int concurrency = Integer.parseInt(options.get("concurrency"));
+        int iterations = Integer.parseInt(options.get("iterations"));
+        int stubPort = Integer.parseInt(options.get("stub-port"));
+
+        List<RecordedRequest> requests = readRequests(options.get("requests"));
+        if (requests.isEmpty()) {
+            System.err.println("No requests to replay");
+            return;
+        }
+
+        StubUpstreamServer stub = null;
+        if (stubPort > 0) {
+            StubUpstreamServer.Settings settings = new StubUpstreamServer.Settings();
+            settings.latencyMs = Long.parseLong(options.getOrDefault("latency-ms", String.valueOf(settings.latencyMs)));
+            settings.latencyJitterMs = Long.parseLong(options.getOrDefault("latency-jitter-ms", String.valueOf(settings.latencyJitterMs)));
+            settings.errorRate = Double.parseDouble(options.getOrDefault("error-rate", String.valueOf(settings.errorRate)));
+            settings.tooManyRequestsRate = Double.parseDouble(options.getOrDefault("too-many-requests-rate", String.valueOf(settings.tooManyRequestsRate)));
+            stub = new StubUpstreamServer(stubPort, settings);
+            System.out.println("Stub upstream server listening at " + stub.getUrl()
+                    + "; start conciliator with --application.http.upstream-url=" + stub.getUrl());
+        }
+
+        Map<String, LatencyStats> statsByDatasource = new ConcurrentHashMap<>();
+        int total = requests.size() * iterations;
+        AtomicInteger next = new AtomicInteger();
+
+        System.out.println(String.format("Replaying %d requests %d times against %s with %d clients",
+                requests.size(), iterations, target, concurrency));
+
+        try (CloseableHttpClient client = HttpClients.custom()
+                .setMaxConnTotal(concurrency)
+                .setMaxConnPerRoute(concurrency)
+                .setDefaultRequestConfig(RequestConfig.custom().setSocketTimeout(120000).build())
+                .build()) {
+
+            ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+            long start = System.nanoTime();
+            for (int i = 0; i < concurrency; i++) {
+                executor.execute(() -> {
+                    int n;
+                    while ((n = next.getAndIncrement()) < total) {
+                        RecordedRequest request = requests.get(n % requests.size());
+                        LatencyStats stats = statsByDatasource.computeIfAbsent(request.datasource, k -> new LatencyStats());
+                        HttpPost post = new HttpPost(target + request.path);
+                        post.setEntity(new UrlEncodedFormEntity(request.params, StandardCharsets.UTF_8));
+                        long requestStart = System.nanoTime();
+                        boolean error;
+                        try (CloseableHttpResponse response = client.execute(post)) {
+                            EntityUtils.consume(response.getEntity());
+                            int status = response.getStatusLine().getStatusCode();
+                            error = status < 200 || status >= 300;
+                        } catch (Exception e) {
+                            error = true;
+                        }
+                        stats.add(System.nanoTime() - requestStart, error);
+                    }
+                });
+            }
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            double elapsedSecs = (System.nanoTime() - start) / 1e9;
+
+            report(new TreeMap<>(statsByDatasource), elapsedSecs);
+        } finally {
+            if (stub != null) {
+                System.out.println(String.format("Stub upstream: %d requests, %d 500s, %d 429s, %d without a recording",
+                        stub.numRequests.get(), stub.numErrors.get(), stub.numTooManyRequests.get(), stub.numUnmatched.get()));
+                stub.close();
+            }
+        }
+    }
+
+    private static void report(Map<String, LatencyStats> statsByDatasource, double elapsedSecs) {
+        String format = "%-20s %8s %10s %10s %10s %8s%n";
+        System.out.printf(format, "datasource", "requests", "req/s", "p50 ms", "p99 ms", "errors");
+        for (Map.Entry<String, LatencyStats> entry : statsByDatasource.entrySet()) {
+            printRow(format, entry.getKey(), entry.getValue(), elapsedSecs);
+        }
+        int count = 0;
+        int errors = 0;
+        for (LatencyStats stats : statsByDatasource.values()) {
+            count += stats.getCount();
+            errors += stats.getErrors();
+        }
+        System.out.println(String.format("total: %d requests in %.1f s, %.1f req/s, %.2f%% errors",
+                count, elapsedSecs, count / elapsedSecs, count > 0 ? 100.0 * errors / count : 0.0));
+    }
+
+    private static void printRow(String format, String name, LatencyStats stats, double elapsedSecs) {
+        System.out.printf(format, name,
+                stats.getCount(),
+                String.format("%.1f", stats.getCount() / elapsedSecs),
+                String.format("%.1f", stats.getPercentileMs(50)),
+                String.format("%.1f", stats.getPercentileMs(99)),
+                String.format("%.2f%%", stats.getCount() > 0 ? 100.0 * stats.getErrors() / stats.getCount() : 0.0));
+    }
+
+}
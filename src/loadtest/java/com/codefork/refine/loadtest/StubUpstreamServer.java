@@ -0,0 +1,163 @@
+package com.codefork.refine.loadtest;
+
+import com.codefork.refine.datasource.SimulatedConnectionFactory;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Stands in for the upstream services (VIAF, ORCID, OpenLibrary, Solr...),
+ * answering with the recorded responses that SimulatedConnectionFactory
+ * uses, after a configurable latency, and failing a configurable share
+ * of requests with 500 or 429 responses.
+ *
+ * Conciliator sends requests here when application.http.upstream-url is
+ * set to this server's URL; see RedirectingConnectionFactory for how the
+ * original URL is encoded in the path. URLs without a recording are
+ * answered with a recording from the same host and endpoint, so replayed
+ * traffic doesn't have to match the fixtures.
+ */
+public class StubUpstreamServer implements Closeable {
+
+    public static class Settings {
+        long latencyMs = 200;
+        long latencyJitterMs = 100;
+        double errorRate = 0.01;
+        double tooManyRequestsRate = 0.02;
+        int retryAfterSecs = 1;
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Settings settings;
+
+    // fixtures by URL, and by host and last path segment for URLs without one
+    private final Map<String, String> fixtures;
+    private final Map<String, String> fallbackFixtures = new TreeMap<>();
+    private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+    final AtomicLong numRequests = new AtomicLong();
+    final AtomicLong numErrors = new AtomicLong();
+    final AtomicLong numTooManyRequests = new AtomicLong();
+    final AtomicLong numUnmatched = new AtomicLong();
+
+    public StubUpstreamServer(int port, Settings settings) throws IOException {
+        this.settings = settings;
+        this.fixtures = new TreeMap<>(new SimulatedConnectionFactory().getUrlsToFiles());
+        for (Map.Entry<String, String> entry : fixtures.entrySet()) {
+            fallbackFixtures.putIfAbsent(endpointKey(entry.getKey()), entry.getValue());
+        }
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        executor = Executors.newCachedThreadPool(r -> {
+            Thread t = new Thread(r, "stub-upstream");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return host and last path segment of a URL, e.g.
+     * pub.orcid.org/record for https://pub.orcid.org/v2.1/0000-0002-4166-6322/record
+     */
+    private static String endpointKey(String url) {
+        String withoutQuery = url.split("\\?", 2)[0];
+        String withoutScheme = withoutQuery.substring(withoutQuery.indexOf("//") + 2);
+        String host = withoutScheme.split("/", 2)[0];
+        String[] segments = withoutScheme.split("/");
+        return host + "/" + (segments.length > 1 ? segments[segments.length - 1] : "");
+    }
+
+    private byte[] getBody(String resource) throws IOException {
+        byte[] body = bodies.get(resource);
+        if (body == null) {
+            try (InputStream is = getClass().getResourceAsStream(resource)) {
+                body = IOUtils.toByteArray(is);
+            }
+            bodies.put(resource, body);
+        }
+        return body;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        numRequests.incrementAndGet();
+        try {
+            // path is /SCHEME/HOST/PATH
+            String[] parts = exchange.getRequestURI().getRawPath().substring(1).split("/", 3);
+            String query = exchange.getRequestURI().getRawQuery();
+            String url = parts[0] + "://" + (parts.length > 1 ? parts[1] : "") + "/"
+                    + (parts.length > 2 ? parts[2] : "") + (query != null ? "?" + query : "");
+
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long latency = settings.latencyMs;
+            if (settings.latencyJitterMs > 0) {
+                latency += random.nextLong(-settings.latencyJitterMs, settings.latencyJitterMs + 1);
+            }
+            if (latency > 0) {
+                Thread.sleep(latency);
+            }
+
+            double roll = random.nextDouble();
+            if (roll < settings.tooManyRequestsRate) {
+                numTooManyRequests.incrementAndGet();
+                exchange.getResponseHeaders().add("Retry-After", String.valueOf(settings.retryAfterSecs));
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            if (roll < settings.tooManyRequestsRate + settings.errorRate) {
+                numErrors.incrementAndGet();
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+
+            String resource = fixtures.get(url);
+            if (resource == null) {
+                resource = fallbackFixtures.get(endpointKey(url));
+            }
+            if (resource == null) {
+                numUnmatched.incrementAndGet();
+                exchange.sendResponseHeaders(404, -1);
+                return;
+            }
+
+            byte[] body = getBody(resource);
+            exchange.getResponseHeaders().add("Content-Type",
+                    resource.endsWith(".json") ? "application/json" : "application/xml");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+}
@@ -1,12 +1,20 @@
 package com.codefork.refine;
 
+import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.datasource.LiveConnectionFactory;
+import com.codefork.refine.datasource.PooledConnectionFactory;
+import com.codefork.refine.datasource.RedirectingConnectionFactory;
 import org.apache.commons.logging.LogFactory;
 import org.ehcache.config.CacheConfiguration;
 import org.ehcache.config.builders.CacheConfigurationBuilder;
 import org.ehcache.config.builders.ResourcePoolsBuilder;
 import org.ehcache.core.config.DefaultConfiguration;
 import org.ehcache.expiry.Expirations;
+import org.ehcache.impl.config.persistence.DefaultPersistenceConfiguration;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
 import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.spi.service.ServiceCreationConfiguration;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -15,11 +23,15 @@ import org.springframework.cache.annotation.EnableCaching;
 import org.springframework.cache.jcache.JCacheCacheManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.annotation.Bean;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.filter.CommonsRequestLoggingFilter;
 import org.springframework.web.servlet.mvc.method.annotation.AbstractJsonpResponseBodyAdvice;
 
+import java.io.File;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +39,7 @@ import java.util.concurrent.TimeUnit;
 @EnableCaching
 public class Application {
     public static final String CACHE_DEFAULT = "default";
+    public static final String CACHE_EXTENSION = "extension";
 
     /**
      * Needed for jsonp support 
@@ -44,38 +57,124 @@ public class Application {
 
     @Bean
     public CacheManager cacheManager(@Autowired ApplicationConfig applicationConfig) {
-        long ttl = applicationConfig.getCache().getTtl();
+        ApplicationConfig.Cache cacheConfig = applicationConfig.getCache();
+        long ttl = cacheConfig.getTtl();
 
-        MemSize memSize = MemSize.valueOf(applicationConfig.getCache().getSize());
+        MemSize memSize = MemSize.valueOf(cacheConfig.getSize());
 
         LogFactory.getLog(getClass()).info(
                 String.format("Initializing cache TTL=%d secs, size=%d %s",
                         ttl, memSize.getSize(), memSize.getUnit().toString()));
 
-        org.ehcache.config.CacheConfiguration<Object, Object> cacheConfiguration = CacheConfigurationBuilder
-                .newCacheConfigurationBuilder(Object.class, Object.class,
-                        ResourcePoolsBuilder.newResourcePoolsBuilder()
-                                .heap(memSize.getSize(), memSize.getUnit()))
-                .withExpiry(Expirations.timeToLiveExpiration(new org.ehcache.expiry.Duration(ttl, TimeUnit.SECONDS)))
-                .build();
+        ResourcePoolsBuilder resourcePools = ResourcePoolsBuilder.newResourcePoolsBuilder()
+                .heap(memSize.getSize(), memSize.getUnit());
 
-        Map<String, CacheConfiguration<?, ?>> caches = new HashMap<>();
-        caches.put(CACHE_DEFAULT, cacheConfiguration);
+        // entries in the off-heap and disk tiers are stored in serialized form,
+        // so they don't count against the heap or add to GC work
+        boolean serialized = false;
+
+        if (!StringUtils.isEmpty(cacheConfig.getOffheap())) {
+            MemSize offheapSize = MemSize.valueOf(cacheConfig.getOffheap());
+            LogFactory.getLog(getClass()).info(
+                    String.format("Cache off-heap tier size=%d %s",
+                            offheapSize.getSize(), offheapSize.getUnit().toString()));
+            resourcePools = resourcePools.offheap(offheapSize.getSize(), offheapSize.getUnit());
+            serialized = true;
+        }
+
+        List<ServiceCreationConfiguration<?>> serviceConfigurations = new ArrayList<>();
+
+        ApplicationConfig.Cache.Disk disk = cacheConfig.getDisk();
+        if (disk != null && !StringUtils.isEmpty(disk.getPath())) {
+            MemSize diskSize = MemSize.valueOf(disk.getSize());
+            LogFactory.getLog(getClass()).info(
+                    String.format("Cache persistent disk tier path=%s size=%d %s",
+                            disk.getPath(), diskSize.getSize(), diskSize.getUnit().toString()));
+            resourcePools = resourcePools.disk(diskSize.getSize(), diskSize.getUnit(), true);
+            serviceConfigurations.add(new DefaultPersistenceConfiguration(new File(disk.getPath())));
+            serialized = true;
+        }
+
+        CacheConfigurationBuilder<Object, Object> cacheConfigurationBuilder = CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class, resourcePools)
+                .withExpiry(Expirations.timeToLiveExpiration(new org.ehcache.expiry.Duration(ttl, TimeUnit.SECONDS)));
 
         EhcacheCachingProvider provider = (EhcacheCachingProvider) javax.cache.Caching.getCachingProvider();
 
+        if (serialized) {
+            // keys are Strings and values are Lists of Results, but the cache
+            // is typed as Object/Object so we need to supply the serializers
+            cacheConfigurationBuilder = cacheConfigurationBuilder
+                    .withKeySerializer(new PlainJavaSerializer<>(provider.getDefaultClassLoader()))
+                    .withValueSerializer(new ResultListSerializer(provider.getDefaultClassLoader()));
+        }
+
+        Map<String, CacheConfiguration<?, ?>> caches = new HashMap<>();
+        caches.put(CACHE_DEFAULT, cacheConfigurationBuilder.build());
+
+        // heap only, since its values aren't Results
+        ApplicationConfig.Cache.Extension extensionConfig = cacheConfig.getExtension();
+        MemSize extensionSize = MemSize.valueOf(extensionConfig.getSize());
+        LogFactory.getLog(getClass()).info(
+                String.format("Initializing extension cache TTL=%d secs, size=%d %s",
+                        extensionConfig.getTtl(), extensionSize.getSize(), extensionSize.getUnit().toString()));
+        caches.put(CACHE_EXTENSION, CacheConfigurationBuilder
+                .newCacheConfigurationBuilder(Object.class, Object.class,
+                        ResourcePoolsBuilder.newResourcePoolsBuilder().heap(extensionSize.getSize(), extensionSize.getUnit()))
+                .withExpiry(Expirations.timeToLiveExpiration(new org.ehcache.expiry.Duration(extensionConfig.getTtl(), TimeUnit.SECONDS)))
+                .build());
+
         // when our cacheManager bean is re-created several times for
         // diff test configurations, this provider seems to hang on to state
         // causing cache settings to not be right. so we always close().
         provider.close();
 
         DefaultConfiguration configuration = new DefaultConfiguration(
-                caches, provider.getDefaultClassLoader());
+                caches, provider.getDefaultClassLoader(),
+                serviceConfigurations.toArray(new ServiceCreationConfiguration<?>[0]));
 
-        return new JCacheCacheManager(
+        return new ClosingJCacheCacheManager(
                 provider.getCacheManager(provider.getDefaultURI(), configuration));
     }
 
+    /**
+     * Closes the underlying JCache CacheManager on shutdown, so that
+     * the persistent disk tier (if any) is written out cleanly and
+     * can be reused on the next start.
+     */
+    public static class ClosingJCacheCacheManager extends JCacheCacheManager implements DisposableBean {
+
+        public ClosingJCacheCacheManager(javax.cache.CacheManager cacheManager) {
+            super(cacheManager);
+        }
+
+        @Override
+        public void destroy() {
+            if (!getCacheManager().isClosed()) {
+                getCacheManager().close();
+            }
+        }
+    }
+
+    /**
+     * Connections to upstream services. The pooled factory reuses
+     * kept-alive connections; set application.http.pooled=false to open
+     * a new HttpURLConnection for every request instead.
+     * If application.http.upstream-url is set, requests go there instead
+     * of to the upstream services.
+     */
+    @Bean
+    public ConnectionFactory httpConnectionFactory(@Autowired ApplicationConfig applicationConfig) {
+        ApplicationConfig.Http httpConfig = applicationConfig.getHttp();
+        ConnectionFactory connectionFactory = httpConfig.isPooled()
+                ? new PooledConnectionFactory(httpConfig)
+                : new LiveConnectionFactory(httpConfig);
+        if (!StringUtils.isEmpty(httpConfig.getUpstreamUrl())) {
+            return new RedirectingConnectionFactory(connectionFactory, httpConfig.getUpstreamUrl());
+        }
+        return connectionFactory;
+    }
+
     /**
      * set property logging.level.org.springframework.web.filter=DEBUG
      * for logging output
@@ -3,6 +3,9 @@ package com.codefork.refine;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Application configuration
  */
@@ -11,9 +14,60 @@ import org.springframework.context.annotation.Configuration;
 public class ApplicationConfig {
 
     public static class Cache {
+
+        public static class Disk {
+            private String path;
+            private String size;
+
+            public String getPath() {
+                return path;
+            }
+
+            public void setPath(String path) {
+                this.path = path;
+            }
+
+            public String getSize() {
+                return size;
+            }
+
+            public void setSize(String size) {
+                this.size = size;
+            }
+        }
+
+        /**
+         * Settings for the cache of data extension cells, column metadata
+         * and proposed properties, which change less often than search
+         * results and are more expensive to compute.
+         */
+        public static class Extension {
+            private long ttl = 86400;
+            private String size = "16MB";
+
+            public long getTtl() {
+                return ttl;
+            }
+
+            public void setTtl(long ttl) {
+                this.ttl = ttl;
+            }
+
+            public String getSize() {
+                return size;
+            }
+
+            public void setSize(String size) {
+                this.size = size;
+            }
+        }
+
         private boolean enabled;
         private long ttl;
         private String size;
+        private String offheap;
+        private Disk disk = new Disk();
+        private Extension extension = new Extension();
 
         public boolean isEnabled() {
             return enabled;
@@ -38,10 +92,173 @@ public class ApplicationConfig {
         public void setSize(String size) {
             this.size = size;
         }
+
+        public String getOffheap() {
+            return offheap;
+        }
+
+        public void setOffheap(String offheap) {
+            this.offheap = offheap;
+        }
+
+        public Disk getDisk() {
+            return disk;
+        }
+
+        public void setDisk(Disk disk) {
+            this.disk = disk;
+        }
+
+        public Extension getExtension() {
+            return extension;
+        }
+
+        public void setExtension(Extension extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * Rate limiting and retry settings for requests to
+     * the upstream service of a data source
+     */
+    public static class RateLimit {
+        private double permitsPerSecond = 0;
+        private int burst = 1;
+        private int maxRetries = 2;
+        private long backoffMs = 500;
+        private long maxRetryDelayMs = 10000;
+        private int maxInFlight = 0;
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public void setPermitsPerSecond(double permitsPerSecond) {
+            this.permitsPerSecond = permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        public void setBurst(int burst) {
+            this.burst = burst;
+        }
+
+        public int getMaxRetries() {
+            return maxRetries;
+        }
+
+        public void setMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+        }
+
+        public long getBackoffMs() {
+            return backoffMs;
+        }
+
+        public void setBackoffMs(long backoffMs) {
+            this.backoffMs = backoffMs;
+        }
+
+        public long getMaxRetryDelayMs() {
+            return maxRetryDelayMs;
+        }
+
+        public void setMaxRetryDelayMs(long maxRetryDelayMs) {
+            this.maxRetryDelayMs = maxRetryDelayMs;
+        }
+
+        public int getMaxInFlight() {
+            return maxInFlight;
+        }
+
+        public void setMaxInFlight(int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+        }
+    }
+
+    /**
+     * Settings for HTTP connections to upstream services
+     */
+    public static class Http {
+        private boolean pooled = true;
+        private int maxConnections = 100;
+        private int maxConnectionsPerHost = 20;
+        private int connectTimeout = 20000;
+        private int readTimeout = 20000;
+        private long idleTimeoutMs = 30000;
+        private String upstreamUrl;
+
+        public boolean isPooled() {
+            return pooled;
+        }
+
+        public void setPooled(boolean pooled) {
+            this.pooled = pooled;
+        }
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost;
+        }
+
+        public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public int getReadTimeout() {
+            return readTimeout;
+        }
+
+        public void setReadTimeout(int readTimeout) {
+            this.readTimeout = readTimeout;
+        }
+
+        public long getIdleTimeoutMs() {
+            return idleTimeoutMs;
+        }
+
+        public void setIdleTimeoutMs(long idleTimeoutMs) {
+            this.idleTimeoutMs = idleTimeoutMs;
+        }
+
+        /**
+         * @return base URL to send all upstream requests to instead,
+         * e.g. a stub server for load tests; normally empty
+         */
+        public String getUpstreamUrl() {
+            return upstreamUrl;
+        }
+
+        public void setUpstreamUrl(String upstreamUrl) {
+            this.upstreamUrl = upstreamUrl;
+        }
     }
 
     private Cache cache;
 
+    private Http http = new Http();
+
+    // keyed by data source config name
+    private Map<String, RateLimit> rateLimit = new HashMap<>();
+
     public Cache getCache() {
         return cache;
     }
@@ -49,4 +266,28 @@ public class ApplicationConfig {
     public void setCache(Cache cache) {
         this.cache = cache;
     }
+
+    public Http getHttp() {
+        return http;
+    }
+
+    public void setHttp(Http http) {
+        this.http = http;
+    }
+
+    public Map<String, RateLimit> getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(Map<String, RateLimit> rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    /**
+     * @return rate limit settings for the given data source, or the defaults
+     */
+    public RateLimit getRateLimitFor(String configName) {
+        RateLimit settings = rateLimit.get(configName);
+        return settings != null ? settings : new RateLimit();
+    }
 }
@@ -0,0 +1,162 @@
+package com.codefork.refine;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Additive-increase/multiplicative-decrease limit on the number of
+ * requests in flight to an upstream service.
+ *
+ * Every completed request raises the limit by 1/limit, so it grows by about
+ * one for each limit's worth of successful requests. A 429 or 503 response
+ * halves it, and recent responses getting much slower than usual cut it a little. Only one
+ * cut is made per round of requests: responses to requests that were sent
+ * before the last cut don't cut it again, since they say nothing about the
+ * new limit.
+ */
+public class ConcurrencyLimiter {
+
+    /** multiplier applied to the limit on a 429 or 503 */
+    private static final double BACKOFF_RATIO = 0.5;
+
+    /** multiplier applied to the limit when latency goes up */
+    private static final double LATENCY_BACKOFF_RATIO = 0.9;
+
+    /** recent latency this many times the long-term latency counts as congestion */
+    private static final double LATENCY_TOLERANCE = 2.0;
+
+    /** weight of each sample in the recent and long-term average latencies */
+    private static final double SHORT_LATENCY_SMOOTHING = 0.3;
+    private static final double LONG_LATENCY_SMOOTHING = 0.02;
+
+    /** don't judge latency until we have this many samples */
+    private static final int MIN_LATENCY_SAMPLES = 10;
+
+    private Log log = LogFactory.getLog(ConcurrencyLimiter.class);
+
+    private final int minLimit;
+    private int maxLimit;
+    private double limit;
+    private int inFlight = 0;
+
+    private double shortLatencyNanos = 0;
+    private double longLatencyNanos = 0;
+    private long numLatencySamples = 0;
+    private long lastDecreaseNanos;
+
+    public ConcurrencyLimiter(int initialLimit) {
+        this(initialLimit, 1, initialLimit);
+    }
+
+    public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit) {
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = initialLimit;
+        // nanoTime() has an arbitrary origin, so start the clock here
+        this.lastDecreaseNanos = System.nanoTime();
+    }
+
+    /**
+     * Take a slot for a new request, if the limit allows it. A caller that
+     * gets a slot must give it back with exactly one call to onSuccess(),
+     * onDropped() or release().
+     * @return true if the request can be sent now
+     */
+    public synchronized boolean tryAcquire() {
+        if (inFlight < getLimit()) {
+            inFlight++;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Give back a slot without saying anything about the upstream,
+     * e.g. because the request failed for some unrelated reason.
+     */
+    public synchronized void release() {
+        inFlight--;
+    }
+
+    /**
+     * Give back the slot of a request that got a response.
+     * @param startNanos System.nanoTime() when the request was sent
+     */
+    public synchronized void onSuccess(long startNanos) {
+        inFlight--;
+        long latency = System.nanoTime() - startNanos;
+
+        if (numLatencySamples == 0) {
+            shortLatencyNanos = latency;
+            longLatencyNanos = latency;
+        } else {
+            shortLatencyNanos += SHORT_LATENCY_SMOOTHING * (latency - shortLatencyNanos);
+            longLatencyNanos += LONG_LATENCY_SMOOTHING * (latency - longLatencyNanos);
+        }
+        numLatencySamples++;
+
+        if (numLatencySamples >= MIN_LATENCY_SAMPLES
+                && shortLatencyNanos > LATENCY_TOLERANCE * longLatencyNanos) {
+            decrease(startNanos, LATENCY_BACKOFF_RATIO, "latency went up");
+        } else if (inFlight + 1 >= getLimit() / 2) {
+            // only grow if we're actually using the limit we have
+            limit = Math.min(maxLimit, limit + 1.0 / limit);
+        }
+    }
+
+    /**
+     * Give back the slot of a request the upstream turned away (429 or 503).
+     * @param startNanos System.nanoTime() when the request was sent
+     */
+    public synchronized void onDropped(long startNanos) {
+        inFlight--;
+        decrease(startNanos, BACKOFF_RATIO, "request was dropped");
+    }
+
+    private void decrease(long startNanos, double ratio, String reason) {
+        if (startNanos - lastDecreaseNanos < 0) {
+            return;
+        }
+        int oldLimit = getLimit();
+        limit = Math.max(minLimit, limit * ratio);
+        lastDecreaseNanos = System.nanoTime();
+        if (getLimit() != oldLimit) {
+            log.info(String.format("Decreasing concurrency limit (%s), new limit = %d", reason, getLimit()));
+        }
+    }
+
+    /**
+     * Set both the current and the maximum limit
+     */
+    public synchronized void setLimit(int newLimit) {
+        maxLimit = Math.max(minLimit, newLimit);
+        limit = maxLimit;
+    }
+
+    /**
+     * @return number of requests that may be in flight right now
+     */
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return number of requests in flight right now
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return true if the exception says the upstream is overloaded or throttling us
+     */
+    public static boolean isOverloaded(Throwable t) {
+        String s = t.toString();
+        return s.contains("HTTP response code: 429") || s.contains("HTTP response code: 503");
+    }
+
+}
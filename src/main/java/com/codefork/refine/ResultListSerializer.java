@@ -0,0 +1,247 @@
+package com.codefork.refine;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ehcache serializer for the Lists of Results we store in the cache.
+ *
+ * Java serialization writes class descriptors and an object graph for every
+ * entry, which is several times the size of the actual data. This writes
+ * strings as length-prefixed UTF-8 and each distinct NameType in an entry only
+ * once, with results referring to them by index. NameTypes are interned again
+ * when entries are read back, since almost every result of a data source
+ * shares the same handful of types.
+ *
+ * Anything that isn't a List of Results falls back to Java serialization.
+ */
+public class ResultListSerializer implements Serializer<Object> {
+
+    private static final byte FORMAT_RESULTS = 1;
+    private static final byte FORMAT_JAVA = 2;
+
+    /** stop interning once there are this many distinct types */
+    private static final int MAX_INTERNED_TYPES = 10000;
+
+    private static final Map<String, NameType> internedTypes = new ConcurrentHashMap<>();
+
+    private final PlainJavaSerializer<Object> fallback;
+
+    public ResultListSerializer(ClassLoader classLoader) {
+        fallback = new PlainJavaSerializer<>(classLoader);
+    }
+
+    private static boolean isResultList(Object object) {
+        if (!(object instanceof List)) {
+            return false;
+        }
+        for (Object item : (List<?>) object) {
+            if (!(item instanceof Result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ByteBuffer serialize(Object object) throws SerializerException {
+        Output out = new Output();
+        if (!isResultList(object)) {
+            out.write(FORMAT_JAVA);
+            ByteBuffer serialized = fallback.serialize(object);
+            byte[] bytes = new byte[serialized.remaining()];
+            serialized.get(bytes);
+            out.write(bytes, 0, bytes.length);
+            return out.toByteBuffer();
+        }
+
+        List<Result> results = (List<Result>) object;
+
+        // number the distinct types in this entry
+        List<NameType> types = new ArrayList<>();
+        Map<String, Integer> typeIndexes = new HashMap<>();
+        for (Result result : results) {
+            if (result.getType() != null) {
+                for (NameType nameType : result.getType()) {
+                    typeIndexes.computeIfAbsent(typeKey(nameType), k -> {
+                        types.add(nameType);
+                        return types.size() - 1;
+                    });
+                }
+            }
+        }
+
+        out.write(FORMAT_RESULTS);
+        out.writeVarInt(types.size());
+        for (NameType nameType : types) {
+            out.writeString(nameType.getId());
+            out.writeString(nameType.getName());
+        }
+        out.writeVarInt(results.size());
+        for (Result result : results) {
+            out.writeString(result.getId());
+            out.writeString(result.getName());
+            // 0 means a null list
+            if (result.getType() == null) {
+                out.writeVarInt(0);
+            } else {
+                out.writeVarInt(result.getType().size() + 1);
+                for (NameType nameType : result.getType()) {
+                    out.writeVarInt(typeIndexes.get(typeKey(nameType)));
+                }
+            }
+            out.writeDouble(result.getScore());
+            out.write((byte) (result.isMatch() ? 1 : 0));
+        }
+        return out.toByteBuffer();
+    }
+
+    @Override
+    public Object read(ByteBuffer binary) throws ClassNotFoundException, SerializerException {
+        byte format = binary.get();
+        if (format == FORMAT_JAVA) {
+            return fallback.read(binary.slice());
+        }
+        if (format != FORMAT_RESULTS) {
+            throw new SerializerException("Unknown cache entry format: " + format);
+        }
+
+        int numTypes = readVarInt(binary);
+        NameType[] types = new NameType[numTypes];
+        for (int i = 0; i < numTypes; i++) {
+            types[i] = intern(readString(binary), readString(binary));
+        }
+
+        int numResults = readVarInt(binary);
+        List<Result> results = new ArrayList<>(numResults);
+        for (int i = 0; i < numResults; i++) {
+            String id = readString(binary);
+            String name = readString(binary);
+            List<NameType> resultTypes = null;
+            int numResultTypes = readVarInt(binary) - 1;
+            if (numResultTypes >= 0) {
+                resultTypes = new ArrayList<>(numResultTypes);
+                for (int j = 0; j < numResultTypes; j++) {
+                    resultTypes.add(types[readVarInt(binary)]);
+                }
+            }
+            double score = readDouble(binary);
+            boolean match = binary.get() != 0;
+            results.add(new Result(id, name, resultTypes, score, match));
+        }
+        return results;
+    }
+
+    @Override
+    public boolean equals(Object object, ByteBuffer binary) throws ClassNotFoundException, SerializerException {
+        // Result doesn't implement equals(), so compare the serialized forms
+        return serialize(object).equals(binary.duplicate());
+    }
+
+    private static String typeKey(NameType nameType) {
+        return nameType.getId() + "\u0000" + nameType.getName();
+    }
+
+    private static NameType intern(String id, String name) {
+        NameType nameType = new NameType(id, name);
+        String key = typeKey(nameType);
+        NameType existing = internedTypes.get(key);
+        if (existing != null) {
+            return existing;
+        }
+        if (internedTypes.size() < MAX_INTERNED_TYPES) {
+            existing = internedTypes.putIfAbsent(key, nameType);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return nameType;
+    }
+
+    private static int readVarInt(ByteBuffer binary) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = binary.get();
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static double readDouble(ByteBuffer binary) {
+        long bits = 0;
+        for (int i = 0; i < 8; i++) {
+            bits = (bits << 8) | (binary.get() & 0xff);
+        }
+        return Double.longBitsToDouble(bits);
+    }
+
+    /**
+     * Strings are prefixed with their length in bytes plus one; 0 means null.
+     */
+    private static String readString(ByteBuffer binary) {
+        int length = readVarInt(binary) - 1;
+        if (length < 0) {
+            return null;
+        }
+        // buffers from the off-heap tier are direct, so there's no array() to decode in place
+        byte[] bytes = new byte[length];
+        binary.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static class Output extends ByteArrayOutputStream {
+
+        private Output() {
+            super(256);
+        }
+
+        private void write(byte b) {
+            super.write(b);
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7f) != 0) {
+                super.write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            super.write(value);
+        }
+
+        private void writeDouble(double d) {
+            long bits = Double.doubleToLongBits(d);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                super.write((int) (bits >>> shift));
+            }
+        }
+
+        private void writeString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+                return;
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length + 1);
+            write(bytes, 0, bytes.length);
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+}
@@ -170,7 +170,7 @@ public class SearchQuery {
                 (nameType != null ? nameType.getId() : "") + "|" +
                 (typeStrict != null ? typeStrict : "") + "|" +
                 (properties != null ? properties.keySet().stream()
-                        .map(key -> key + "=" + properties.get(key).asString())
+                        .map(key -> key + "=" + (properties.get(key) != null ? properties.get(key).asString() : ""))
                         .collect(Collectors.joining(", ", "{", "}")) : "") + "|" +
                 (viafSource != null ? viafSource : "") + "|" +
                 isViafProxyMode + "|" +
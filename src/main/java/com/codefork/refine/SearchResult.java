@@ -15,6 +15,7 @@ public class SearchResult {
     private String key;
     private List<Result> results;
     private ErrorType errorType;
+    private long retryAfterMs = -1;
 
     public SearchResult(String key, List<Result> results) {
         this.key = key;
@@ -26,6 +27,24 @@ public class SearchResult {
         this.errorType = errorType;
     }
 
+    /**
+     * @param retryAfterMs delay the upstream asked for before retrying, or -1
+     */
+    public SearchResult(String key, ErrorType errorType, long retryAfterMs) {
+        this(key, errorType);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return a copy of this SearchResult for a different key
+     */
+    public SearchResult withKey(String key) {
+        if (isSuccessful()) {
+            return new SearchResult(key, results);
+        }
+        return new SearchResult(key, errorType, retryAfterMs);
+    }
+
     public String getKey() {
         return key;
     }
@@ -41,4 +60,11 @@ public class SearchResult {
     public ErrorType getErrorType() {
         return errorType;
     }
+
+    /**
+     * @return delay the upstream asked for before retrying, or -1 if it didn't say
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
 }
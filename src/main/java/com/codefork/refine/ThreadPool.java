@@ -3,14 +3,42 @@ package com.codefork.refine;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import java.util.Deque;
 import java.util.concurrent.Callable;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 /**
  * A wrapper around an ExecutorService thread pool.
+ *
+ * Submitted tasks wait in a queue until the ConcurrencyLimiter lets them
+ * run, so the number of requests in flight to the upstream service follows
+ * its limit rather than the number of threads. Tasks report back whether
+ * the upstream turned them away, which cuts the limit; successful ones let
+ * it grow back up to the initial size.
+ *
+ * A TokenBucket also caps the rate at which tasks start, and can hold them
+ * all back for a while, e.g. when the upstream sends a Retry-After header.
+ * Waiting is done by scheduling, never by sleeping in a thread.
+ *
+ * Tasks submitted with submitAsync() hold their slot until the future
+ * they return completes, rather than until a thread finishes with them.
+ * They only need a thread to start their work, so they're capped by their
+ * own ceiling (see setMaxAsyncInFlight()), which may be higher than the
+ * pool size; other tasks can't outnumber the threads.
  */
 public class ThreadPool {
 
@@ -18,42 +46,43 @@ public class ThreadPool {
 
     private int initialPoolSize = INITIAL_POOL_SIZE;
 
-    // shrink rapidly, but grow slowly
-    private long waitPeriodBeforeShrinkingMs = 30000; // 30s
-    private long waitPeriodBeforeGrowingMs = 600000; // 10 mins
-    private long waitPeriodBeforeResetMs = 3600000; // 1 hour
-
     private Log log = LogFactory.getLog(ThreadPool.class);
 
     private ThreadPoolExecutor executor;
-    private long lastTimePoolAdjusted = 0;
+
+    private final ConcurrencyLimiter limiter;
+
+    private final TokenBucket tokenBucket = new TokenBucket();
+
+    /** ceiling for tasks submitted with submitAsync(); 0 means the pool size */
+    private volatile int maxAsyncInFlight = 0;
+
+    /** number of tasks submitted with submit() that have been handed a thread */
+    private final AtomicInteger threadsInUse = new AtomicInteger();
+
+    private final Deque<QueuedTask> pending = new ConcurrentLinkedDeque<>();
+
+    private final Deque<QueuedTask> pendingAsync = new ConcurrentLinkedDeque<>();
+
+    private final AtomicBoolean dispatchScheduled = new AtomicBoolean(false);
+
+    /** shared by all pools, for delayed tasks and dispatches */
+    private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "thread-pool-scheduler");
+        t.setDaemon(true);
+        return t;
+    });
 
     public ThreadPool() {
-        start();
+        this(INITIAL_POOL_SIZE);
     }
 
     public ThreadPool(int initialSize) {
         this.initialPoolSize = initialSize;
+        this.limiter = new ConcurrencyLimiter(initialSize);
         start();
     }
 
-    public ThreadPool(long waitPeriodBeforeShrinkingMs,
-                      long waitPeriodBeforeGrowingMs,
-                      long waitPeriodBeforeResetMs) {
-        this(INITIAL_POOL_SIZE, waitPeriodBeforeShrinkingMs,
-                waitPeriodBeforeGrowingMs, waitPeriodBeforeResetMs);
-    }
-
-    public ThreadPool(int initialSize,
-                      long waitPeriodBeforeShrinkingMs,
-                      long waitPeriodBeforeGrowingMs,
-                      long waitPeriodBeforeResetMs) {
-        this(initialSize);
-        this.waitPeriodBeforeShrinkingMs = waitPeriodBeforeShrinkingMs;
-        this.waitPeriodBeforeGrowingMs = waitPeriodBeforeGrowingMs;
-        this.waitPeriodBeforeResetMs = waitPeriodBeforeResetMs;
-    }
-
     public void start() {
         if(executor == null || executor.isShutdown()) {
             log.info("Starting thread pool, size = " + initialPoolSize);
@@ -63,74 +92,412 @@ public class ThreadPool {
         }
     }
 
+    /**
+     * A task waiting in the queue for the limiter.
+     */
+    private interface QueuedTask extends Runnable {
+
+        /** called instead of running the task, e.g. on shutdown */
+        void cancelQueued();
+    }
+
+    /**
+     * A task that gives its slot back to the limiter when it's done,
+     * along with what happened.
+     */
+    private class LimitedTask<T> extends FutureTask<T> implements QueuedTask {
+
+        private final Predicate<T> isDropped;
+        private final CompletableFuture<T> completion = new CompletableFuture<>();
+        private long start;
+        private boolean reported = false;
+
+        private LimitedTask(Callable<T> callable, Predicate<T> isDropped) {
+            super(callable);
+            this.isDropped = isDropped;
+        }
+
+        // report to the limiter before the Future completes, so that
+        // callers see the new limit as soon as they have the result
+
+        @Override
+        protected void set(T value) {
+            if (isDropped.test(value)) {
+                limiter.onDropped(start);
+            } else {
+                limiter.onSuccess(start);
+            }
+            reported = true;
+            super.set(value);
+        }
+
+        @Override
+        protected void setException(Throwable t) {
+            if (ConcurrencyLimiter.isOverloaded(t)) {
+                limiter.onDropped(start);
+            } else {
+                limiter.release();
+            }
+            reported = true;
+            super.setException(t);
+        }
+
+        @Override
+        public void run() {
+            start = System.nanoTime();
+            try {
+                super.run();
+            } finally {
+                // cancelled before it ran
+                if (!reported) {
+                    limiter.release();
+                }
+                threadsInUse.decrementAndGet();
+                dispatch();
+            }
+        }
+
+        @Override
+        public void cancelQueued() {
+            cancel(false);
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                completion.cancel(false);
+                return;
+            }
+            try {
+                completion.complete(get());
+            } catch (ExecutionException e) {
+                completion.completeExceptionally(e.getCause());
+            } catch (InterruptedException e) {
+                completion.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * A task that starts asynchronous work and holds its slot until
+     * that work completes. The thread that runs it is free again as soon
+     * as the work has started.
+     */
+    private class AsyncTask<T> implements QueuedTask {
+
+        private final Supplier<CompletableFuture<T>> supplier;
+        private final Predicate<T> isDropped;
+        private final CompletableFuture<T> completion = new CompletableFuture<>();
+
+        private AsyncTask(Supplier<CompletableFuture<T>> supplier, Predicate<T> isDropped) {
+            this.supplier = supplier;
+            this.isDropped = isDropped;
+        }
+
+        @Override
+        public void run() {
+            long start = System.nanoTime();
+            CompletableFuture<T> future;
+            try {
+                future = supplier.get();
+            } catch (Throwable t) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(t);
+            }
+            future.whenComplete((value, t) -> {
+                Throwable cause = t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+                if (cause != null) {
+                    if (ConcurrencyLimiter.isOverloaded(cause)) {
+                        limiter.onDropped(start);
+                    } else {
+                        limiter.release();
+                    }
+                } else if (isDropped.test(value)) {
+                    limiter.onDropped(start);
+                } else {
+                    limiter.onSuccess(start);
+                }
+                dispatch();
+                // report to the limiter before completing, as LimitedTask does
+                if (cause != null) {
+                    completion.completeExceptionally(cause);
+                } else {
+                    completion.complete(value);
+                }
+            });
+        }
+
+        @Override
+        public void cancelQueued() {
+            completion.cancel(false);
+        }
+    }
+
+    /**
+     * Submit a task to the pool, returning a Future immediately.
+     * Exceptions from the task that indicate a 429 or 503 response
+     * count as the upstream turning the request away.
+     * @param task
+     * @return
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        return submit(task, result -> false);
+    }
+
     /**
      * Submit a task to the pool, returning a Future immediately.
-     * Also tries to grow the pool, if necessary.
      * @param task
+     * @param isDropped tests whether a result means the upstream turned the request away
+     * @return
+     */
+    public <T> CompletableFuture<T> submit(Callable<T> task, Predicate<T> isDropped) {
+        return submit(task, isDropped, 0);
+    }
+
+    /**
+     * Submit a task to the pool after a delay, returning a Future immediately.
+     * @param task
+     * @param isDropped tests whether a result means the upstream turned the request away
+     * @param delayMs time to wait before queueing the task
      * @return
      */
-    public <T> Future<T> submit(Callable<T> task) {
-        if(lastTimePoolAdjusted != 0) {
-            grow();
-            long now = System.currentTimeMillis();
-            if(now - lastTimePoolAdjusted > waitPeriodBeforeResetMs) {
-                // reset this var, to prevent submit() from trying to grow back
-                lastTimePoolAdjusted = 0;
+    public <T> CompletableFuture<T> submit(Callable<T> task, Predicate<T> isDropped, long delayMs) {
+        LimitedTask<T> limitedTask = new LimitedTask<>(task, isDropped);
+        if (delayMs > 0) {
+            scheduler.schedule(() -> enqueue(pending, limitedTask), delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            enqueue(pending, limitedTask);
+        }
+        return limitedTask.completion;
+    }
+
+    /**
+     * Submit a task that starts asynchronous work, e.g. a non-blocking HTTP
+     * request, after a delay. The task counts against the concurrency limit
+     * until the future it returns completes, up to getMaxAsyncInFlight()
+     * such tasks at once. The supplier runs in a pool thread, so it should
+     * only start the work, not wait for it.
+     * @param task
+     * @param isDropped tests whether a result means the upstream turned the request away
+     * @param delayMs time to wait before queueing the task
+     * @return
+     */
+    public <T> CompletableFuture<T> submitAsync(Supplier<CompletableFuture<T>> task, Predicate<T> isDropped, long delayMs) {
+        AsyncTask<T> asyncTask = new AsyncTask<>(task, isDropped);
+        if (delayMs > 0) {
+            scheduler.schedule(() -> enqueue(pendingAsync, asyncTask), delayMs, TimeUnit.MILLISECONDS);
+        } else {
+            enqueue(pendingAsync, asyncTask);
+        }
+        return asyncTask.completion;
+    }
+
+    /**
+     * Start a follow-up request for an async task that already holds a
+     * slot, e.g. a second try with a different query, once the token bucket
+     * allows it. It doesn't take a slot of its own: waiting for one while
+     * holding another could deadlock. The caller should return the Future
+     * from its own async work, so that its slot is held until the follow-up
+     * is done. Like the supplier of submitAsync(), the task should only
+     * start the work, not wait for it.
+     * @param task
+     * @return
+     */
+    public <T> CompletableFuture<T> submitFollowUp(Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Runnable start = new Runnable() {
+            @Override
+            public void run() {
+                long waitNanos = tokenBucket.tryAcquire();
+                if (waitNanos > 0) {
+                    scheduler.schedule(this, waitNanos, TimeUnit.NANOSECONDS);
+                    return;
+                }
+                try {
+                    executor.execute(() -> {
+                        try {
+                            task.get().whenComplete((value, t) -> {
+                                if (t != null) {
+                                    future.completeExceptionally(
+                                            t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+                                } else {
+                                    future.complete(value);
+                                }
+                            });
+                        } catch (Throwable t) {
+                            future.completeExceptionally(t);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    future.cancel(false);
+                }
+            }
+        };
+        start.run();
+        return future;
+    }
+
+    private void enqueue(Deque<QueuedTask> queue, QueuedTask task) {
+        if (executor.isShutdown()) {
+            task.cancelQueued();
+            return;
+        }
+        queue.add(task);
+        dispatch();
+    }
+
+    /**
+     * Hand queued tasks to the executor while the limiter and
+     * the token bucket allow it. Tasks from submit() also need
+     * a thread of their own.
+     */
+    private void dispatch() {
+        while (true) {
+            boolean needsThread = !pending.isEmpty() && tryTakeThread();
+            Deque<QueuedTask> queue = needsThread ? pending : pendingAsync;
+            QueuedTask task = null;
+            if (limiter.tryAcquire()) {
+                task = queue.poll();
+                if (task == null) {
+                    limiter.release();
+                }
+            }
+            if (task == null) {
+                if (needsThread) {
+                    threadsInUse.decrementAndGet();
+                }
+                return;
+            }
+            long waitNanos = tokenBucket.tryAcquire();
+            if (waitNanos > 0) {
+                queue.addFirst(task);
+                limiter.release();
+                if (needsThread) {
+                    threadsInUse.decrementAndGet();
+                }
+                scheduleDispatch(waitNanos);
+                return;
+            }
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                limiter.release();
+                if (needsThread) {
+                    threadsInUse.decrementAndGet();
+                }
+                task.cancelQueued();
+            }
+        }
+    }
+
+    private boolean tryTakeThread() {
+        int n;
+        do {
+            n = threadsInUse.get();
+            if (n >= getPoolSize()) {
+                return false;
             }
+        } while (!threadsInUse.compareAndSet(n, n + 1));
+        return true;
+    }
+
+    private void scheduleDispatch(long delayNanos) {
+        if (dispatchScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                dispatchScheduled.set(false);
+                dispatch();
+            }, delayNanos, TimeUnit.NANOSECONDS);
         }
-        return executor.submit(task);
     }
 
     /**
-     * @return current size of the thread pool
+     * Limit the rate at which tasks start.
+     * @param permitsPerSecond 0 or less for no limit
+     * @param burst number of tasks that may start at once after a quiet period
+     */
+    public void setRateLimit(double permitsPerSecond, int burst) {
+        tokenBucket.setRate(permitsPerSecond, burst);
+    }
+
+    /**
+     * Start no tasks for the given time, e.g. because the upstream
+     * asked us to wait with a Retry-After header.
+     */
+    public void pauseFor(long millis) {
+        tokenBucket.pauseFor(millis);
+        scheduleDispatch(millis * 1000000);
+    }
+
+    /**
+     * @return number of threads in the pool, which is also the most
+     * tasks from submit() that run at once
      */
     public int getPoolSize() {
         return executor.getCorePoolSize();
     }
 
     public void setPoolSize(int newSize) {
-        executor.setCorePoolSize(newSize);
-        executor.setMaximumPoolSize(newSize);
+        if (newSize > executor.getMaximumPoolSize()) {
+            executor.setMaximumPoolSize(newSize);
+            executor.setCorePoolSize(newSize);
+        } else {
+            executor.setCorePoolSize(newSize);
+            executor.setMaximumPoolSize(newSize);
+        }
+        limiter.setLimit(Math.max(newSize, maxAsyncInFlight));
+        dispatch();
     }
 
     /**
-     * Shrink the size of the pool, if we can.
+     * @return most tasks from submitAsync() that may be in flight at once
      */
-    public synchronized void shrink() {
-        int size = getPoolSize();
-        if(size > 1) {
-            long now = System.currentTimeMillis();
-            // we need a bit of time for the last operation to take effect
-            // before we try to shrink again
-            if(now - lastTimePoolAdjusted > waitPeriodBeforeShrinkingMs) {
-                int newSize = size - 1;
-                log.info("Shrinking pool, new size = " + newSize);
-                setPoolSize(newSize);
-                lastTimePoolAdjusted = now;
-            }
-        }
+    public int getMaxAsyncInFlight() {
+        return Math.max(getPoolSize(), maxAsyncInFlight);
     }
 
     /**
-     * Grow the size of the pool back up to the initial size, if we can.
+     * Set how many tasks from submitAsync() may be in flight at once,
+     * regardless of the number of threads; the concurrency limit
+     * grows back up to this.
+     * @param maxAsyncInFlight 0 or less to use the pool size
      */
-    public synchronized void grow() {
-        int size = getPoolSize();
-        if(size < INITIAL_POOL_SIZE) {
-            long now = System.currentTimeMillis();
-            // grow slowly
-            if(now - lastTimePoolAdjusted > waitPeriodBeforeGrowingMs) {
-                int newSize = size + 1;
-                log.info("Growing pool, new size = " + newSize);
-                setPoolSize(newSize);
-                lastTimePoolAdjusted = now;
-            }
-        }
+    public void setMaxAsyncInFlight(int maxAsyncInFlight) {
+        this.maxAsyncInFlight = Math.max(0, maxAsyncInFlight);
+        limiter.setLimit(getMaxAsyncInFlight());
+        dispatch();
+    }
+
+    /**
+     * @return number of tasks that may run at once right now
+     */
+    public int getLimit() {
+        return limiter.getLimit();
+    }
+
+    /**
+     * @return number of tasks running right now
+     */
+    public int getInFlight() {
+        return limiter.getInFlight();
+    }
+
+    /**
+     * @return number of tasks waiting for the limiter
+     */
+    public int getNumPending() {
+        return pending.size() + pendingAsync.size();
     }
 
     public void shutdown() {
         if(!executor.isShutdown()) {
             log.info("Shutting down thread pool");
+            QueuedTask task;
+            while ((task = pending.poll()) != null) {
+                task.cancelQueued();
+            }
+            while ((task = pendingAsync.poll()) != null) {
+                task.cancelQueued();
+            }
             executor.shutdown();
             try {
                 executor.awaitTermination(30, TimeUnit.SECONDS);
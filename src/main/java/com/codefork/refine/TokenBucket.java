@@ -0,0 +1,79 @@
+package com.codefork.refine;
+
+/**
+ * Token bucket rate limiter for requests to an upstream service.
+ *
+ * Tokens accumulate at a fixed rate up to the burst size, and each request
+ * takes one. The bucket can also be paused, e.g. until the time given in a
+ * Retry-After header, during which no tokens are handed out at all.
+ *
+ * Callers never block here: tryAcquire() says how long to wait instead.
+ */
+public class TokenBucket {
+
+    /** permits per second; 0 or less means no limit except pauses */
+    private double rate = 0;
+    private double burst = 1;
+    private double tokens = 1;
+    private long lastRefillNanos;
+    private long pausedUntilNanos;
+
+    public TokenBucket() {
+        lastRefillNanos = System.nanoTime();
+        pausedUntilNanos = lastRefillNanos;
+    }
+
+    public TokenBucket(double rate, int burst) {
+        this();
+        setRate(rate, burst);
+    }
+
+    public synchronized void setRate(double rate, int burst) {
+        this.rate = rate;
+        this.burst = Math.max(1, burst);
+        this.tokens = Math.min(tokens, this.burst);
+    }
+
+    public synchronized double getRate() {
+        return rate;
+    }
+
+    /**
+     * Take a token, if one is available.
+     * @return 0 if a token was taken, otherwise how many nanoseconds
+     * to wait before trying again
+     */
+    public synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        if (now - pausedUntilNanos < 0) {
+            return pausedUntilNanos - now;
+        }
+        if (rate <= 0) {
+            return 0;
+        }
+        if (now - lastRefillNanos > 0) {
+            tokens = Math.min(burst, tokens + (now - lastRefillNanos) / 1e9 * rate);
+            lastRefillNanos = now;
+        }
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / rate * 1e9));
+    }
+
+    /**
+     * Hand out no tokens for the given time.
+     */
+    public synchronized void pauseFor(long millis) {
+        long until = System.nanoTime() + millis * 1000000;
+        if (until - pausedUntilNanos > 0) {
+            pausedUntilNanos = until;
+            // don't let a burst build up while paused, but let
+            // one request through right away to probe the upstream
+            tokens = Math.min(tokens, 1);
+            lastRefillNanos = until;
+        }
+    }
+
+}
@@ -1,17 +1,49 @@
 package com.codefork.refine.controllers;
 
+import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.datasource.PooledConnectionFactory;
+import com.codefork.refine.datasource.WebServiceDataSource;
+import org.apache.http.pool.PoolStats;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.ArrayList;
+import java.util.List;
+
 @RestController
 public class DebugController {
 
+    @Autowired(required = false)
+    private List<WebServiceDataSource> dataSources = new ArrayList<>();
+
+    @Autowired(required = false)
+    private List<ConnectionFactory> connectionFactories = new ArrayList<>();
+
     @RequestMapping("/debug")
     public String debug() {
         Runtime rt = Runtime.getRuntime();
         long usedMB = (rt.totalMemory() - rt.freeMemory()) / 1024 / 1024;
         long maxMB = Runtime.getRuntime().maxMemory() / 1024 / 1024;
-        return "memory usage=" + usedMB + " max=" + maxMB;
+        StringBuilder buf = new StringBuilder("memory usage=" + usedMB + " max=" + maxMB);
+        for (ConnectionFactory connectionFactory : connectionFactories) {
+            if (connectionFactory instanceof PooledConnectionFactory) {
+                PoolStats stats = ((PooledConnectionFactory) connectionFactory).getStats();
+                buf.append(String.format("\nhttp connections leased=%d idle=%d pending=%d max=%d",
+                        stats.getLeased(), stats.getAvailable(), stats.getPending(), stats.getMax()));
+            }
+        }
+        for (WebServiceDataSource dataSource : dataSources) {
+            buf.append("\n");
+            buf.append(String.format("%s: searches in flight=%d coalesced=%d concurrency limit=%d requests in flight=%d queued=%d",
+                    dataSource.getClass().getSimpleName(),
+                    dataSource.getNumSearchesInFlight(),
+                    dataSource.getNumCoalescedSearches(),
+                    dataSource.getThreadPool().getLimit(),
+                    dataSource.getThreadPool().getInFlight(),
+                    dataSource.getThreadPool().getNumPending()));
+        }
+        return buf.toString();
     }
 
-}
\ No newline at end of file
+}
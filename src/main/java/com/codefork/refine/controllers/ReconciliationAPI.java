@@ -8,6 +8,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Map;
 
 public interface ReconciliationAPI {
@@ -32,4 +34,19 @@ public interface ReconciliationAPI {
         return getDataSource().queryMultiple(queries, getDataSource().getSearchQueryFactory());
     }
 
+    /**
+     * Writes each result as soon as its query completes, instead of waiting
+     * for the whole batch. See SearchResponseStreamWriter for the formats
+     * selected by the "stream" param.
+     */
+    @RequestMapping(value = { "", "/" }, params = { "queries", "stream" })
+    default void queryMultipleStreaming(
+            @RequestParam(value = "queries") String queries,
+            @RequestParam(value = "stream") String stream,
+            HttpServletResponse response) throws IOException {
+        try (SearchResponseStreamWriter writer = new SearchResponseStreamWriter(response, stream)) {
+            getDataSource().queryMultiple(queries, getDataSource().getSearchQueryFactory(), writer);
+        }
+    }
+
 }
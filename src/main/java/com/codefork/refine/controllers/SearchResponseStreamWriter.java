@@ -0,0 +1,64 @@
+package com.codefork.refine.controllers;
+
+import com.codefork.refine.datasource.SearchResponseConsumer;
+import com.codefork.refine.resources.SearchResponse;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writes the responses to a batch of queries to the HTTP response one at a
+ * time, flushing after each, so clients get results as they're ready and
+ * the servlet container sends them chunked.
+ *
+ * In "ndjson" mode, each response is a line containing a single-key object,
+ * e.g. {"q0":{"result":[...]}}. Otherwise the output is the same JSON object
+ * that a non-streaming request returns, with keys in order of completion.
+ */
+public class SearchResponseStreamWriter implements SearchResponseConsumer, Closeable {
+
+    public static final String NDJSON = "ndjson";
+
+    public static final String NDJSON_CONTENT_TYPE = "application/x-ndjson";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonGenerator generator;
+    private final boolean ndjson;
+
+    public SearchResponseStreamWriter(HttpServletResponse response, String mode) throws IOException {
+        this.ndjson = NDJSON.equalsIgnoreCase(mode);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(ndjson ? NDJSON_CONTENT_TYPE : "application/json");
+        generator = mapper.getFactory().createGenerator(response.getOutputStream());
+        if (!ndjson) {
+            generator.writeStartObject();
+            generator.flush();
+        }
+    }
+
+    @Override
+    public void accept(String key, SearchResponse response) throws IOException {
+        if (ndjson) {
+            generator.writeStartObject();
+            generator.writeObjectField(key, response);
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        } else {
+            generator.writeObjectField(key, response);
+        }
+        generator.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!ndjson) {
+            generator.writeEndObject();
+        }
+        generator.close();
+    }
+
+}
@@ -0,0 +1,15 @@
+package com.codefork.refine.datasource;
+
+/**
+ * Receives the body of a response a chunk at a time, as it arrives.
+ */
+@FunctionalInterface
+public interface BodyConsumer {
+
+    /**
+     * The buffer may be reused once this returns.
+     * @return false if the rest of the body isn't needed
+     */
+    boolean consume(byte[] buf, int offset, int length) throws Exception;
+
+}
@@ -1,10 +1,112 @@
 package com.codefork.refine.datasource;
 
+import com.codefork.refine.ConcurrencyLimiter;
+
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 public interface ConnectionFactory {
 
+    /**
+     * Most of a response that's read and thrown away after the caller is
+     * done with it, rather than dropping the connection, e.g. the echoed
+     * request and diagnostics after the last record of a VIAF response.
+     * Setting up a new connection costs more than reading this much.
+     */
+    int MAX_BYTES_TO_SKIP = 16 * 1024;
+
     HttpURLConnection createConnection(String url) throws IOException;
 
+    /**
+     * Gets the response body of a connection, turning 429 and 503 responses
+     * into a TooManyRequestsException that carries the Retry-After delay.
+     */
+    static InputStream getInputStream(HttpURLConnection conn) throws IOException {
+        try {
+            return conn.getInputStream();
+        } catch (IOException e) {
+            if (ConcurrencyLimiter.isOverloaded(e)) {
+                throw new TooManyRequestsException(e.getMessage(),
+                        TooManyRequestsException.parseRetryAfter(conn.getHeaderField("Retry-After")), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Finishes with a response that the caller stopped reading before the
+     * end: if no more than MAX_BYTES_TO_SKIP of it are left, reads them so
+     * that closing the stream can return the connection to the pool, and
+     * otherwise drops the connection.
+     */
+    static void skipRest(HttpURLConnection conn, InputStream in) {
+        byte[] buf = new byte[8192];
+        long skipped = 0;
+        try {
+            int n;
+            while ((n = in.read(buf)) != -1) {
+                skipped += n;
+                if (skipped > MAX_BYTES_TO_SKIP) {
+                    conn.disconnect();
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            conn.disconnect();
+        }
+    }
+
+    /**
+     * Fetches the body of a GET request. Like HttpURLConnection.getInputStream(),
+     * this fails with an IOException for error responses, or with a
+     * TooManyRequestsException for 429 and 503 responses.
+     *
+     * This default implementation does the request in the calling thread;
+     * implementations backed by a non-blocking client should override it.
+     */
+    default CompletableFuture<byte[]> fetchAsync(String url) {
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        try {
+            InputStream in = getInputStream(createConnection(url));
+            try {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) != -1) {
+                    out.write(buf, 0, n);
+                }
+                future.complete(out.toByteArray());
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Fetches the body of a GET request, passing it to the consumer as it
+     * arrives. The future completes once all of the body has been consumed,
+     * or once the consumer returns false, in which case the rest of the body
+     * is dropped; it fails like fetchAsync(String), or with whatever the
+     * consumer throws.
+     *
+     * This default implementation passes the whole body to the consumer
+     * at once, when fetchAsync(String) completes.
+     */
+    default CompletableFuture<Void> fetchAsync(String url, BodyConsumer consumer) {
+        return fetchAsync(url).thenAccept(body -> {
+            try {
+                consumer.consume(body, 0, body.length);
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            }
+        });
+    }
+
 }
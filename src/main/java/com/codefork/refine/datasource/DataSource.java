@@ -97,6 +97,17 @@ public abstract class DataSource {
      */
     public abstract Map<String, SearchResponse> search(Map<String, SearchQuery> queryEntries);
 
+    /**
+     * Runs a set of queries, passing each response to the consumer as soon
+     * as it's available. This default implementation waits for the whole
+     * set; subclasses that run queries concurrently should override it.
+     */
+    public void search(Map<String, SearchQuery> queryEntries, SearchResponseConsumer consumer) throws IOException {
+        for (Map.Entry<String, SearchResponse> entry : search(queryEntries).entrySet()) {
+            consumer.accept(entry.getKey(), entry.getValue());
+        }
+    }
+
     /**
      * Returns the service metadata that OpenRefine uses on its first request
      * to the service.
@@ -132,22 +143,27 @@ public abstract class DataSource {
         return null;
     }
 
-    public Map<String, SearchResponse> queryMultiple(String queries, SearchQueryFactory searchQueryFactory) {
-        log.debug("queries=" + queries);
-        try {
-            JsonNode root = mapper.readTree(queries);
+    private Map<String, SearchQuery> parseQueries(String queries, SearchQueryFactory searchQueryFactory) throws IOException {
+        JsonNode root = mapper.readTree(queries);
 
-            Map<String, SearchQuery> queriesMap = new HashMap<>();
+        Map<String, SearchQuery> queriesMap = new HashMap<>();
 
-            for(Iterator<Map.Entry<String, JsonNode>> iter = root.fields(); iter.hasNext(); ) {
-                Map.Entry<String, JsonNode> fieldEntry = iter.next();
+        for(Iterator<Map.Entry<String, JsonNode>> iter = root.fields(); iter.hasNext(); ) {
+            Map.Entry<String, JsonNode> fieldEntry = iter.next();
 
-                String indexKey = fieldEntry.getKey();
-                JsonNode queryStruct = fieldEntry.getValue();
+            String indexKey = fieldEntry.getKey();
+            JsonNode queryStruct = fieldEntry.getValue();
 
-                SearchQuery searchQuery = searchQueryFactory.createSearchQuery(queryStruct);
-                queriesMap.put(indexKey, searchQuery);
-            }
+            SearchQuery searchQuery = searchQueryFactory.createSearchQuery(queryStruct);
+            queriesMap.put(indexKey, searchQuery);
+        }
+        return queriesMap;
+    }
+
+    public Map<String, SearchResponse> queryMultiple(String queries, SearchQueryFactory searchQueryFactory) {
+        log.debug("queries=" + queries);
+        try {
+            Map<String, SearchQuery> queriesMap = parseQueries(queries, searchQueryFactory);
 
             Map<String, SearchResponse> resultsMap = search(queriesMap);
 
@@ -162,6 +178,24 @@ public abstract class DataSource {
         return null;
     }
 
+    /**
+     * Like queryMultiple(), but passes each response to the consumer as it
+     * becomes available instead of returning them all at the end.
+     * Errors writing to the consumer are thrown, so callers can stop
+     * when the client goes away.
+     */
+    public void queryMultiple(String queries, SearchQueryFactory searchQueryFactory, SearchResponseConsumer consumer) throws IOException {
+        log.debug("queries=" + queries);
+        Map<String, SearchQuery> queriesMap;
+        try {
+            queriesMap = parseQueries(queries, searchQueryFactory);
+        } catch (JsonProcessingException jse) {
+            log.error("Got an error processing JSON: " + jse.toString());
+            return;
+        }
+        search(queriesMap, consumer);
+    }
+
     public ProposePropertiesResponse proposeProperties(String type, int limit)
             throws ServiceNotImplementedException {
         throw new ServiceNotImplementedException(
@@ -170,15 +204,9 @@ public abstract class DataSource {
     }
 
     public ExtensionResponse extend(ExtensionQuery query) throws ServiceNotImplementedException {
-        Map<String, CellList> rows = new HashMap<>();
-        for(String id : query.getIds()) {
-            rows.put(id, extend(id, query.getProperties()));
-        }
+        Map<String, CellList> rows = extendRows(query);
 
-        List<ColumnMetaData> meta = new ArrayList<>();
-        for(PropertyValueIdAndSettings prop : query.getProperties()) {
-            meta.add(columnMetaData(prop));
-        }
+        List<ColumnMetaData> meta = createColumnMetaData(query.getProperties());
 
         ExtensionResponse<String> response = new ExtensionResponse<>();
         response.setMeta(meta);
@@ -189,6 +217,33 @@ public abstract class DataSource {
         return response;
     }
 
+    /**
+     * Fetches the cells for every id in the query, one id at a time.
+     * Subclasses that can fetch them concurrently or in batches should override this.
+     * @return map of ids => cells for the query's properties
+     * @throws ServiceNotImplementedException
+     */
+    protected Map<String, CellList> extendRows(ExtensionQuery query) throws ServiceNotImplementedException {
+        Map<String, CellList> rows = new HashMap<>();
+        for(String id : query.getIds()) {
+            rows.put(id, extend(id, query.getProperties()));
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the metadata for every property in an extension query, one at a time.
+     * @return metadata in the same order as the properties
+     * @throws ServiceNotImplementedException
+     */
+    protected List<ColumnMetaData> createColumnMetaData(List<PropertyValueIdAndSettings> properties) throws ServiceNotImplementedException {
+        List<ColumnMetaData> meta = new ArrayList<>();
+        for(PropertyValueIdAndSettings prop : properties) {
+            meta.add(columnMetaData(prop));
+        }
+        return meta;
+    }
+
     /**
      * Subclasses should override and implement.
      * @param idsAndSettings list of property IDs and their settings, to be fetched
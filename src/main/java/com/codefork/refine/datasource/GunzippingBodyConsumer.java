@@ -0,0 +1,113 @@
+package com.codefork.refine.datasource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Decompresses a gzipped body a chunk at a time, as it arrives, and
+ * passes it on to another BodyConsumer. Only the first gzip member is
+ * read, and its trailer isn't checked.
+ */
+class GunzippingBodyConsumer implements BodyConsumer, Closeable {
+
+    private static final int FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+
+    private final BodyConsumer consumer;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] out = new byte[8192];
+
+    // what has arrived of the header, until all of it has
+    private ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+    GunzippingBodyConsumer(BodyConsumer consumer) {
+        this.consumer = consumer;
+    }
+
+    @Override
+    public boolean consume(byte[] buf, int offset, int length) throws Exception {
+        if (header != null) {
+            header.write(buf, offset, length);
+            byte[] bytes = header.toByteArray();
+            int headerLength = getHeaderLength(bytes);
+            if (headerLength == -1) {
+                return true;
+            }
+            header = null;
+            buf = bytes;
+            offset = headerLength;
+            length = bytes.length - headerLength;
+        }
+        if (inflater.finished()) {
+            return true;
+        }
+
+        inflater.setInput(buf, offset, length);
+        int n;
+        while ((n = inflater.inflate(out)) > 0) {
+            if (!consumer.consume(out, 0, n)) {
+                return false;
+            }
+        }
+        if (inflater.needsDictionary()) {
+            throw new ZipException("Unsupported gzip data: needs a preset dictionary");
+        }
+        return true;
+    }
+
+    /**
+     * @return length of the gzip header at the start of the bytes,
+     * or -1 if not all of it is there yet
+     */
+    static int getHeaderLength(byte[] bytes) throws ZipException {
+        if (bytes.length < 10) {
+            return -1;
+        }
+        if ((bytes[0] & 0xff) != 0x1f || (bytes[1] & 0xff) != 0x8b) {
+            throw new ZipException("Not in GZIP format");
+        }
+        if (bytes[2] != 8) {
+            throw new ZipException("Unsupported compression method");
+        }
+        int flags = bytes[3] & 0xff;
+        int pos = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (bytes.length < pos + 2) {
+                return -1;
+            }
+            pos += 2 + ((bytes[pos] & 0xff) | (bytes[pos + 1] & 0xff) << 8);
+        }
+        if ((flags & FNAME) != 0) {
+            pos = skipZeroTerminated(bytes, pos);
+        }
+        if ((flags & FCOMMENT) != 0) {
+            pos = skipZeroTerminated(bytes, pos);
+        }
+        if ((flags & FHCRC) != 0 && pos != -1) {
+            pos += 2;
+        }
+        return pos != -1 && pos <= bytes.length ? pos : -1;
+    }
+
+    private static int skipZeroTerminated(byte[] bytes, int pos) {
+        if (pos == -1) {
+            return -1;
+        }
+        for (int i = pos; i < bytes.length; i++) {
+            if (bytes[i] == 0) {
+                return i + 1;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() {
+        inflater.end();
+    }
+
+}
@@ -1,29 +1,41 @@
 package com.codefork.refine.datasource;
 
 
+import com.codefork.refine.ApplicationConfig;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
-import org.springframework.beans.factory.config.ConfigurableBeanFactory;
-import org.springframework.context.annotation.Scope;
-import org.springframework.stereotype.Component;
 
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
-@Component
-@Scope(value = ConfigurableBeanFactory.SCOPE_PROTOTYPE)
+/**
+ * Opens a new HttpURLConnection for every request.
+ */
 public class LiveConnectionFactory implements ConnectionFactory {
 
     public static int TIMEOUT = 20000;
 
     Log log = LogFactory.getLog(LiveConnectionFactory.class);
 
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public LiveConnectionFactory() {
+        this.connectTimeout = TIMEOUT;
+        this.readTimeout = TIMEOUT;
+    }
+
+    public LiveConnectionFactory(ApplicationConfig.Http config) {
+        this.connectTimeout = config.getConnectTimeout();
+        this.readTimeout = config.getReadTimeout();
+    }
+
     public HttpURLConnection createConnection(String url) throws IOException {
         log.debug("Making request to " + url);
         HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.setConnectTimeout(TIMEOUT);
-        connection.setReadTimeout(TIMEOUT);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
         return connection;
     }
 
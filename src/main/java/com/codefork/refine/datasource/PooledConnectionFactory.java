@@ -0,0 +1,379 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.ApplicationConfig;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.client.methods.AsyncByteConsumer;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * A ConnectionFactory backed by a pooled HttpClient, so that requests to
+ * the same host reuse kept-alive connections instead of paying for TCP and
+ * TLS setup every time. HttpClient also asks for and decodes gzipped
+ * responses.
+ *
+ * fetchAsync() uses a separate non-blocking client with its own pool, so
+ * requests in flight don't each need a thread waiting on them. It can
+ * either buffer the whole body, or stream it to a BodyConsumer as it
+ * arrives.
+ */
+public class PooledConnectionFactory implements ConnectionFactory, Closeable {
+
+    Log log = LogFactory.getLog(PooledConnectionFactory.class);
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final CloseableHttpClient client;
+    private final PoolingNHttpClientConnectionManager asyncConnectionManager;
+    private final CloseableHttpAsyncClient asyncClient;
+    // futures of async requests are completed here rather than on the I/O
+    // reactor thread, which mustn't be held up by whatever the caller does
+    // with the response
+    private final ExecutorService callbackExecutor;
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    public PooledConnectionFactory(ApplicationConfig.Http config) {
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(config.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerHost());
+        // check connections that sat idle for a while before reusing them
+        connectionManager.setValidateAfterInactivity(2000);
+
+        client = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(config.getIdleTimeoutMs(), TimeUnit.MILLISECONDS)
+                .evictExpiredConnections()
+                .build();
+
+        connectTimeout = config.getConnectTimeout();
+        readTimeout = config.getReadTimeout();
+
+        try {
+            asyncConnectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                            .setConnectTimeout(connectTimeout)
+                            .setSoTimeout(readTimeout)
+                            .build()));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Couldn't create I/O reactor for async HTTP client", e);
+        }
+        asyncConnectionManager.setMaxTotal(config.getMaxConnections());
+        asyncConnectionManager.setDefaultMaxPerRoute(config.getMaxConnectionsPerHost());
+
+        // the async client has no idle connection evictor, so
+        // don't keep connections alive longer than the idle timeout
+        long idleTimeoutMs = config.getIdleTimeoutMs();
+        asyncClient = HttpAsyncClients.custom()
+                .setConnectionManager(asyncConnectionManager)
+                .setKeepAliveStrategy((response, context) -> idleTimeoutMs)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setConnectionRequestTimeout(connectTimeout)
+                        .setSocketTimeout(readTimeout)
+                        .build())
+                .build();
+        asyncClient.start();
+
+        AtomicInteger numCallbackThreads = new AtomicInteger();
+        callbackExecutor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "http-callback-" + numCallbackThreads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        log.info(String.format("Created HTTP connection pool, max connections=%d, per host=%d",
+                config.getMaxConnections(), config.getMaxConnectionsPerHost()));
+    }
+
+    @Override
+    public HttpURLConnection createConnection(String url) throws IOException {
+        log.debug("Making request to " + url);
+        HttpURLConnection connection = new PooledHttpURLConnection(new URL(url), client);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        return connection;
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetchAsync(String url) {
+        log.debug("Making async request to " + url);
+        CompletableFuture<byte[]> future = new CompletableFuture<>();
+        HttpGet request;
+        try {
+            request = new HttpGet(PooledHttpURLConnection.toURI(new URL(url)));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        request.addHeader("Accept-Encoding", "gzip");
+
+        asyncClient.execute(request, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                byte[] body;
+                try {
+                    body = readBody(url, response);
+                } catch (IOException e) {
+                    fail(future, e);
+                    return;
+                }
+                complete(future, body);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                fail(future, e);
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Streams the body to the consumer from the I/O reactor thread, as it
+     * arrives, so the consumer should only do quick work with each chunk,
+     * like feeding it to a parser. If the consumer doesn't want the rest of
+     * the body, it's read and thrown away if it's short, like with
+     * ConnectionFactory.skipRest(), and otherwise the connection is closed
+     * rather than reading it.
+     */
+    @Override
+    public CompletableFuture<Void> fetchAsync(String url, BodyConsumer consumer) {
+        log.debug("Making streaming async request to " + url);
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        HttpGet request;
+        try {
+            request = new HttpGet(PooledHttpURLConnection.toURI(new URL(url)));
+        } catch (IOException e) {
+            future.completeExceptionally(e);
+            return future;
+        }
+        request.addHeader("Accept-Encoding", "gzip");
+
+        StreamingResponseConsumer responseConsumer = new StreamingResponseConsumer(url, consumer);
+        asyncClient.execute(HttpAsyncMethods.create(request), responseConsumer, new FutureCallback<Void>() {
+            @Override
+            public void completed(Void result) {
+                complete(future, null);
+            }
+
+            @Override
+            public void failed(Exception e) {
+                if (responseConsumer.failure != null) {
+                    fail(future, responseConsumer.failure);
+                } else if (responseConsumer.stopped) {
+                    complete(future, null);
+                } else {
+                    fail(future, e);
+                }
+            }
+
+            @Override
+            public void cancelled() {
+                if (responseConsumer.stopped) {
+                    complete(future, null);
+                } else {
+                    future.cancel(false);
+                }
+            }
+        });
+        return future;
+    }
+
+    private <T> void complete(CompletableFuture<T> future, T value) {
+        try {
+            callbackExecutor.execute(() -> future.complete(value));
+        } catch (RejectedExecutionException e) {
+            // closed while the request was in flight
+            future.cancel(false);
+        }
+    }
+
+    private void fail(CompletableFuture<?> future, Exception e) {
+        try {
+            callbackExecutor.execute(() -> future.completeExceptionally(e));
+        } catch (RejectedExecutionException e2) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    private static class StreamingResponseConsumer extends AsyncByteConsumer<Void> {
+        private final String url;
+        private BodyConsumer consumer;
+        private GunzippingBodyConsumer gunzipper;
+        private byte[] chunk = new byte[0];
+        // length of the body as sent, or -1 if it isn't known up front
+        private long contentLength = -1;
+        private long received;
+        private long skipped;
+
+        // set when the consumer doesn't want the rest of the body, or fails
+        volatile boolean stopped;
+        volatile Exception failure;
+
+        StreamingResponseConsumer(String url, BodyConsumer consumer) {
+            this.url = url;
+            this.consumer = consumer;
+        }
+
+        @Override
+        protected void onResponseReceived(HttpResponse response) throws IOException {
+            if (response.getStatusLine().getStatusCode() >= 400) {
+                throw getError(url, response);
+            }
+            if (response.getEntity() != null) {
+                contentLength = response.getEntity().getContentLength();
+            }
+            Header encoding = response.getLastHeader("Content-Encoding");
+            if (encoding != null && encoding.getValue().equalsIgnoreCase("gzip")) {
+                gunzipper = new GunzippingBodyConsumer(consumer);
+                consumer = gunzipper;
+            }
+        }
+
+        @Override
+        protected void onByteReceived(ByteBuffer buf, IOControl ioctrl) throws IOException {
+            int length = buf.remaining();
+            received += length;
+            if (stopped) {
+                // the rest of a short body is thrown away, so the
+                // connection can go back to the pool
+                buf.position(buf.limit());
+                skipped += length;
+                if (skipped > MAX_BYTES_TO_SKIP) {
+                    ioctrl.shutdown();
+                }
+                return;
+            }
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            buf.get(chunk, 0, length);
+            boolean more;
+            try {
+                more = consumer.consume(chunk, 0, length);
+            } catch (Exception e) {
+                failure = e;
+                stopped = true;
+                throw new IOException("Error consuming response body from " + url, e);
+            }
+            if (!more) {
+                stopped = true;
+                if (contentLength >= 0 && contentLength - received > MAX_BYTES_TO_SKIP) {
+                    ioctrl.shutdown();
+                }
+            }
+        }
+
+        @Override
+        protected Void buildResult(HttpContext context) {
+            return null;
+        }
+
+        @Override
+        protected void releaseResources() {
+            if (gunzipper != null) {
+                gunzipper.close();
+            }
+        }
+    }
+
+    /**
+     * @return exception for an error response, like the ones
+     * HttpURLConnection.getInputStream() throws
+     */
+    private static IOException getError(String url, HttpResponse response) {
+        int status = response.getStatusLine().getStatusCode();
+        String message = String.format("Server returned HTTP response code: %d for URL: %s", status, url);
+        if (status == 429 || status == 503) {
+            Header retryAfter = response.getLastHeader("Retry-After");
+            return new TooManyRequestsException(message,
+                    TooManyRequestsException.parseRetryAfter(retryAfter != null ? retryAfter.getValue() : null), null);
+        }
+        if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+            return new FileNotFoundException(url);
+        }
+        return new IOException(message);
+    }
+
+    private static byte[] readBody(String url, HttpResponse response) throws IOException {
+        HttpEntity entity = response.getEntity();
+        if (response.getStatusLine().getStatusCode() >= 400) {
+            EntityUtils.consumeQuietly(entity);
+            throw getError(url, response);
+        }
+        if (entity == null) {
+            return new byte[0];
+        }
+        byte[] body = EntityUtils.toByteArray(entity);
+        Header encoding = response.getLastHeader("Content-Encoding");
+        if (encoding != null && encoding.getValue().equalsIgnoreCase("gzip")) {
+            try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(body))) {
+                body = IOUtils.toByteArray(in);
+            }
+        }
+        return body;
+    }
+
+    /**
+     * @return numbers of leased, idle and pending connections across all hosts,
+     * for both the blocking and the async client
+     */
+    public PoolStats getStats() {
+        PoolStats stats = connectionManager.getTotalStats();
+        PoolStats asyncStats = asyncConnectionManager.getTotalStats();
+        return new PoolStats(
+                stats.getLeased() + asyncStats.getLeased(),
+                stats.getPending() + asyncStats.getPending(),
+                stats.getAvailable() + asyncStats.getAvailable(),
+                stats.getMax() + asyncStats.getMax());
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.info("Closing HTTP connection pool");
+        client.close();
+        asyncClient.close();
+        callbackExecutor.shutdown();
+    }
+
+}
@@ -0,0 +1,217 @@
+package com.codefork.refine.datasource;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.util.EntityUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.ProtocolException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An HttpURLConnection that sends its request through a pooled HttpClient,
+ * so the data sources can keep using the HttpURLConnection API.
+ *
+ * The request is sent on connect(), or on the first call that needs the
+ * response. Like the JDK's implementation, getInputStream() throws an
+ * IOException saying "Server returned HTTP response code" for error
+ * responses; the status and headers are still available afterwards.
+ *
+ * Closing the input stream after reading it returns the connection to the
+ * pool. disconnect() closes the response, which discards the connection
+ * only if the body wasn't read to the end.
+ */
+public class PooledHttpURLConnection extends HttpURLConnection {
+
+    private final CloseableHttpClient client;
+
+    private ByteArrayOutputStream body;
+    private CloseableHttpResponse response;
+
+    public PooledHttpURLConnection(URL url, CloseableHttpClient client) {
+        super(url);
+        this.client = client;
+    }
+
+    static URI toURI(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            // quote whatever characters the JDK would have let through
+            try {
+                return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(),
+                        url.getPath(), url.getQuery(), url.getRef());
+            } catch (URISyntaxException e2) {
+                throw new IOException("Invalid URL: " + url, e2);
+            }
+        }
+    }
+
+    @Override
+    public void connect() throws IOException {
+        if (connected) {
+            return;
+        }
+
+        final String requestMethod = getRequestMethod();
+        HttpRequestBase request;
+        if (body != null) {
+            HttpEntityEnclosingRequestBase requestWithBody = new HttpEntityEnclosingRequestBase() {
+                @Override
+                public String getMethod() {
+                    return requestMethod;
+                }
+            };
+            requestWithBody.setEntity(new ByteArrayEntity(body.toByteArray()));
+            request = requestWithBody;
+        } else {
+            request = new HttpRequestBase() {
+                @Override
+                public String getMethod() {
+                    return requestMethod;
+                }
+            };
+        }
+        request.setURI(toURI(url));
+        for (Map.Entry<String, List<String>> property : getRequestProperties().entrySet()) {
+            for (String value : property.getValue()) {
+                request.addHeader(property.getKey(), value);
+            }
+        }
+        request.setConfig(RequestConfig.custom()
+                .setConnectTimeout(getConnectTimeout())
+                .setConnectionRequestTimeout(getConnectTimeout())
+                .setSocketTimeout(getReadTimeout())
+                .setRedirectsEnabled(getInstanceFollowRedirects())
+                .build());
+
+        response = client.execute(request);
+        responseCode = response.getStatusLine().getStatusCode();
+        responseMessage = response.getStatusLine().getReasonPhrase();
+        connected = true;
+    }
+
+    @Override
+    public OutputStream getOutputStream() throws IOException {
+        if (connected) {
+            throw new ProtocolException("Cannot write output after reading input.");
+        }
+        if ("GET".equals(getRequestMethod())) {
+            setRequestMethod("POST");
+        }
+        if (body == null) {
+            body = new ByteArrayOutputStream();
+        }
+        return body;
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        connect();
+        HttpEntity entity = response.getEntity();
+        if (responseCode >= 400) {
+            EntityUtils.consumeQuietly(entity);
+            if (responseCode == HTTP_NOT_FOUND || responseCode == HTTP_GONE) {
+                throw new FileNotFoundException(url.toString());
+            }
+            throw new IOException(String.format("Server returned HTTP response code: %d for URL: %s", responseCode, url));
+        }
+        if (entity == null) {
+            return new ByteArrayInputStream(new byte[0]);
+        }
+        return entity.getContent();
+    }
+
+    @Override
+    public int getResponseCode() throws IOException {
+        connect();
+        return responseCode;
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        try {
+            connect();
+        } catch (IOException e) {
+            return null;
+        }
+        Header header = response.getLastHeader(name);
+        return header != null ? header.getValue() : null;
+    }
+
+    @Override
+    public String getHeaderFieldKey(int n) {
+        try {
+            connect();
+        } catch (IOException e) {
+            return null;
+        }
+        // as with the JDK, header 0 is the status line, which has no key
+        Header[] headers = response.getAllHeaders();
+        return n > 0 && n <= headers.length ? headers[n - 1].getName() : null;
+    }
+
+    @Override
+    public String getHeaderField(int n) {
+        try {
+            connect();
+        } catch (IOException e) {
+            return null;
+        }
+        if (n == 0) {
+            return response.getStatusLine().toString();
+        }
+        Header[] headers = response.getAllHeaders();
+        return n <= headers.length ? headers[n - 1].getValue() : null;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        try {
+            connect();
+        } catch (IOException e) {
+            return Collections.emptyMap();
+        }
+        Map<String, List<String>> fields = new LinkedHashMap<>();
+        for (Header header : response.getAllHeaders()) {
+            fields.computeIfAbsent(header.getName(), k -> new ArrayList<>()).add(header.getValue());
+        }
+        return Collections.unmodifiableMap(fields);
+    }
+
+    @Override
+    public void disconnect() {
+        if (response != null) {
+            try {
+                response.close();
+            } catch (IOException e) {
+                // nothing to do
+            }
+        }
+    }
+
+    @Override
+    public boolean usingProxy() {
+        return false;
+    }
+
+}
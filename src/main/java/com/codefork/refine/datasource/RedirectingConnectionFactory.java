@@ -0,0 +1,73 @@
+package com.codefork.refine.datasource;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A ConnectionFactory that sends every request to a single base URL
+ * instead of the upstream service, e.g. to a stub server for load tests.
+ * http://www.viaf.org/viaf/search?query=x is sent to
+ * BASE_URL/http/www.viaf.org/viaf/search?query=x so the original URL can
+ * be recovered from the path.
+ */
+public class RedirectingConnectionFactory implements ConnectionFactory, Closeable {
+
+    Log log = LogFactory.getLog(RedirectingConnectionFactory.class);
+
+    private final ConnectionFactory connectionFactory;
+    private final String baseUrl;
+
+    public RedirectingConnectionFactory(ConnectionFactory connectionFactory, String baseUrl) {
+        this.connectionFactory = connectionFactory;
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        log.warn("Sending all upstream requests to " + this.baseUrl);
+    }
+
+    public static String redirect(String baseUrl, String url) throws MalformedURLException {
+        URL u = new URL(url);
+        String hostAndPort = u.getPort() != -1 ? u.getHost() + ":" + u.getPort() : u.getHost();
+        return baseUrl + "/" + u.getProtocol() + "/" + hostAndPort + u.getFile();
+    }
+
+    @Override
+    public HttpURLConnection createConnection(String url) throws IOException {
+        return connectionFactory.createConnection(redirect(baseUrl, url));
+    }
+
+    @Override
+    public CompletableFuture<byte[]> fetchAsync(String url) {
+        try {
+            return connectionFactory.fetchAsync(redirect(baseUrl, url));
+        } catch (MalformedURLException e) {
+            CompletableFuture<byte[]> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public CompletableFuture<Void> fetchAsync(String url, BodyConsumer consumer) {
+        try {
+            return connectionFactory.fetchAsync(redirect(baseUrl, url), consumer);
+        } catch (MalformedURLException e) {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (connectionFactory instanceof Closeable) {
+            ((Closeable) connectionFactory).close();
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.resources.SearchResponse;
+
+import java.io.IOException;
+
+/**
+ * Receives the response to each query in a batch as soon as it's ready,
+ * e.g. to write it out without holding on to the whole batch.
+ * Always called from the thread that started the search.
+ */
+public interface SearchResponseConsumer {
+
+    void accept(String key, SearchResponse response) throws IOException;
+
+}
@@ -0,0 +1,51 @@
+package com.codefork.refine.datasource;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Thrown when an upstream service answers with a 429 or 503,
+ * carrying the delay it asked for in its Retry-After header, if any.
+ */
+public class TooManyRequestsException extends IOException {
+
+    private final long retryAfterMs;
+
+    public TooManyRequestsException(String message, long retryAfterMs, Throwable cause) {
+        super(message, cause);
+        this.retryAfterMs = retryAfterMs;
+    }
+
+    /**
+     * @return delay requested by the upstream in ms, or -1 if it didn't say
+     */
+    public long getRetryAfterMs() {
+        return retryAfterMs;
+    }
+
+    /**
+     * Parses a Retry-After header value, which is either a number
+     * of seconds or an HTTP date.
+     * @return delay in ms, or -1 if the value is missing or can't be parsed
+     */
+    public static long parseRetryAfter(String value) {
+        if (value == null || value.trim().isEmpty()) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            // try it as a date
+        }
+        try {
+            ZonedDateTime date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME);
+            return Math.max(0, date.toInstant().toEpochMilli() - System.currentTimeMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+}
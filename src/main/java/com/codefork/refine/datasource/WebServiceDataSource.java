@@ -1,17 +1,33 @@
 package com.codefork.refine.datasource;
 
 import com.codefork.refine.*;
+import com.codefork.refine.resources.CellList;
+import com.codefork.refine.resources.ColumnMetaData;
 import com.codefork.refine.resources.Result;
 import com.codefork.refine.resources.SearchResponse;
 import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
 
 /**
  * A data source that queries a web service API using a threadpool
@@ -31,6 +47,15 @@ public abstract class WebServiceDataSource extends DataSource {
 
     private ConnectionFactory connectionFactory;
 
+    private ApplicationConfig.RateLimit rateLimit;
+
+    private final ConcurrentMap<String, CompletableFuture<List<Result>>> searchesInFlight = new ConcurrentHashMap<>();
+
+    private final AtomicLong numCoalescedSearches = new AtomicLong();
+
+    // whether this data source overrides searchAsync() to search without blocking
+    private final boolean searchIsAsync = overridesSearchAsync(getClass());
+
     public WebServiceDataSource(
             ApplicationConfig applicationConfig,
             CacheManager cacheManager,
@@ -42,6 +67,8 @@ public abstract class WebServiceDataSource extends DataSource {
         this.connectionFactory = connectionFactory;
 
         this.threadPool = createThreadPool();
+        this.rateLimit = applicationConfig.getRateLimitFor(getConfigName());
+        applyRateLimit(threadPool);
         setCacheEnabled(applicationConfig.getCache().isEnabled());
    }
 
@@ -69,6 +96,20 @@ public abstract class WebServiceDataSource extends DataSource {
         return threadPoolFactory.createThreadPool();
     }
 
+    /**
+     * Applies the rate limits configured for this data source to a pool.
+     * The constructor does this for getThreadPool(); subclasses that
+     * create other pools for the same upstream should do it for those.
+     */
+    protected void applyRateLimit(ThreadPool pool) {
+        if (rateLimit.getPermitsPerSecond() > 0) {
+            pool.setRateLimit(rateLimit.getPermitsPerSecond(), rateLimit.getBurst());
+        }
+        if (rateLimit.getMaxInFlight() > 0) {
+            pool.setMaxAsyncInFlight(rateLimit.getMaxInFlight());
+        }
+    }
+
     public ThreadPool getThreadPool() {
         return threadPool;
     }
@@ -81,6 +122,14 @@ public abstract class WebServiceDataSource extends DataSource {
         this.connectionFactory = connectionFactory;
     }
 
+    /**
+     * Gets the response body of a connection, turning 429 and 503 responses
+     * into a TooManyRequestsException that carries the Retry-After delay.
+     */
+    protected InputStream getInputStream(HttpURLConnection conn) throws IOException {
+        return ConnectionFactory.getInputStream(conn);
+    }
+
     /**
      * Does cleanup of member objects: shuts down the cache thread
      * and the thread pool.
@@ -90,25 +139,13 @@ public abstract class WebServiceDataSource extends DataSource {
         getThreadPoolFactory().releaseThreadPool(getThreadPool());
     }
 
-    /**
-     * Factory method for creating a search task for given key and SearchQuery.
-     * This provides a way to return customized SearchTask subclasses
-     * so they have what they need to perform searches.
-     * @param key
-     * @param searchQuery
-     * @return
-     */
-    public SearchTask createSearchTask(String key, SearchQuery searchQuery) {
-        return new WebServiceSearchTask(this, key, searchQuery);
-    }
-
     /**
      * This is the main entry point for running a set of queries.
      * Web app controllers use this.
      *
-     * It makes use of the threadpool, shrinking/growing it as necessary
-     * in response to HTTP 429 responses from VIAF, and retrying those
-     * requests.
+     * It makes use of the threadpool, whose concurrency limit goes
+     * down in response to HTTP 429 responses from VIAF and back up as
+     * requests succeed, and retries those requests after a delay.
      *
      * @param queryEntries map of string ids (e.g. q0, q1, as identified by OpenRefine clients)
      *                     => SearchQuery objects
@@ -116,123 +153,472 @@ public abstract class WebServiceDataSource extends DataSource {
      */
     @Override
     public Map<String, SearchResponse> search(Map<String, SearchQuery> queryEntries) {
-        long start = System.currentTimeMillis();
-
         Map<String, SearchResponse> allResults = new HashMap<>();
-
-        Map<String, SearchResult> results = searchUsingThreadPool(queryEntries);
-
-        // adjust thread pool if necessary on unsuccessful results
-        for(Map.Entry<String, SearchResult> queryEntry : results.entrySet()) {
-            SearchResult searchResult = queryEntry.getValue();
-            if(!searchResult.isSuccessful()) {
-                if (SearchResult.ErrorType.TOO_MANY_REQUESTS.equals(searchResult.getErrorType())) {
-                    getThreadPool().shrink();
-                }
-            }
+        try {
+            search(queryEntries, allResults::put);
+        } catch (IOException e) {
+            // putting into a map doesn't throw
+            throw new IllegalStateException(e);
         }
-
-        // figure out which queries need to be done again
-        Map<String, SearchQuery> secondTries = new HashMap<>();
-        for(Map.Entry<String, SearchQuery> queryEntry : queryEntries.entrySet()) {
-            String indexKey = queryEntry.getKey();
-            if(!results.containsKey(indexKey)) {
-                SearchQuery searchQuery = queryEntry.getValue();
-                log.info("Submitting second try for query: " + searchQuery.getQuery());
-                secondTries.put(indexKey, searchQuery);
-            }
+        // return empty arrays for searches that never finished
+        for (String indexKey : queryEntries.keySet()) {
+            allResults.putIfAbsent(indexKey, new SearchResponse(new ArrayList<>()));
         }
+        return allResults;
+    }
 
-        if(secondTries.size() > 0) {
-            // sleep a bit, avoid doing second tries immediately
-            try {
-                Thread.sleep(1500);
-            } catch(InterruptedException e) {
-                log.error("sleep interrupted before doing second tries");
-            }
-
-            // second tries
-            Map<String, SearchResult> resultsFromSecondTries = searchUsingThreadPool(secondTries);
+    /**
+     * Runs a set of queries in the threadpool, passing each response
+     * to the consumer in the calling thread as soon as it completes,
+     * so nothing holds on to the responses of the whole set.
+     */
+    @Override
+    public void search(Map<String, SearchQuery> queryEntries, SearchResponseConsumer consumer) throws IOException {
+        long start = System.currentTimeMillis();
 
-            // merge into results
-            results.putAll(resultsFromSecondTries);
-        }
+        // the thread pool's concurrency limit adjusts itself to 429 responses,
+        // and those requests are retried
+        BlockingQueue<SearchResult> completed = searchUsingThreadPool(queryEntries);
 
         // return empty arrays for searches that didn't complete due to errors
-        for(Map.Entry<String, SearchResult> queryEntry : results.entrySet()) {
-            String indexKey = queryEntry.getKey();
-            SearchResult searchResult = queryEntry.getValue();
-            if(searchResult.isSuccessful()) {
-                allResults.put(indexKey, new SearchResponse(searchResult.getResults()));
-            } else {
-                allResults.put(indexKey, new SearchResponse(new ArrayList<>()));
+        int numFailed = 0;
+        try {
+            for (int i = 0; i < queryEntries.size(); i++) {
+                SearchResult searchResult = completed.take();
+                if(searchResult.isSuccessful()) {
+                    consumer.accept(searchResult.getKey(), new SearchResponse(searchResult.getResults()));
+                } else {
+                    consumer.accept(searchResult.getKey(), new SearchResponse(new ArrayList<>()));
+                    numFailed++;
+                }
             }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for search results");
+            Thread.currentThread().interrupt();
         }
 
-        log.debug(String.format("%s tasks finished in %s (thread pool size=%s)", queryEntries.size(), System.currentTimeMillis() - start, getThreadPool().getPoolSize()));
+        if (numFailed > 0) {
+            log.warn(String.format("%d of %d queries failed, returning no results for them", numFailed, queryEntries.size()));
+        }
 
-        return allResults;
+        log.debug(String.format("%s tasks finished in %s (concurrency limit=%s)", queryEntries.size(), System.currentTimeMillis() - start, getThreadPool().getLimit()));
     }
 
     /**
      * This method sends a single set of queries to the threadpool,
-     * waits for the futures to complete, and returns results.
+     * returning a queue that gets a result for every key
+     * as soon as its query completes.
+     *
+     * Identical queries (as determined by SearchQuery.getHashKey()) are
+     * only run once, and the result is copied to every key that asked for it:
+     * OpenRefine batches often contain the same cell value many times.
      *
      * @param queryEntries
      * @return
      */
-    private Map<String, SearchResult> searchUsingThreadPool(Map<String, SearchQuery> queryEntries) {
-        Map<String, SearchResult> results = new HashMap<>();
+    private BlockingQueue<SearchResult> searchUsingThreadPool(Map<String, SearchQuery> queryEntries) {
+        BlockingQueue<SearchResult> completed = new LinkedBlockingQueue<>();
 
-        List<SearchTask> tasks = new ArrayList<>();
+        // group keys by query; the first key of each group is used for its search
+        Map<String, List<String>> keysByHashKey = new LinkedHashMap<>();
+        Map<String, SearchQuery> distinctQueries = new LinkedHashMap<>();
         for (Map.Entry<String, SearchQuery> queryEntry : queryEntries.entrySet()) {
-            SearchTask task = createSearchTask(queryEntry.getKey(), queryEntry.getValue());
-            tasks.add(task);
+            String hashKey = queryEntry.getValue().getHashKey();
+            List<String> keys = keysByHashKey.get(hashKey);
+            if (keys == null) {
+                keys = new ArrayList<>();
+                keysByHashKey.put(hashKey, keys);
+                distinctQueries.put(queryEntry.getKey(), queryEntry.getValue());
+            }
+            keys.add(queryEntry.getKey());
         }
 
-        List<Future<SearchResult>> futures = new ArrayList<>();
-        for (SearchTask task : tasks) {
-            futures.add(getThreadPool().submit(task));
+        if (distinctQueries.size() < queryEntries.size()) {
+            log.debug(String.format("Running %d distinct queries for %d keys", distinctQueries.size(), queryEntries.size()));
         }
 
-        for (Future<SearchResult> future : futures) {
-            try {
-                SearchResult result = future.get();
-                String indexKey = result.getKey();
-                results.put(indexKey, result);
-            } catch (InterruptedException | ExecutionException e) {
-                log.error("searchUsingThreadPool: error getting value from future: " + StringUtil.getStackTrace(e));
-            }
+        for (Map.Entry<String, SearchQuery> queryEntry : distinctQueries.entrySet()) {
+            String key = queryEntry.getKey();
+            List<String> keys = keysByHashKey.get(queryEntry.getValue().getHashKey());
+            submitWithRetries(key, queryEntry.getValue(), 0, 0).whenComplete((result, t) -> {
+                if (t != null) {
+                    log.error("searchUsingThreadPool: error getting value from future: " + StringUtil.getStackTrace(t));
+                    result = new SearchResult(key, SearchResult.ErrorType.UNKNOWN);
+                }
+                for (String indexKey : keys) {
+                    completed.add(result.withKey(indexKey));
+                }
+            });
+        }
+        return completed;
+    }
+
+    private static boolean overridesSearchAsync(Class<?> dataSourceClass) {
+        try {
+            return dataSourceClass.getMethod("searchAsync", SearchQuery.class).getDeclaringClass()
+                    != WebServiceDataSource.class;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private static boolean isTooManyRequests(SearchResult result) {
+        return SearchResult.ErrorType.TOO_MANY_REQUESTS.equals(result.getErrorType());
+    }
+
+    /**
+     * @return the exception a CompletionException wraps, or the exception itself
+     */
+    protected static Throwable unwrap(Throwable t) {
+        return t instanceof CompletionException && t.getCause() != null ? t.getCause() : t;
+    }
+
+    /**
+     * Turns the outcome of a search into a SearchResult,
+     * classifying errors so the thread pool knows which ones to back off for.
+     */
+    private SearchResult toSearchResult(String key, SearchQuery searchQuery, List<Result> results, Throwable t) {
+        if (t == null) {
+            return new SearchResult(key, results);
+        }
+        Throwable e = unwrap(t);
+        if (e instanceof TooManyRequestsException) {
+            log.warn(String.format("too many requests for query=%s: %s", searchQuery.getQuery(), e.getMessage()));
+            return new SearchResult(key, SearchResult.ErrorType.TOO_MANY_REQUESTS,
+                    ((TooManyRequestsException) e).getRetryAfterMs());
+        }
+        log.error(String.format("error for query=%s", searchQuery.getQuery()), e);
+        if (ConcurrencyLimiter.isOverloaded(e)) {
+            return new SearchResult(key, SearchResult.ErrorType.TOO_MANY_REQUESTS);
         }
-        return results;
+        return new SearchResult(key, SearchResult.ErrorType.UNKNOWN);
+    }
+
+    /**
+     * Submits a search to the thread pool, resubmitting it after a delay if
+     * the upstream turns it away. The delay is whatever the upstream asked
+     * for in a Retry-After header, or else an exponential backoff with
+     * jitter so that retries of a batch don't all arrive at once.
+     * Nothing sleeps while waiting; the thread pool schedules the retry.
+     */
+    private CompletableFuture<SearchResult> submitWithRetries(String key, SearchQuery searchQuery, int attempt, long delayMs) {
+        Supplier<CompletableFuture<SearchResult>> search =
+                () -> searchCheckCacheAsync(searchQuery).handle((results, t) -> toSearchResult(key, searchQuery, results, t));
+        CompletableFuture<SearchResult> submitted;
+        if (searchIsAsync) {
+            submitted = getThreadPool().submitAsync(search, WebServiceDataSource::isTooManyRequests, delayMs);
+        } else {
+            // a blocking search holds a thread for as long as it holds its
+            // slot, so it has to wait for both like any other blocking task
+            submitted = getThreadPool().submit(() -> search.get().join(), WebServiceDataSource::isTooManyRequests, delayMs);
+        }
+        return submitted
+                .thenCompose(result -> {
+                    if (!isTooManyRequests(result)) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    long delay = getRetryDelay(getThreadPool(), "query " + searchQuery.getQuery(),
+                            attempt, result.getRetryAfterMs());
+                    if (delay < 0) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    return submitWithRetries(key, searchQuery, attempt + 1, delay);
+                });
+    }
+
+    /**
+     * Submits async work other than a search, e.g. fetching a record to
+     * fill in a search result, to a thread pool, resubmitting it the way
+     * searches are if the upstream turns it away. The returned future fails
+     * with the last error if the retries run out.
+     *
+     * Work started by a search should go to a pool other than getThreadPool(),
+     * since the search already holds one of its slots.
+     * @param pool pool to run the work in
+     * @param description what the work is, for logging
+     * @param task starts the work
+     * @return future result of the work
+     */
+    protected <T> CompletableFuture<T> submitAsyncWithRetries(ThreadPool pool, String description, Supplier<CompletableFuture<T>> task) {
+        return submitAsyncWithRetries(pool, description, task, 0, 0);
+    }
+
+    private <T> CompletableFuture<T> submitAsyncWithRetries(ThreadPool pool, String description,
+                                                            Supplier<CompletableFuture<T>> task, int attempt, long delayMs) {
+        return pool.submitAsync(task, result -> false, delayMs)
+                .handle((result, t) -> {
+                    if (t == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Throwable e = unwrap(t);
+                    long delay = -1;
+                    if (ConcurrencyLimiter.isOverloaded(e)) {
+                        long retryAfter = e instanceof TooManyRequestsException ?
+                                ((TooManyRequestsException) e).getRetryAfterMs() : -1;
+                        delay = getRetryDelay(pool, description, attempt, retryAfter);
+                    }
+                    if (delay < 0) {
+                        CompletableFuture<T> failed = new CompletableFuture<>();
+                        failed.completeExceptionally(e);
+                        return failed;
+                    }
+                    return submitAsyncWithRetries(pool, description, task, attempt + 1, delay);
+                })
+                .thenCompose(future -> future);
+    }
+
+    /**
+     * @param pool pool the retry will run in, which is paused if the upstream
+     *             asked us to wait
+     * @param attempt number of retries so far
+     * @param retryAfter delay the upstream asked for, or -1 if it didn't
+     * @return how long to wait before retrying something the upstream
+     * turned away, or -1 to give up on it
+     */
+    private long getRetryDelay(ThreadPool pool, String description, int attempt, long retryAfter) {
+        if (attempt >= rateLimit.getMaxRetries()) {
+            return -1;
+        }
+        if (retryAfter > rateLimit.getMaxRetryDelayMs()) {
+            // give up on this one only: pausing the pool that long
+            // would hold up everything else, e.g. for a day
+            log.warn(String.format("Not retrying %s: upstream asked us to wait %dms", description, retryAfter));
+            return -1;
+        }
+        if (retryAfter >= 0) {
+            // hold back everything else for this upstream too
+            pool.pauseFor(retryAfter);
+        }
+        long backoff = rateLimit.getBackoffMs() << attempt;
+        // "equal jitter": between half and all of the backoff
+        long delay = Math.max(retryAfter,
+                backoff / 2 + (long) (ThreadLocalRandom.current().nextDouble() * backoff / 2));
+        log.info(String.format("Retrying %s in %dms (retry %d of %d)",
+                description, delay, attempt + 1, rateLimit.getMaxRetries()));
+        return delay;
     }
 
     /**
      * Performs a search for a single query; this entry point checks the cache, if enabled.
      * This is a "lower level" call than search(Map).
      *
+     * Concurrent calls for the same query (e.g. from different HTTP requests)
+     * are coalesced: only the first one calls searchAsync(SearchQuery), and the others
+     * wait for and share its results.
+     *
      * @param query search to perform
      * @return list of search results (a 0-size list if none, or if errors occurred)
      */
     public List<Result> searchCheckCache(SearchQuery query) throws Exception {
+        return await(searchCheckCacheAsync(query));
+    }
+
+    private String getCacheKey(SearchQuery query) {
+        return getClass().getSimpleName() + "|" + query.getHashKey();
+    }
+
+    /**
+     * @return cached results for the query, or null if there are none
+     * or the cache is disabled
+     */
+    protected List<Result> getCachedResults(SearchQuery query) {
+        if (!isCacheEnabled()) {
+            return null;
+        }
+        String key = getCacheKey(query);
+        Cache.ValueWrapper value = getCacheManager().getCache(Application.CACHE_DEFAULT).get(key);
+        if (value == null) {
+            return null;
+        }
+        log.info("Cache hit for: " + key);
+        return (List<Result>) value.get();
+    }
+
+    /**
+     * Caches the results of a query, if the cache is enabled.
+     */
+    protected void cacheResults(SearchQuery query, List<Result> results) {
         if (isCacheEnabled()) {
-            Cache cache = getCacheManager().getCache(Application.CACHE_DEFAULT);
+            getCacheManager().getCache(Application.CACHE_DEFAULT).put(getCacheKey(query), results);
+        }
+    }
+
+    private Cache getExtensionCache() {
+        if (!isCacheEnabled() || getCacheManager() == null) {
+            return null;
+        }
+        return getCacheManager().getCache(Application.CACHE_EXTENSION);
+    }
 
-            String key = getClass().getSimpleName() + "|" + query.getHashKey();
-            Cache.ValueWrapper value = cache.get(key);
+    /**
+     * @return a cached piece of data extension (cells, column metadata,
+     * proposed properties), or null if there is none or the cache is disabled
+     */
+    protected <T> T getCachedExtension(String key) {
+        Cache cache = getExtensionCache();
+        if (cache == null) {
+            return null;
+        }
+        Cache.ValueWrapper value = cache.get(getClass().getSimpleName() + "|" + key);
+        return value != null ? (T) value.get() : null;
+    }
 
-            List<Result> results;
-            if(value != null) {
-                log.info("Cache hit for: " + key);
-                results = (List<Result>) value.get();
+    /**
+     * Caches a piece of data extension, if the cache is enabled.
+     * Null values, which data sources return on errors, aren't cached.
+     */
+    protected void cacheExtension(String key, Object value) {
+        Cache cache = getExtensionCache();
+        if (cache != null && value != null) {
+            cache.put(getClass().getSimpleName() + "|" + key, value);
+        }
+    }
+
+    /**
+     * Waits for a future, throwing whatever exception it failed with.
+     * Useful for implementing search(SearchQuery) in terms of searchAsync(SearchQuery).
+     */
+    protected static <T> T await(CompletableFuture<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking version of searchCheckCache(). The returned future fails
+     * with whatever exception the search threw.
+     * @param query search to perform
+     * @return future list of search results
+     */
+    public CompletableFuture<List<Result>> searchCheckCacheAsync(SearchQuery query) {
+        String key = getCacheKey(query);
+
+        List<Result> cached = getCachedResults(query);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<List<Result>> future = new CompletableFuture<>();
+        CompletableFuture<List<Result>> inFlight = searchesInFlight.putIfAbsent(key, future);
+        if (inFlight != null) {
+            numCoalescedSearches.incrementAndGet();
+            log.debug("Waiting for search already in flight for: " + key);
+            return inFlight;
+        }
+
+        CompletableFuture<List<Result>> search;
+        try {
+            search = searchAsync(query);
+        } catch (Exception e) {
+            search = new CompletableFuture<>();
+            search.completeExceptionally(e);
+        }
+
+        search.whenComplete((results, t) -> {
+            if (t == null) {
+                cacheResults(query, results);
+            }
+            // no longer in flight by the time anyone sees the results
+            searchesInFlight.remove(key, future);
+            if (t != null) {
+                future.completeExceptionally(unwrap(t));
+            } else {
+                future.complete(results);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Fetches the cells for all the ids at once in the threadpool,
+     * so that the number of requests in flight follows its concurrency limit.
+     */
+    @Override
+    protected Map<String, CellList> extendRows(ExtensionQuery query) throws ServiceNotImplementedException {
+        Map<String, Future<CellList>> futures = new LinkedHashMap<>();
+        for (String id : query.getIds()) {
+            if (!futures.containsKey(id)) {
+                futures.put(id, getThreadPool().submit(() -> extend(id, query.getProperties())));
+            }
+        }
+
+        Map<String, CellList> rows = new HashMap<>();
+        for (Map.Entry<String, Future<CellList>> futureEntry : futures.entrySet()) {
+            rows.put(futureEntry.getKey(), awaitExtension(futureEntry.getValue()));
+        }
+        return rows;
+    }
+
+    /**
+     * Gets the metadata for all the properties at once in the threadpool,
+     * unless they're cached.
+     */
+    @Override
+    protected List<ColumnMetaData> createColumnMetaData(List<PropertyValueIdAndSettings> properties) throws ServiceNotImplementedException {
+        List<Future<ColumnMetaData>> futures = new ArrayList<>();
+        for (PropertyValueIdAndSettings prop : properties) {
+            ColumnMetaData cached = getCachedExtension("meta|" + prop.getId());
+            if (cached != null) {
+                futures.add(CompletableFuture.completedFuture(cached));
             } else {
-                results = search(query);
-                cache.put(key, results);
+                futures.add(getThreadPool().submit(() -> {
+                    ColumnMetaData col = columnMetaData(prop);
+                    cacheExtension("meta|" + prop.getId(), col);
+                    return col;
+                }));
+            }
+        }
+
+        List<ColumnMetaData> meta = new ArrayList<>();
+        for (Future<ColumnMetaData> future : futures) {
+            meta.add(awaitExtension(future));
+        }
+        return meta;
+    }
+
+    /**
+     * Waits for part of an extension, passing on ServiceNotImplementedException.
+     * Other errors are logged and give null, as the data sources' own
+     * extend() and columnMetaData() do.
+     */
+    protected <T> T awaitExtension(Future<T> future) throws ServiceNotImplementedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = unwrap(e.getCause());
+            if (cause instanceof ServiceNotImplementedException) {
+                throw (ServiceNotImplementedException) cause;
             }
-            return results;
+            log.error("Error extending data: " + StringUtil.getStackTrace(cause));
+        } catch (CancellationException e) {
+            log.error("Extension task was cancelled");
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for extension task");
+            Thread.currentThread().interrupt();
         }
+        return null;
+    }
+
+    /**
+     * @return number of searches currently being performed by searchCheckCache()
+     * or searchCheckCacheAsync()
+     */
+    public int getNumSearchesInFlight() {
+        return searchesInFlight.size();
+    }
 
-        return search(query);
+    /**
+     * @return number of calls to searchCheckCache() that waited for
+     * an identical search already in flight, instead of doing their own
+     */
+    public long getNumCoalescedSearches() {
+        return numCoalescedSearches.get();
     }
 
     /**
@@ -246,4 +632,27 @@ public abstract class WebServiceDataSource extends DataSource {
      */
     public abstract List<Result> search(SearchQuery query) throws Exception;
 
+    /**
+     * Perform a search without tying up a thread while waiting on the
+     * upstream service. Like search(SearchQuery), this shouldn't concern
+     * itself with caching or the threadpool.
+     *
+     * This default implementation calls search(SearchQuery) in the calling
+     * thread; data sources that can make non-blocking requests, e.g. with
+     * ConnectionFactory.fetchAsync(), should override it. Searches of data
+     * sources that do are run as async tasks in the threadpool, which don't
+     * hold a thread while they're in flight, so an override mustn't block.
+     * @param query
+     * @return future list of search results
+     */
+    public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+        CompletableFuture<List<Result>> future = new CompletableFuture<>();
+        try {
+            future.complete(search(query));
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
 }
@@ -2,14 +2,25 @@ package com.codefork.refine.geonames;
 
 import com.codefork.refine.*;
 import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.datasource.SearchResponseConsumer;
+import com.codefork.refine.datasource.ServiceNotImplementedException;
 import com.codefork.refine.datasource.WebServiceDataSource;
 import com.codefork.refine.resources.*;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpHost;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
 import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.sparql.util.FmtUtils;
+import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.get.GetRequest;
 import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
 import org.elasticsearch.action.search.SearchRequest;
 import org.elasticsearch.action.search.SearchResponse;
 import org.elasticsearch.client.RequestOptions;
@@ -25,10 +36,25 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
 @Component("geonames")
 public class Geonames extends WebServiceDataSource {
@@ -57,6 +83,9 @@ public class Geonames extends WebServiceDataSource {
     private String graphName;
     private String ontologyGraphName;
 
+    private volatile PropertyStats propertyStats;
+    private ScheduledExecutorService statsScheduler;
+
     // RDF prefixes for GeoNames ontology and resources
     private final String GN_ONTOLOGY_PREFIX = "http://www.geonames.org/ontology#";
     private final String GN_RESOURCE_PREFIX = "http://sws.geonames.org/";
@@ -73,11 +102,34 @@ public class Geonames extends WebServiceDataSource {
 
         this.gnConfig = geonamesConfig;
 
-        this.client = new RestHighLevelClient(RestClient.builder(hosts));
+        GeonamesConfig.ElasticClient clientConfig = geonamesConfig.getElasticClient();
+        this.client = new RestHighLevelClient(RestClient.builder(hosts)
+                .setMaxRetryTimeoutMillis(clientConfig.getMaxRetryTimeout())
+                .setRequestConfigCallback(requestConfig -> requestConfig
+                        .setConnectTimeout(clientConfig.getConnectTimeout())
+                        .setSocketTimeout(clientConfig.getSocketTimeout()))
+                .setHttpClientConfigCallback(httpClient -> httpClient
+                        .setMaxConnTotal(clientConfig.getMaxConnections())
+                        .setMaxConnPerRoute(clientConfig.getMaxConnectionsPerHost())));
 
         this.sparqlEndpoint = geonamesConfig.getVirtuoso().getEndpoint();
         this.graphName = geonamesConfig.getVirtuoso().getGraphName();
         this.ontologyGraphName = geonamesConfig.getVirtuoso().getOntologyGraphName();
+
+        initPropertyStats();
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        if (statsScheduler != null) {
+            statsScheduler.shutdownNow();
+        }
+        try {
+            client.close();
+        } catch (IOException e) {
+            log.error("Error closing Elasticsearch client: " + e);
+        }
     }
 
     @Override
@@ -137,9 +189,9 @@ public class Geonames extends WebServiceDataSource {
                 new NameType(featureCode, featureCode));
     }
 
-    private List<Result> getResultsFromElasticQueryBuilder(BoolQueryBuilder qb, SearchQuery query) {
+    private SearchRequest buildSearchRequest(BoolQueryBuilder qb, SearchQuery query) {
 
-        if (query.getTypeStrict() != null && query.getTypeStrict().equals("should")) {
+        if ("should".equals(query.getTypeStrict()) && query.getNameType() != null) {
             // The type is given as "class.code", or only "class" if the code is not available
             String[] typeSplit = query.getNameType().getId().split("\\.");
             if (typeSplit.length > 0) {
@@ -150,29 +202,26 @@ public class Geonames extends WebServiceDataSource {
             }
         }
 
-        List<Result> results = new ArrayList<>();
         SearchSourceBuilder sourceBuilder = new SearchSourceBuilder();
         sourceBuilder.query(qb);
         sourceBuilder.size(query.getLimit());
 
         SearchRequest searchRequest = new SearchRequest("geonames");
         searchRequest.source(sourceBuilder);
+        return searchRequest;
+    }
 
-        try {
-            SearchResponse searchResponse = client.search(searchRequest, RequestOptions.DEFAULT);
-            SearchHits hits = searchResponse.getHits();
+    private List<Result> getResultsFromSearchResponse(SearchResponse searchResponse) {
+        List<Result> results = new ArrayList<>();
+        SearchHits hits = searchResponse.getHits();
 
-            SearchHit[] searchHits = hits.getHits();
-            for (SearchHit hit : searchHits) {
+        SearchHit[] searchHits = hits.getHits();
+        for (SearchHit hit : searchHits) {
 
-                Result r = buildResultFromSourceMap(hit.getSourceAsMap());
-                r.setScore(hit.getScore());
-                results.add(r);
-            }
-        } catch (IOException e) {
-            e.printStackTrace();
+            Result r = buildResultFromSourceMap(hit.getSourceAsMap());
+            r.setScore(hit.getScore());
+            results.add(r);
         }
-
         return results;
     }
 
@@ -211,110 +260,443 @@ public class Geonames extends WebServiceDataSource {
         }
     }
 
-    private List<Result> matchingByIdentifier(SearchQuery query) {
-        List<Result> results = new ArrayList<>();
+    private GetRequest buildGetRequest(SearchQuery query) {
+        return new GetRequest("geonames", "geoname", query.getQuery());
+    }
 
-        try {
-            GetRequest getRequest = new GetRequest("geonames", "geoname", query.getQuery());
-            GetResponse getResponse = client.get(getRequest, RequestOptions.DEFAULT);
+    private List<Result> getResultsFromGetResponse(GetResponse getResponse, SearchQuery query) {
+        List<Result> results = new ArrayList<>();
+        if (!getResponse.isExists()) {
+            return results;
+        }
 
-            Result r = buildResultFromSourceMap(getResponse.getSourceAsMap());
+        Result r = buildResultFromSourceMap(getResponse.getSourceAsMap());
 
-            // Filter invalid result (i.e., right ID, but different type)
-            if (query.getTypeStrict() == null || (query.getTypeStrict() != null && query.getTypeStrict().equals("should")
-                    && query.getNameType().getId().equalsIgnoreCase(r.getType().get(0).getId()))) {
-                r.setScore(1.);
-                r.setMatch(true);
-                results.add(r);
-            }
-        } catch (IOException e) {
-            System.err.println("Failed to get document from index. " + e.getMessage());
+        // Filter invalid result (i.e., right ID, but different type);
+        // type_strict without a type doesn't filter anything
+        if (query.getTypeStrict() == null || query.getNameType() == null || (query.getTypeStrict().equals("should")
+                && query.getNameType().getId().equalsIgnoreCase(r.getType().get(0).getId()))) {
+            r.setScore(1.);
+            r.setMatch(true);
+            results.add(r);
         }
-
         return results;
     }
 
-    private List<Result> matchingByLookup(SearchQuery query) {
-
-        BoolQueryBuilder boolBuilder = QueryBuilders.boolQuery()
+    private BoolQueryBuilder matchingByLookup(SearchQuery query) {
+        return QueryBuilders.boolQuery()
                 .should(QueryBuilders.matchQuery("name", query.getQuery().toLowerCase()).boost(2.0f))
                 .should(QueryBuilders.matchQuery("alternatenames", query.getQuery().toLowerCase()))
                 .should(QueryBuilders.matchQuery("asciiname", query.getQuery().toLowerCase()).boost(1.5f));
-
-        return getResultsFromElasticQueryBuilder(boolBuilder, query);
     }
 
-    private List<Result> matchingByCoordinate(SearchQuery query, Coordinate coordinate) {
-
-        BoolQueryBuilder boolBuilder = QueryBuilders.boolQuery()
+    private BoolQueryBuilder matchingByCoordinate(Coordinate coordinate) {
+        return QueryBuilders.boolQuery()
                 .must(QueryBuilders.geoDistanceQuery("location")
                         .point(coordinate.latitude, coordinate.longitude)
                         .distance(10, DistanceUnit.KILOMETERS));
+    }
+
+    /**
+     * @return the search request for a query, or null if the query is
+     * a GeoNames ID, to be looked up with buildGetRequest() instead
+     */
+    private SearchRequest createSearchRequest(SearchQuery query) {
+        Coordinate coordinate = this.getCoordinateFromString(query.getQuery());
 
-        return getResultsFromElasticQueryBuilder(boolBuilder, query);
+        if (coordinate != null) {
+            return buildSearchRequest(matchingByCoordinate(coordinate), query);
+        } else if (isGeonamesId(query.getQuery())) {
+            return null;
+        }
+        return buildSearchRequest(matchingByLookup(query), query);
+    }
+
+    /**
+     * Build a single query that selects the candidates having all the
+     * property values in the query. Terms are written by Jena, so property
+     * values can't break the query, whatever characters they contain.
+     *
+     * @param query the query with the property constraints
+     * @param results candidate results
+     * @return SELECT query binding ?s to the matching candidates
+     */
+    Query createPropertiesQuery(SearchQuery query, List<Result> results) {
+        StringBuilder values = new StringBuilder();
+        for (Result res : results) {
+            values.append(" ").append(FmtUtils.stringForNode(NodeFactory.createURI(urifyGeoNamesId(res.getId()))));
+        }
+
+        StringBuilder queryString = new StringBuilder("select distinct ?s where {\n");
+        queryString.append(String.format("  VALUES ?s {%s }\n", values));
+
+        for (Map.Entry<String, PropertyValue> entry : query.getProperties().entrySet()) {
+            if (entry.getValue() != null) {
+                Node object = entry.getValue() instanceof com.codefork.refine.PropertyValueId ?
+                        NodeFactory.createURI(urifyGeoNamesId(entry.getValue().asString())) :
+                        NodeFactory.createLiteral(entry.getValue().asString());
+
+                queryString.append(String.format(
+                        "  ?s %s %s .\n",
+                        FmtUtils.stringForNode(NodeFactory.createURI(urifyPropertyId(entry.getKey()))),
+                        FmtUtils.stringForNode(object)));
+            }
+        }
+
+        queryString.append("}");
+        return QueryFactory.create(queryString.toString());
     }
 
+    /**
+     * Keep the results that have all the property values in the query,
+     * checking every candidate with a single SPARQL query.
+     *
+     * @param query the query with the property constraints
+     * @param results candidate results, in order
+     * @return the candidates that satisfy the constraints, in the same order
+     */
     private List<Result> matchingByProperties(SearchQuery query, List<Result> results) {
 
-        List<Result> lr = new ArrayList<>();
+        if (results.isEmpty()) {
+            return results;
+        }
+
+        Query sparqlQuery = createPropertiesQuery(query, results);
+
+        Set<String> matchingUris = new HashSet<>();
+        try {
+            for (QuerySolution soln : selectFromGraph(sparqlQuery)) {
+                matchingUris.add(soln.getResource("s").getURI());
+            }
+        } catch (Exception e) {
+            log.error("Failed to check properties of candidates: " + e.getMessage());
+        }
 
+        List<Result> lr = new ArrayList<>();
         for (Result res : results) {
+            if (matchingUris.contains(urifyGeoNamesId(res.getId()))) {
+                lr.add(res);
+            }
+        }
+        return lr;
+    }
 
-            StringBuilder queryString = new StringBuilder("ask where {\n");
+    private static boolean hasProperties(SearchQuery query) {
+        return query.getProperties() != null && !query.getProperties().isEmpty();
+    }
+
+    /**
+     * Filter results by the query's properties (if any given) and set the match flag.
+     */
+    private List<Result> finishResults(SearchQuery query, List<Result> results) {
+
+        if (hasProperties(query)) {
+            results = this.matchingByProperties(query, results);
+        }
+
+        // Match if the first result score is equal to 1.0
+        if (results.size() > 0 && results.get(0).getScore() == 1.0) {
+            results.get(0).setMatch(true);
+        }
+
+        return results;
+    }
+
+    /**
+     * @return a listener that completes the future with the client's response
+     */
+    private static <T> ActionListener<T> completing(CompletableFuture<T> future) {
+        return ActionListener.wrap(future::complete, future::completeExceptionally);
+    }
+
+    // requests to the index go through these, so tests can stand in for it
+
+    CompletableFuture<SearchResponse> searchIndex(SearchRequest request) {
+        CompletableFuture<SearchResponse> future = new CompletableFuture<>();
+        client.searchAsync(request, RequestOptions.DEFAULT, completing(future));
+        return future;
+    }
+
+    CompletableFuture<GetResponse> getFromIndex(GetRequest request) {
+        CompletableFuture<GetResponse> future = new CompletableFuture<>();
+        client.getAsync(request, RequestOptions.DEFAULT, completing(future));
+        return future;
+    }
+
+    CompletableFuture<MultiSearchResponse> multiSearchIndex(MultiSearchRequest request) {
+        CompletableFuture<MultiSearchResponse> future = new CompletableFuture<>();
+        client.msearchAsync(request, RequestOptions.DEFAULT, completing(future));
+        return future;
+    }
+
+    CompletableFuture<MultiGetResponse> multiGetFromIndex(MultiGetRequest request) {
+        CompletableFuture<MultiGetResponse> future = new CompletableFuture<>();
+        client.mgetAsync(request, RequestOptions.DEFAULT, completing(future));
+        return future;
+    }
+
+    // and SELECT queries on the graph go through this
+
+    List<QuerySolution> selectFromGraph(Query query) {
+        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(sparqlEndpoint, query, graphName, null, null)) {
+            return ResultSetFormatter.toList(qexec.execSelect());
+        }
+    }
 
-            for (Map.Entry<String, PropertyValue> entry : query.getProperties().entrySet()) {
-                if (entry.getValue() != null) {
-                    String object = entry.getValue() instanceof com.codefork.refine.PropertyValueId ?
-                            String.format("<%s>", urifyGeoNamesId(entry.getValue().asString())) :
-                            String.format("\"%s\"", entry.getValue().asString());
+    /**
+     * Look up a single query in the index, without the property checks.
+     */
+    private CompletableFuture<List<Result>> lookupAsync(SearchQuery query) {
+        SearchRequest searchRequest = createSearchRequest(query);
+        if (searchRequest != null) {
+            return searchIndex(searchRequest).thenApply(this::getResultsFromSearchResponse);
+        }
+        return getFromIndex(buildGetRequest(query))
+                .thenApply(getResponse -> getResultsFromGetResponse(getResponse, query));
+    }
+
+    /**
+     * Look up a batch of queries with a single multi-search request.
+     * @param queries map of hash keys => queries that aren't GeoNames IDs
+     * @param searchRequests map of hash keys => their search requests
+     * @return future map of hash keys => results; queries that failed are absent
+     */
+    private CompletableFuture<Map<String, List<Result>>> multiSearchAsync(Map<String, SearchQuery> queries,
+                                                                        Map<String, SearchRequest> searchRequests) {
+        MultiSearchRequest multiSearchRequest = new MultiSearchRequest();
+        List<String> hashKeys = new ArrayList<>();
+        for (String hashKey : queries.keySet()) {
+            multiSearchRequest.add(searchRequests.get(hashKey));
+            hashKeys.add(hashKey);
+        }
 
-                    queryString.append(String.format(
-                            "<%s> <%s> %s .\n",
-                            urifyGeoNamesId(res.getId()),
-                            urifyPropertyId(entry.getKey()),
-                            object));
+        return multiSearchIndex(multiSearchRequest).thenApply(response -> {
+            Map<String, List<Result>> resultsByHashKey = new HashMap<>();
+            MultiSearchResponse.Item[] items = response.getResponses();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailure()) {
+                    log.error("Failed to search index: " + items[i].getFailureMessage());
+                    continue;
+                }
+                try {
+                    resultsByHashKey.put(hashKeys.get(i), getResultsFromSearchResponse(items[i].getResponse()));
+                } catch (Exception e) {
+                    log.error("Failed to read search results for query " + queries.get(hashKeys.get(i)).getQuery() + ": " + e);
                 }
             }
+            return resultsByHashKey;
+        });
+    }
 
-            queryString.append("}");
-            Query sparqlQuery = QueryFactory.create(queryString.toString());
+    /**
+     * Look up a batch of GeoNames IDs with a single multi-get request.
+     * @param queries map of hash keys => queries that are GeoNames IDs
+     * @return future map of hash keys => results; queries that failed are absent
+     */
+    private CompletableFuture<Map<String, List<Result>>> multiGetAsync(Map<String, SearchQuery> queries) {
+        MultiGetRequest multiGetRequest = new MultiGetRequest();
+        List<String> hashKeys = new ArrayList<>();
+        for (Map.Entry<String, SearchQuery> queryEntry : queries.entrySet()) {
+            GetRequest getRequest = buildGetRequest(queryEntry.getValue());
+            multiGetRequest.add(getRequest.index(), getRequest.type(), getRequest.id());
+            hashKeys.add(queryEntry.getKey());
+        }
 
-            try (QueryExecution qexec = QueryExecutionFactory.sparqlService(sparqlEndpoint, sparqlQuery, graphName, null, null)) {
-                if (qexec.execAsk()) {
-                    lr.add(res);
+        return multiGetFromIndex(multiGetRequest).thenApply(response -> {
+            Map<String, List<Result>> resultsByHashKey = new HashMap<>();
+            MultiGetItemResponse[] items = response.getResponses();
+            for (int i = 0; i < items.length; i++) {
+                if (items[i].isFailed()) {
+                    log.error("Failed to get document from index: " + items[i].getFailure().getMessage());
+                    continue;
+                }
+                String hashKey = hashKeys.get(i);
+                try {
+                    resultsByHashKey.put(hashKey, getResultsFromGetResponse(items[i].getResponse(), queries.get(hashKey)));
+                } catch (Exception e) {
+                    log.error("Failed to read document for query " + queries.get(hashKey).getQuery() + ": " + e);
                 }
-            } catch (Exception e) {
-                e.printStackTrace();
             }
-        }
-        return lr;
+            return resultsByHashKey;
+        });
     }
 
     @Override
     public List<Result> search(SearchQuery query) {
 
-        List<Result> results;
-        Coordinate coordinate = this.getCoordinateFromString(query.getQuery());
+        List<Result> results = new ArrayList<>();
+        try {
+            results = await(lookupAsync(query));
+        } catch (Exception e) {
+            log.error("Failed to query index: " + e.getMessage());
+        }
 
-        if (coordinate != null) {
-            results = this.matchingByCoordinate(query, coordinate);
-        } else if (isGeonamesId(query.getQuery())) {
-            results = this.matchingByIdentifier(query);
-        } else {
-            results = this.matchingByLookup(query);
+        return finishResults(query, results);
+    }
+
+    /**
+     * Runs a whole batch of queries with multi-search requests for the
+     * name and coordinate lookups and multi-get requests for the GeoNames
+     * ID lookups, instead of a request per query. Identical queries are
+     * only sent once, and cached results aren't sent at all.
+     *
+     * The requests are asynchronous: each one holds a slot in the thread
+     * pool's concurrency limit while in flight, but not a thread. Responses
+     * are passed to the consumer as each request, and then the property
+     * checks of its queries, complete.
+     */
+    @Override
+    public void search(Map<String, SearchQuery> queryEntries, SearchResponseConsumer consumer) throws IOException {
+        long start = System.currentTimeMillis();
+        int batchSize = Math.max(1, gnConfig.getElasticClient().getBatchSize());
+
+        Map<String, SearchQuery> distinctQueries = new LinkedHashMap<>();
+        Map<String, List<String>> keysByHashKey = new HashMap<>();
+        for (Map.Entry<String, SearchQuery> queryEntry : queryEntries.entrySet()) {
+            SearchQuery query = queryEntry.getValue();
+            List<Result> cached = getCachedResults(query);
+            if (cached != null) {
+                consumer.accept(queryEntry.getKey(), new com.codefork.refine.resources.SearchResponse(cached));
+                continue;
+            }
+            String hashKey = query.getHashKey();
+            distinctQueries.putIfAbsent(hashKey, query);
+            keysByHashKey.computeIfAbsent(hashKey, k -> new ArrayList<>()).add(queryEntry.getKey());
         }
 
-        // Filter results by properties (if any given)
-        if (!query.getProperties().isEmpty()) {
-            results = this.matchingByProperties(query, results);
+        // hash keys and their finished results, or null if the query failed
+        BlockingQueue<Map.Entry<String, List<Result>>> completed = new LinkedBlockingQueue<>();
+
+        // split into batches of each kind of request
+        List<Map<String, SearchQuery>> searchBatches = new ArrayList<>();
+        List<Map<String, SearchQuery>> getBatches = new ArrayList<>();
+        Map<String, SearchRequest> searchRequests = new HashMap<>();
+        for (Map.Entry<String, SearchQuery> queryEntry : distinctQueries.entrySet()) {
+            SearchRequest searchRequest;
+            try {
+                searchRequest = createSearchRequest(queryEntry.getValue());
+            } catch (Exception e) {
+                // fail this query only, not its whole batch
+                log.error("Failed to build request for query " + queryEntry.getValue().getQuery() + ": " + e);
+                completed.add(new AbstractMap.SimpleImmutableEntry<>(queryEntry.getKey(), null));
+                continue;
+            }
+            List<Map<String, SearchQuery>> batches = getBatches;
+            if (searchRequest != null) {
+                searchRequests.put(queryEntry.getKey(), searchRequest);
+                batches = searchBatches;
+            }
+            if (batches.isEmpty() || batches.get(batches.size() - 1).size() >= batchSize) {
+                batches.add(new LinkedHashMap<>());
+            }
+            batches.get(batches.size() - 1).put(queryEntry.getKey(), queryEntry.getValue());
         }
 
-        // Match if the first result score is equal to 1.0
-        if (results.size() > 0 && results.get(0).getScore() == 1.0) {
-            results.get(0).setMatch(true);
+        for (Map<String, SearchQuery> batch : searchBatches) {
+            submitBatch(batch, queries -> multiSearchAsync(queries, searchRequests), completed);
+        }
+        for (Map<String, SearchQuery> batch : getBatches) {
+            submitBatch(batch, this::multiGetAsync, completed);
         }
 
-        return results;
+        // every query ends up in the queue, but don't wait forever if
+        // the index or the SPARQL endpoint never answers
+        long deadline = start + gnConfig.getElasticClient().getBatchTimeout();
+        Set<String> remaining = new HashSet<>(distinctQueries.keySet());
+        try {
+            while (!remaining.isEmpty()) {
+                Map.Entry<String, List<Result>> entry =
+                        completed.poll(deadline - System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+                if (entry == null) {
+                    log.warn(String.format("Timed out waiting for %d of %d queries", remaining.size(), distinctQueries.size()));
+                    break;
+                }
+                if (!remaining.remove(entry.getKey())) {
+                    continue;
+                }
+                SearchQuery query = distinctQueries.get(entry.getKey());
+                List<Result> results = entry.getValue();
+                if (results != null) {
+                    cacheResults(query, results);
+                } else {
+                    results = new ArrayList<>();
+                }
+                for (String key : keysByHashKey.get(entry.getKey())) {
+                    consumer.accept(key, new com.codefork.refine.resources.SearchResponse(results));
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Interrupted while waiting for search results");
+            Thread.currentThread().interrupt();
+        }
+
+        // return empty arrays for the queries that never finished
+        for (String hashKey : remaining) {
+            for (String key : keysByHashKey.get(hashKey)) {
+                consumer.accept(key, new com.codefork.refine.resources.SearchResponse(new ArrayList<>()));
+            }
+        }
+
+        log.debug(String.format("%d queries (%d distinct) finished in %dms",
+                queryEntries.size(), distinctQueries.size(), System.currentTimeMillis() - start));
+    }
+
+    /**
+     * Send a batch request through the thread pool, then finish the results
+     * of its queries, adding each to the completed queue. Every query of the
+     * batch is added, with null results if anything fails along the way.
+     */
+    private void submitBatch(Map<String, SearchQuery> batch,
+                             Function<Map<String, SearchQuery>, CompletableFuture<Map<String, List<Result>>>> request,
+                             BlockingQueue<Map.Entry<String, List<Result>>> completed) {
+        CompletableFuture<Map<String, List<Result>>> response;
+        try {
+            // the slot is given back before the callbacks below run,
+            // so the property checks can have slots of their own
+            response = getThreadPool().submitAsync(() -> request.apply(batch), resultsByHashKey -> false, 0);
+        } catch (Exception e) {
+            response = new CompletableFuture<>();
+            response.completeExceptionally(e);
+        }
+        response.whenComplete((resultsByHashKey, t) -> {
+            if (t != null) {
+                log.error("Failed to query index: " + t);
+                resultsByHashKey = new HashMap<>();
+            }
+            for (Map.Entry<String, SearchQuery> queryEntry : batch.entrySet()) {
+                String hashKey = queryEntry.getKey();
+                SearchQuery query = queryEntry.getValue();
+                try {
+                    finishQuery(hashKey, query, resultsByHashKey.get(hashKey), completed);
+                } catch (Exception e) {
+                    log.error("Failed to finish results for query " + query.getQuery() + ": " + e);
+                    completed.add(new AbstractMap.SimpleImmutableEntry<>(hashKey, null));
+                }
+            }
+        });
+    }
+
+    /**
+     * Finish the results of one query of a batch, adding them to the
+     * completed queue, unless this throws.
+     * @param results results from the index, or null if the query failed
+     */
+    private void finishQuery(String hashKey, SearchQuery query, List<Result> results,
+                             BlockingQueue<Map.Entry<String, List<Result>>> completed) {
+        if (results == null) {
+            completed.add(new AbstractMap.SimpleImmutableEntry<>(hashKey, null));
+        } else if (!hasProperties(query)) {
+            completed.add(new AbstractMap.SimpleImmutableEntry<>(hashKey, finishResults(query, results)));
+        } else {
+            // checking properties takes a SPARQL query, so do it in the pool
+            getThreadPool().submit(() -> finishResults(query, results))
+                    .whenComplete((finished, e) -> {
+                        if (e != null) {
+                            log.error("Failed to check properties for query " + query.getQuery() + ": " + e);
+                        }
+                        completed.add(new AbstractMap.SimpleImmutableEntry<>(hashKey, finished));
+                    });
+        }
     }
 
     @Override
@@ -322,6 +704,12 @@ public class Geonames extends WebServiceDataSource {
         CellList<String> cl = new CellList<>();
 
         for (PropertyValueIdAndSettings pv : idsAndSettings) {
+            List<Cell> cached = getCachedExtension(extendCacheKey(id, pv));
+            if (cached != null) {
+                cl.put(pv.getId(), cached);
+                continue;
+            }
+
             String queryString = String.format(
                     "PREFIX gn: <%s>\n" +
                             "select ?o ?name where {\n" +
@@ -337,27 +725,143 @@ public class Geonames extends WebServiceDataSource {
             try (QueryExecution qexec = QueryExecutionFactory.sparqlService(sparqlEndpoint, sparqlQuery, graphName, null, null)) {
                 ResultSet sparqlResults = qexec.execSelect();
                 while (sparqlResults.hasNext()) {
-                    QuerySolution soln = sparqlResults.nextSolution();
-                    if (soln.getLiteral("name") != null) {
-                        cells.add(new Cell(soln.getResource("o").getURI()
-                                .replace(GN_RESOURCE_PREFIX, "")
-                                .replace("/", ""),
-                                soln.getLiteral("name").getString()));
-                    } else {
-                        cells.add(new Cell(soln.getLiteral("o").getString()));
-                    }
+                    cells.add(buildCellFromSolution(sparqlResults.nextSolution()));
                 }
 
             } catch (Exception e) {
                 return null;
             }
 
+            cacheExtension(extendCacheKey(id, pv), cells);
             cl.put(pv.getId(), cells);
         }
 
         return cl;
     }
 
+    private static String extendCacheKey(String id, PropertyValueIdAndSettings pv) {
+        return "extend|" + id + "|" + pv.getId();
+    }
+
+    /**
+     * Build a Cell from a solution binding ?o, and ?name if ?o is a GeoNames resource.
+     */
+    private Cell buildCellFromSolution(QuerySolution soln) {
+        if (soln.getLiteral("name") != null) {
+            return new Cell(soln.getResource("o").getURI()
+                    .replace(GN_RESOURCE_PREFIX, "")
+                    .replace("/", ""),
+                    soln.getLiteral("name").getString());
+        }
+        return new Cell(soln.getLiteral("o").getString());
+    }
+
+    /**
+     * Look up one property for a batch of ids with a single SPARQL query,
+     * binding the subjects with VALUES.
+     *
+     * @param ids ids of GeoNames resources; ids that aren't numbers are skipped
+     * @param pv the property to look up
+     * @return map of ids => cells; ids without values for the property are absent
+     */
+    private Map<String, List<Cell>> extendBatch(List<String> ids, PropertyValueIdAndSettings pv) {
+        Map<String, String> idsByUri = new HashMap<>();
+        StringBuilder values = new StringBuilder();
+        for (String id : ids) {
+            if (isGeonamesId(id)) {
+                String uri = urifyGeoNamesId(id);
+                idsByUri.put(uri, id);
+                values.append(String.format(" <%s>", uri));
+            }
+        }
+
+        Map<String, List<Cell>> cellsById = new HashMap<>();
+        if (idsByUri.isEmpty()) {
+            return cellsById;
+        }
+
+        String queryString = String.format(
+                "PREFIX gn: <%s>\n" +
+                        "select ?s ?o ?name where {\n" +
+                        "  VALUES ?s {%s }\n" +
+                        "  ?s <%s> ?o .\n" +
+                        "  OPTIONAL {?o gn:name ?name .}\n" +
+                        "}",
+                GN_ONTOLOGY_PREFIX, values, urifyPropertyId(pv.getId()));
+
+        Query sparqlQuery = QueryFactory.create(queryString);
+
+        for (QuerySolution soln : selectFromGraph(sparqlQuery)) {
+            String id = idsByUri.get(soln.getResource("s").getURI());
+            if (id != null) {
+                cellsById.computeIfAbsent(id, k -> new ArrayList<>()).add(buildCellFromSolution(soln));
+            }
+        }
+        return cellsById;
+    }
+
+    /**
+     * Extend data with one SPARQL query per property and chunk of ids,
+     * run concurrently in the thread pool, instead of one per id and property.
+     * Only the ids whose cells for a property aren't cached are queried.
+     * If a chunk's query fails, the rows of its ids are null, as they are
+     * when extend(String, List) fails.
+     */
+    @Override
+    protected Map<String, CellList> extendRows(ExtensionQuery query) throws ServiceNotImplementedException {
+        int batchSize = gnConfig.getVirtuoso().getExtendBatchSize();
+        if (batchSize <= 0) {
+            return super.extendRows(query);
+        }
+
+        List<String> ids = new ArrayList<>(new LinkedHashSet<>(query.getIds()));
+
+        Map<String, CellList> rows = new HashMap<>();
+        for (String id : ids) {
+            rows.put(id, new CellList<String>());
+        }
+
+        List<PropertyValueIdAndSettings> batchProperties = new ArrayList<>();
+        List<List<String>> batchIds = new ArrayList<>();
+        List<Future<Map<String, List<Cell>>>> futures = new ArrayList<>();
+        for (PropertyValueIdAndSettings pv : query.getProperties()) {
+            List<String> uncached = new ArrayList<>();
+            for (String id : ids) {
+                List<Cell> cached = getCachedExtension(extendCacheKey(id, pv));
+                if (cached != null) {
+                    rows.get(id).put(pv.getId(), cached);
+                } else {
+                    uncached.add(id);
+                }
+            }
+            for (int i = 0; i < uncached.size(); i += batchSize) {
+                List<String> chunk = uncached.subList(i, Math.min(i + batchSize, uncached.size()));
+                batchProperties.add(pv);
+                batchIds.add(chunk);
+                futures.add(getThreadPool().submit(() -> extendBatch(chunk, pv)));
+            }
+        }
+
+        for (int i = 0; i < futures.size(); i++) {
+            Map<String, List<Cell>> cellsById = awaitExtension(futures.get(i));
+            PropertyValueIdAndSettings pv = batchProperties.get(i);
+            for (String id : batchIds.get(i)) {
+                CellList<String> row = rows.get(id);
+                if (cellsById == null) {
+                    rows.put(id, null);
+                } else {
+                    List<Cell> cells = cellsById.getOrDefault(id, new ArrayList<>());
+                    cacheExtension(extendCacheKey(id, pv), cells);
+                    if (row != null) {
+                        row.put(pv.getId(), cells);
+                    }
+                }
+            }
+        }
+
+        return rows;
+    }
+
     @Override
     public ColumnMetaData columnMetaData(PropertyValueIdAndSettings prop) {
 
@@ -408,8 +912,127 @@ public class Geonames extends WebServiceDataSource {
         }
     }
 
+    /**
+     * Loads the persisted property stats, if there are any, and schedules
+     * recomputing them in the background: right away if they're missing
+     * or out of date, then every refresh interval.
+     */
+    private void initPropertyStats() {
+        GeonamesConfig.Stats statsConfig = gnConfig.getStats();
+        if (StringUtils.isEmpty(statsConfig.getFile())) {
+            return;
+        }
+
+        File file = new File(statsConfig.getFile());
+        long intervalMs = TimeUnit.SECONDS.toMillis(statsConfig.getRefreshInterval());
+        long delayMs = 0;
+        if (file.exists()) {
+            try {
+                propertyStats = PropertyStats.load(file);
+                delayMs = Math.max(0, propertyStats.getComputedAt() + intervalMs - System.currentTimeMillis());
+                log.info("Loaded property stats from " + file);
+            } catch (IOException e) {
+                log.error("Couldn't load property stats from " + file + ": " + e);
+            }
+        }
+
+        statsScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "geonames-stats");
+            t.setDaemon(true);
+            return t;
+        });
+        if (intervalMs > 0) {
+            statsScheduler.scheduleWithFixedDelay(() -> refreshPropertyStats(file), delayMs, intervalMs, TimeUnit.MILLISECONDS);
+        } else if (propertyStats == null) {
+            statsScheduler.execute(() -> refreshPropertyStats(file));
+        }
+    }
+
+    private void refreshPropertyStats(File file) {
+        try {
+            log.info("Computing property stats");
+            long start = System.currentTimeMillis();
+            PropertyStats stats = computePropertyStats();
+            propertyStats = stats;
+            log.info(String.format("Computed property stats in %d ms", System.currentTimeMillis() - start));
+            stats.save(file);
+        } catch (Exception e) {
+            // don't let the exception cancel later refreshes
+            log.error("Error computing property stats: " + e);
+        }
+    }
+
+    /**
+     * Counts the properties over the whole graph, and per feature class
+     * and feature code, with one aggregate query each.
+     */
+    private PropertyStats computePropertyStats() {
+        PropertyStats stats = new PropertyStats();
+        addPropertyCounts(stats, "select ?p (count(?p) as ?count)\n" +
+                "where {\n" +
+                "  ?s ?p ?o .\n" +
+                "}\n" +
+                "group by ?p");
+        for (String typeProperty : new String[] { "featureClass", "featureCode" }) {
+            addPropertyCounts(stats, String.format(
+                    "PREFIX gn: <%s>\n" +
+                            "select ?type ?p (count(?p) as ?count)\n" +
+                            "where {\n" +
+                            "  ?s ?p ?o ;\n" +
+                            "     gn:%s ?type .\n" +
+                            "}\n" +
+                            "group by ?type ?p",
+                    GN_ONTOLOGY_PREFIX, typeProperty));
+        }
+        stats.setComputedAt(System.currentTimeMillis());
+        return stats;
+    }
+
+    private void addPropertyCounts(PropertyStats stats, String queryString) {
+        Query sparqlQuery = QueryFactory.create(queryString);
+        try (QueryExecution qexec = QueryExecutionFactory.sparqlService(sparqlEndpoint, sparqlQuery, graphName, null, null)) {
+            ResultSet sparqlResults = qexec.execSelect();
+            while (sparqlResults.hasNext()) {
+                QuerySolution soln = sparqlResults.nextSolution();
+                String type = soln.contains("type")
+                        ? soln.get("type").toString().replace(GN_ONTOLOGY_PREFIX, "")
+                        : PropertyStats.ALL_TYPES;
+                String property = soln.getResource("p").toString().replace(GN_ONTOLOGY_PREFIX, "");
+                stats.add(type, property, soln.getLiteral("count").getLong());
+            }
+        }
+    }
+
+    private static ProposePropertiesResponse createProposePropertiesResponse(List<NameType> properties, String type, int limit) {
+        ProposePropertiesResponse res = new ProposePropertiesResponse();
+        res.setProperties(properties);
+        res.setLimit(limit);
+        res.setType(type);
+        return res;
+    }
+
+    /**
+     * Answered from the precomputed property stats once they're available.
+     * Until then, the counts aggregate over the whole graph, so responses
+     * are cached by type and limit rather than recomputed every time
+     * the OpenRefine dialog is opened.
+     */
     @Override
     public ProposePropertiesResponse proposeProperties(String type, int limit) {
+        PropertyStats stats = propertyStats;
+        if (stats != null) {
+            List<NameType> properties = new ArrayList<>();
+            for (String property : stats.getProperties(type, limit)) {
+                properties.add(new NameType(property, property));
+            }
+            return createProposePropertiesResponse(properties, type, limit);
+        }
+
+        String cacheKey = "propose|" + type + "|" + limit;
+        ProposePropertiesResponse cached = getCachedExtension(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
 
         // TODO: replace this query with a request to ABSTAT!
         String queryString = "select ?p\n" +
@@ -448,10 +1071,8 @@ public class Geonames extends WebServiceDataSource {
                 }
             }
 
-            ProposePropertiesResponse res = new ProposePropertiesResponse();
-            res.setProperties(properties);
-            res.setLimit(limit);
-            res.setType(type);
+            ProposePropertiesResponse res = createProposePropertiesResponse(properties, type, limit);
+            cacheExtension(cacheKey, res);
             return res;
 
         } catch (Exception e) {
@@ -35,10 +35,87 @@ public class GeonamesConfig {
         }
     }
 
+    /**
+     * Settings for the Elasticsearch client; defaults are the client's own.
+     */
+    public static class ElasticClient {
+        private int maxConnections = 30;
+        private int maxConnectionsPerHost = 10;
+        private int connectTimeout = 1000;
+        private int socketTimeout = 30000;
+        private int maxRetryTimeout = 30000;
+        private int batchSize = 100;
+        private int batchTimeout = 120000;
+
+        public int getMaxConnections() {
+            return maxConnections;
+        }
+
+        public void setMaxConnections(int maxConnections) {
+            this.maxConnections = maxConnections;
+        }
+
+        public int getMaxConnectionsPerHost() {
+            return maxConnectionsPerHost;
+        }
+
+        public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+        }
+
+        public int getConnectTimeout() {
+            return connectTimeout;
+        }
+
+        public void setConnectTimeout(int connectTimeout) {
+            this.connectTimeout = connectTimeout;
+        }
+
+        public int getSocketTimeout() {
+            return socketTimeout;
+        }
+
+        public void setSocketTimeout(int socketTimeout) {
+            this.socketTimeout = socketTimeout;
+        }
+
+        public int getMaxRetryTimeout() {
+            return maxRetryTimeout;
+        }
+
+        public void setMaxRetryTimeout(int maxRetryTimeout) {
+            this.maxRetryTimeout = maxRetryTimeout;
+        }
+
+        /**
+         * @return number of queries to send in each multi-search or multi-get request
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * @return ms to wait for the results of a whole batch of queries,
+         * after which the queries still running get no results
+         */
+        public int getBatchTimeout() {
+            return batchTimeout;
+        }
+
+        public void setBatchTimeout(int batchTimeout) {
+            this.batchTimeout = batchTimeout;
+        }
+    }
+
     public static class Virtuoso {
         private String endpoint;
         private String graphName;
         private String ontologyGraphName;
+        private int extendBatchSize = 200;
 
         public String getEndpoint() {
             return endpoint;
@@ -63,10 +140,56 @@ public class GeonamesConfig {
         public void setOntologyGraphName(String ontologyGraphName) {
             this.ontologyGraphName = ontologyGraphName;
         }
+
+        /**
+         * @return number of ids to look up in a single SPARQL query when
+         * extending data; 0 or less for one query per id
+         */
+        public int getExtendBatchSize() {
+            return extendBatchSize;
+        }
+
+        public void setExtendBatchSize(int extendBatchSize) {
+            this.extendBatchSize = extendBatchSize;
+        }
+    }
+
+    /**
+     * Settings for the precomputed property frequencies used to
+     * propose properties.
+     */
+    public static class Stats {
+        private String file;
+        private long refreshInterval = 86400;
+
+        /**
+         * @return path of the file the stats are persisted to; if empty,
+         * stats aren't computed and properties are proposed with SPARQL queries
+         */
+        public String getFile() {
+            return file;
+        }
+
+        public void setFile(String file) {
+            this.file = file;
+        }
+
+        /**
+         * @return seconds between recomputations of the stats
+         */
+        public long getRefreshInterval() {
+            return refreshInterval;
+        }
+
+        public void setRefreshInterval(long refreshInterval) {
+            this.refreshInterval = refreshInterval;
+        }
     }
 
     private List<Elastic> elastic = new ArrayList<>();
+    private ElasticClient elasticClient = new ElasticClient();
     private Virtuoso virtuoso;
+    private Stats stats = new Stats();
     private ProposeProperties proposeProperties;
 
     public List<Elastic> getElastic() {
@@ -77,6 +200,14 @@ public class GeonamesConfig {
         this.elastic = elastic;
     }
 
+    public ElasticClient getElasticClient() {
+        return elasticClient;
+    }
+
+    public void setElasticClient(ElasticClient elasticClient) {
+        this.elasticClient = elasticClient;
+    }
+
     public Virtuoso getVirtuoso() {
         return virtuoso;
     }
@@ -85,6 +216,14 @@ public class GeonamesConfig {
         this.virtuoso = virtuoso;
     }
 
+    public Stats getStats() {
+        return stats;
+    }
+
+    public void setStats(Stats stats) {
+        this.stats = stats;
+    }
+
     public ProposeProperties getProposeProperties() {
         return proposeProperties;
     }
@@ -0,0 +1,99 @@
+package com.codefork.refine.geonames;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Frequencies of the properties used by GeoNames resources, overall and
+ * per feature class (e.g. A) and feature code (e.g. A.ADM1), so that
+ * proposed properties can be answered without aggregating over the graph.
+ *
+ * Stats are persisted as JSON, so they survive restarts.
+ */
+public class PropertyStats {
+
+    /** key of the counts over all resources, whatever their type */
+    public static final String ALL_TYPES = "";
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private long computedAt;
+    private Map<String, Map<String, Long>> counts = new HashMap<>();
+
+    /**
+     * @return time the stats were computed, in ms since the epoch
+     */
+    public long getComputedAt() {
+        return computedAt;
+    }
+
+    public void setComputedAt(long computedAt) {
+        this.computedAt = computedAt;
+    }
+
+    /**
+     * @return map of types => properties => number of statements with the
+     * property about resources of that type
+     */
+    public Map<String, Map<String, Long>> getCounts() {
+        return counts;
+    }
+
+    public void setCounts(Map<String, Map<String, Long>> counts) {
+        this.counts = counts;
+    }
+
+    public void add(String type, String property, long count) {
+        counts.computeIfAbsent(type, k -> new HashMap<>()).merge(property, count, Long::sum);
+    }
+
+    /**
+     * @param type a feature class or code, or null or empty for all types
+     * @param limit max number of properties, 0 or less for all of them
+     * @return properties used by resources of the type, most frequent first
+     */
+    public List<String> getProperties(String type, int limit) {
+        Map<String, Long> histogram = counts.get(type != null ? type : ALL_TYPES);
+        if (histogram == null) {
+            return Collections.emptyList();
+        }
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(histogram.entrySet());
+        entries.sort(Map.Entry.<String, Long>comparingByValue().reversed()
+                .thenComparing(Map.Entry.comparingByKey()));
+        return entries.stream()
+                .limit(limit > 0 ? limit : entries.size())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    public static PropertyStats load(File file) throws IOException {
+        return mapper.readValue(file, PropertyStats.class);
+    }
+
+    /**
+     * Writes the stats to a temporary file that then replaces the given one,
+     * so readers never see a partial file.
+     */
+    public void save(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        parent.mkdirs();
+        File tmp = File.createTempFile(file.getName(), ".tmp", parent);
+        try {
+            mapper.writeValue(tmp, this);
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            tmp.delete();
+        }
+    }
+
+}
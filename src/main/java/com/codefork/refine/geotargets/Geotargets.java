@@ -9,9 +9,6 @@ import com.codefork.refine.resources.NameType;
 import com.codefork.refine.resources.Result;
 import com.codefork.refine.resources.ServiceMetaDataResponse;
 import org.apache.commons.lang3.StringUtils;
-import org.apache.commons.text.similarity.JaroWinklerDistance;
-import org.apache.commons.text.similarity.SimilarityScore;
-import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.RDFDataMgr;
@@ -26,13 +23,17 @@ import java.util.List;
 @Component("geotargets")
 public class Geotargets extends WebServiceDataSource {
 
-    private final Model model = ModelFactory.createDefaultModel();
+    private final NameIndex nameIndex;
     private final double threshold = 0.9;
 
     @Autowired
     public Geotargets(ApplicationConfig config, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory) {
         super(config, cacheManager, threadPoolFactory, connectionFactory);
-        RDFDataMgr.read(this.model, "AdWords_API_Location_Criteria_DE_ES.ttl"); // TODO should be a SPARQL endpoint
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, "AdWords_API_Location_Criteria_DE_ES.ttl"); // TODO should be a SPARQL endpoint
+
+        GeotargetsMetaDataResponse meta = new GeotargetsMetaDataResponse(getName());
+        this.nameIndex = new NameIndex(model, meta.getIdentifierSpace(), meta.getSchemaSpace());
     }
 
     @Override
@@ -45,52 +46,10 @@ public class Geotargets extends WebServiceDataSource {
         return "Google GeoTargets";
     }
 
-    private Result getResultFromIdentifier(String identifier) {
-        GeotargetsMetaDataResponse meta = new GeotargetsMetaDataResponse(this.getName());
-        String idSpace = meta.getIdentifierSpace();
-        String schemaSpace = meta.getSchemaSpace();
-        String queryString = String.format(
-                "SELECT * WHERE { <%s%s> ?p ?o . }",
-                idSpace,
-                identifier);
-
-        Query sparqlQuery = QueryFactory.create(queryString) ;
-        String title = null;
-        List<NameType> nameTypes = new ArrayList<>();
-
-        try (QueryExecution qexec = QueryExecutionFactory.create(sparqlQuery, this.model)) {
-            ResultSet sparqlResults = qexec.execSelect() ;
-
-            for ( ; sparqlResults.hasNext() ; )
-            {
-                QuerySolution soln = sparqlResults.nextSolution() ;
-                if (soln.get("p") != null) {
-                    switch (soln.get("p").toString()) {
-                        case "http://xmlns.com/foaf/0.1/name":
-                            title = soln.getLiteral("o").getString();
-                            break;
-                        case "http://www.w3.org/1999/02/22-rdf-syntax-ns#type":
-                            String type = soln.get("o").toString().replaceAll(schemaSpace, "");
-                            nameTypes.add(new NameType(type, type));
-                            break;
-                        default:
-                            break;
-                    }
-                }
-            }
-        }
-
-        if (title != null && !nameTypes.isEmpty()) {
-            return new Result(identifier, title, nameTypes, 1, true);
-        }
-
-        return null;
-    }
-
     private List<Result> matchingByIdentifier(SearchQuery query) {
         List<Result> results = new ArrayList<>();
 
-        Result res = this.getResultFromIdentifier(query.getQuery());
+        Result res = this.nameIndex.getById(query.getQuery());
         if (res != null) {
             results.add(res);
         }
@@ -99,37 +58,7 @@ public class Geotargets extends WebServiceDataSource {
     }
 
     private List<Result> matchingByLookup(SearchQuery query) {
-        List<Result> results = new ArrayList<>();
-
-        String queryString = "SELECT * WHERE { ?s <http://xmlns.com/foaf/0.1/name> ?o . }"; // get all ProductsServices names
-
-        Query sparqlQuery = QueryFactory.create(queryString) ;
-
-        try (QueryExecution qexec = QueryExecutionFactory.create(sparqlQuery, this.model)) {
-            ResultSet sparqlResults = qexec.execSelect() ;
-            SimilarityScore<Double> jw = new JaroWinklerDistance();
-
-            for ( ; sparqlResults.hasNext() ; )
-            {
-                QuerySolution soln = sparqlResults.nextSolution() ;
-                if (soln.get("o") != null) {
-                    double similarity = jw.apply(query.getQuery(), soln.getLiteral("o").getString());
-
-                    if (similarity > this.threshold && soln.get("s") != null) {
-                        String resource = soln.getResource("s").toString();
-
-                        Result res = this.getResultFromIdentifier(resource.substring(resource.lastIndexOf('/') + 1));
-                        if (res != null) {
-                            res.setScore(similarity);
-                            res.setMatch(false);
-                            results.add(res);
-                        }
-                    }
-                }
-            }
-        }
-
-        return results;
+        return this.nameIndex.lookup(query.getQuery(), this.threshold);
     }
 
     @Override
@@ -0,0 +1,246 @@
+package com.codefork.refine.geotargets;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.apache.commons.text.similarity.JaroWinklerDistance;
+import org.apache.commons.text.similarity.SimilarityScore;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Character q-gram (q=1) inverted index over the foaf:name values in the
+ * Geotargets model, plus a table of the id, name and types of every location.
+ *
+ * Jaro-Winkler similarity can't be bounded by shared bigrams, since matching
+ * characters may be transposed or scattered within the match window. It can be
+ * bounded by the number of characters the two strings have in common, though:
+ * that's an upper limit on the number of matching characters. The posting lists
+ * give us that count for every name sharing a character with the query, so we
+ * only run Jaro-Winkler on the names that can still score above the threshold.
+ */
+public class NameIndex {
+
+    public static final String FOAF_NAME = "http://xmlns.com/foaf/0.1/name";
+
+    /** Jaro-Winkler only adds the prefix bonus above this Jaro similarity */
+    private static final double BOOST_THRESHOLD = 0.7;
+
+    /** slack for floating point rounding when comparing bounds to the threshold */
+    private static final double EPSILON = 1e-9;
+
+    private static class Postings {
+        private int size = 0;
+        private int[] rows = new int[8];
+        private int[] counts = new int[8];
+
+        private void add(int row, int count) {
+            if (size == rows.length) {
+                rows = Arrays.copyOf(rows, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            rows[size] = row;
+            counts[size] = count;
+            size++;
+        }
+    }
+
+    // one entry per (location, name) pair
+    private final String[] names;
+    private final int[] nameRecords;
+
+    // one entry per location that can be turned into a Result
+    private final String[] ids;
+    private final String[] titles;
+    private final List<List<NameType>> types;
+    private final Map<String, Integer> recordsById = new HashMap<>();
+
+    private final Map<Character, Postings> postings = new HashMap<>();
+
+    /**
+     * @param model Geotargets model
+     * @param idSpace prefix stripped from location URIs to get their ids
+     * @param schemaSpace prefix stripped from type URIs
+     */
+    public NameIndex(Model model, String idSpace, String schemaSpace) {
+        Property foafName = model.createProperty(FOAF_NAME);
+
+        List<String> nameList = new ArrayList<>();
+        List<Integer> nameRecordList = new ArrayList<>();
+        List<String> idList = new ArrayList<>();
+        List<String> titleList = new ArrayList<>();
+        List<List<NameType>> typeList = new ArrayList<>();
+
+        Map<String, NameType> nameTypes = new HashMap<>();
+
+        ResIterator subjects = model.listSubjectsWithProperty(foafName);
+        while (subjects.hasNext()) {
+            Resource subject = subjects.next();
+            if (!subject.isURIResource()) {
+                continue;
+            }
+            String uri = subject.getURI();
+            if (!uri.startsWith(idSpace)) {
+                continue;
+            }
+
+            List<String> subjectNames = new ArrayList<>();
+            StmtIterator nameIter = subject.listProperties(foafName);
+            while (nameIter.hasNext()) {
+                RDFNode o = nameIter.next().getObject();
+                if (o.isLiteral()) {
+                    subjectNames.add(((Literal) o).getString());
+                }
+            }
+
+            List<NameType> subjectTypes = new ArrayList<>();
+            StmtIterator typeIter = subject.listProperties(RDF.type);
+            while (typeIter.hasNext()) {
+                String type = typeIter.next().getObject().toString().replaceAll(schemaSpace, "");
+                subjectTypes.add(nameTypes.computeIfAbsent(type, t -> new NameType(t, t)));
+            }
+
+            if (subjectNames.isEmpty() || subjectTypes.isEmpty()) {
+                continue;
+            }
+
+            int record = idList.size();
+            String id = uri.substring(idSpace.length());
+            idList.add(id);
+            titleList.add(subjectNames.get(subjectNames.size() - 1));
+            typeList.add(subjectTypes);
+            recordsById.put(id, record);
+
+            for (String name : subjectNames) {
+                int row = nameList.size();
+                nameList.add(name);
+                nameRecordList.add(record);
+
+                for (Map.Entry<Character, Integer> entry : countChars(name).entrySet()) {
+                    postings.computeIfAbsent(entry.getKey(), c -> new Postings())
+                            .add(row, entry.getValue());
+                }
+            }
+        }
+
+        this.names = nameList.toArray(new String[0]);
+        this.nameRecords = new int[nameRecordList.size()];
+        for (int i = 0; i < nameRecords.length; i++) {
+            nameRecords[i] = nameRecordList.get(i);
+        }
+        this.ids = idList.toArray(new String[0]);
+        this.titles = titleList.toArray(new String[0]);
+        this.types = typeList;
+    }
+
+    private static Map<Character, Integer> countChars(String s) {
+        Map<Character, Integer> counts = new HashMap<>();
+        for (int i = 0; i < s.length(); i++) {
+            counts.merge(s.charAt(i), 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Upper bound on the Jaro-Winkler similarity of two strings with
+     * the given lengths that have at most maxMatches characters in common.
+     */
+    static double maxJaroWinkler(int maxMatches, int length1, int length2) {
+        int m = Math.min(maxMatches, Math.min(length1, length2));
+        if (m == 0) {
+            return 0;
+        }
+        // best case: no transpositions
+        double jaro = ((double) m / length1 + (double) m / length2 + 1.0) / 3.0;
+        if (jaro < BOOST_THRESHOLD) {
+            return jaro;
+        }
+        // best case: every common character is part of the common prefix.
+        // commons-text doesn't cap the prefix length, but scales it by
+        // 1/(length of longer string) when that's smaller than 0.1
+        double scale = Math.min(0.1, 1.0 / Math.max(length1, length2));
+        double bonus = Math.min(1.0, scale * m);
+        return jaro + bonus * (1.0 - jaro);
+    }
+
+    /**
+     * @return number of names in the index
+     */
+    public int size() {
+        return names.length;
+    }
+
+    /**
+     * @return a new Result for the location with the given id, or null if there isn't one
+     */
+    public Result getById(String id) {
+        Integer record = recordsById.get(id);
+        if (record == null) {
+            return null;
+        }
+        return createResult(record, 1, true);
+    }
+
+    /**
+     * Finds the names with a Jaro-Winkler similarity greater than threshold.
+     * @return one Result per matching name, with match set to false
+     */
+    public List<Result> lookup(String query, double threshold) {
+        List<Result> results = new ArrayList<>();
+        int queryLength = query.length();
+        if (queryLength == 0) {
+            return results;
+        }
+
+        // number of characters each name has in common with the query,
+        // and the names that have any at all
+        int[] common = new int[names.length];
+        int[] candidates = new int[names.length];
+        int numCandidates = 0;
+        for (Map.Entry<Character, Integer> entry : countChars(query).entrySet()) {
+            Postings p = postings.get(entry.getKey());
+            if (p != null) {
+                int queryCount = entry.getValue();
+                for (int i = 0; i < p.size; i++) {
+                    int row = p.rows[i];
+                    if (common[row] == 0) {
+                        candidates[numCandidates++] = row;
+                    }
+                    common[row] += Math.min(queryCount, p.counts[i]);
+                }
+            }
+        }
+
+        // keep the order of the names in the index
+        Arrays.sort(candidates, 0, numCandidates);
+
+        SimilarityScore<Double> jw = new JaroWinklerDistance();
+        for (int c = 0; c < numCandidates; c++) {
+            int row = candidates[c];
+            if (maxJaroWinkler(common[row], queryLength, names[row].length()) + EPSILON <= threshold) {
+                continue;
+            }
+            double similarity = jw.apply(query, names[row]);
+            if (similarity > threshold) {
+                results.add(createResult(nameRecords[row], similarity, false));
+            }
+        }
+        return results;
+    }
+
+    private Result createResult(int record, double score, boolean match) {
+        return new Result(ids[record], titles[record], new ArrayList<>(types.get(record)), score, match);
+    }
+
+}
@@ -5,19 +5,17 @@ import com.codefork.refine.SearchQuery;
 import com.codefork.refine.ThreadPoolFactory;
 import com.codefork.refine.datasource.ConnectionFactory;
 import com.codefork.refine.datasource.WebServiceDataSource;
+import com.codefork.refine.parsers.json.JsonArrayExtractor;
 import com.codefork.refine.resources.NameType;
 import com.codefork.refine.resources.Result;
 import com.codefork.refine.resources.ServiceMetaDataResponse;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
-import java.io.InputStreamReader;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 
 @Component("keywordsMatcher")
@@ -26,7 +24,8 @@ public class SemanticKeywordCategoryMatcher extends WebServiceDataSource {
 
     private SemanticKeywordCategoryMatcherConfig config;
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonArrayExtractor categoriesExtractor =
+            new JsonArrayExtractor("/0/categories", "category", "id", "distance");
 
     public SemanticKeywordCategoryMatcher(ApplicationConfig applicationConfig, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory, SemanticKeywordCategoryMatcherConfig config) {
         super(applicationConfig, cacheManager, threadPoolFactory, connectionFactory);
@@ -55,21 +54,13 @@ public class SemanticKeywordCategoryMatcher extends WebServiceDataSource {
 
 
 
-        JsonNode root = mapper.readTree(new InputStreamReader(connection.getInputStream(), "utf-8"));
-        if (root.isArray()) { // it will have only one element actually.
-            JsonNode elem = root.get(0);
-            JsonNode categories = elem.get("categories");
-            if (categories.isArray()) {
-                Iterator<JsonNode> iter = categories.iterator();
-                while (iter.hasNext() && results.size() < query.getLimit()) {
-                    JsonNode doc = iter.next();
-                    String categoryName = doc.get("category").asText();
-                    String categoryId = doc.get("id").asText();
-                    NameType nameType = new NameType("http://www.w3.org/2004/02/skos/core#Concept", "Concept");
-                    double score = doc.get("distance").asDouble();
-                    results.add(new Result(categoryId, categoryName, nameType, 1-score, false));
-                }
-            }
+        // the response has a single element, for the keywords sent
+        NameType nameType = new NameType("http://www.w3.org/2004/02/skos/core#Concept", "Concept");
+        for (JsonNode doc : categoriesExtractor.extract(getInputStream(connection), query.getLimit(), connection)) {
+            String categoryName = doc.path("category").asText();
+            String categoryId = doc.path("id").asText();
+            double score = doc.path("distance").asDouble();
+            results.add(new Result(categoryId, categoryName, nameType, 1-score, false));
         }
         return results;
     }
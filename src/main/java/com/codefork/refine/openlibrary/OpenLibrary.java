@@ -7,33 +7,49 @@ import com.codefork.refine.StringUtil;
 import com.codefork.refine.ThreadPoolFactory;
 import com.codefork.refine.datasource.ConnectionFactory;
 import com.codefork.refine.datasource.WebServiceDataSource;
+import com.codefork.refine.parsers.json.JsonArrayExtractor;
 import com.codefork.refine.resources.NameType;
 import com.codefork.refine.resources.Result;
 import com.codefork.refine.resources.ServiceMetaDataResponse;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriUtils;
 
-import java.net.HttpURLConnection;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
-
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Book search with openlibrary.org, which doesn't like being sent lots of
+ * queries at once. Requests are paced at a steady rate instead, with a few
+ * allowed in flight, so batches go as fast as the pace allows even when
+ * responses are slow. Only the fields and number of docs we use are
+ * requested.
+ */
 @Component("openlibrary")
 public class OpenLibrary extends WebServiceDataSource {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    /** requests per second, unless application.rate-limit.openlibrary says otherwise */
+    public static final double DEFAULT_PERMITS_PER_SECOND = 2;
+
+    private static final JsonArrayExtractor docsExtractor = new JsonArrayExtractor("/docs", "key", "title");
     private static final NameType bookType = new NameType("/book/book", "Book");
 
     @Autowired
-    public OpenLibrary(ApplicationConfig config, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory) {
+    public OpenLibrary(ApplicationConfig config, OpenLibraryConfig openLibraryConfig, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory) {
         super(config, cacheManager, threadPoolFactory, connectionFactory);
 
-        // openlibrary seems to enforce non-simultaneous queries
-        getThreadPool().setPoolSize(1);
+        // openlibrary turns away bursts of queries, so space them out
+        if(config.getRateLimitFor(getConfigName()).getPermitsPerSecond() <= 0) {
+            getThreadPool().setRateLimit(DEFAULT_PERMITS_PER_SECOND, 1);
+        }
+        getThreadPool().setPoolSize(openLibraryConfig.getMaxConcurrentRequests());
     }
 
     @Override
@@ -62,36 +78,65 @@ public class OpenLibrary extends WebServiceDataSource {
         return q;
     }
 
-    @Override
-    public List<Result> search(SearchQuery query) throws Exception {
-        List<Result> results = new ArrayList<>();
-        int tries = 0;
-
-        // try twice, first with properties; if no results, try just the main search value
-        while(results.size() == 0 && tries < 2) {
-            String q = createQuery(query, tries == 0);
-
-            String url = "https://openlibrary.org/search.json?q=" + UriUtils.encodeQueryParam(q, "UTF-8");
-            getLog().debug("Making request to " + url);
-
-            HttpURLConnection conn = getConnectionFactory().createConnection(url);
-
-            JsonNode root = mapper.readTree(conn.getInputStream());
-            JsonNode docs = root.get("docs");
-            if(docs.isArray()) {
-                Iterator<JsonNode> iter = docs.iterator();
-                while(iter.hasNext() && results.size() < query.getLimit()) {
-                    JsonNode doc = iter.next();
-                    String title = doc.get("title").asText();
-                    String key = doc.get("key").asText();
+    /**
+     * @return URL of a search for the string, asking only for
+     * the fields and the number of docs we use
+     */
+    public static String createSearchUrl(String q, int limit) throws UnsupportedEncodingException {
+        return "https://openlibrary.org/search.json?q=" + UriUtils.encodeQueryParam(q, "UTF-8")
+                + "&fields=key,title&limit=" + limit;
+    }
+
+    /**
+     * Responses are small, since only the fields and the number of docs
+     * we use are asked for, so the whole body is fetched before extracting.
+     */
+    private CompletableFuture<List<Result>> searchAsync(String q, int limit) {
+        String url;
+        try {
+            url = createSearchUrl(q, limit);
+        } catch (UnsupportedEncodingException e) {
+            CompletableFuture<List<Result>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+        getLog().debug("Making request to " + url);
+
+        return getConnectionFactory().fetchAsync(url).thenApply(body -> {
+            List<Result> results = new ArrayList<>();
+            try {
+                for(JsonNode doc : docsExtractor.extract(new ByteArrayInputStream(body), limit)) {
+                    String title = doc.path("title").asText();
+                    String key = doc.path("key").asText();
                     results.add(new Result(key, title, bookType, 1.0, false));
                 }
+            } catch (IOException e) {
+                throw new CompletionException(e);
             }
+            return results;
+        });
+    }
 
-            tries++;
-        }
+    @Override
+    public List<Result> search(SearchQuery query) throws Exception {
+        return await(searchAsync(query));
+    }
 
-        return results;
+    /**
+     * Tries first with properties; if there are no results, tries just the
+     * main search value, unless there were no properties to leave out.
+     * The second try waits for the thread pool's rate limit like the first.
+     */
+    @Override
+    public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+        String q = createQuery(query, true);
+        String mainValueOnly = createQuery(query, false);
+        return searchAsync(q, query.getLimit()).thenCompose(results -> {
+            if(results.isEmpty() && !mainValueOnly.equals(q)) {
+                return getThreadPool().submitFollowUp(() -> searchAsync(mainValueOnly, query.getLimit()));
+            }
+            return CompletableFuture.completedFuture(results);
+        });
     }
 
 }
@@ -0,0 +1,23 @@
+package com.codefork.refine.openlibrary;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * OpenLibrary configuration
+ */
+@Configuration
+@ConfigurationProperties(prefix = "datasource.openlibrary")
+public class OpenLibraryConfig {
+
+    // requests in flight at once; their rate is set with application.rate-limit.openlibrary
+    private int maxConcurrentRequests = 4;
+
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Component("orcid")
 public class Orcid extends OrcidBase {
@@ -26,8 +27,12 @@ public class Orcid extends OrcidBase {
 
     @Override
     public List<Result> search(SearchQuery query) throws Exception {
-        List<Result> results = searchKeyword(query);
-        return results;
+        return await(searchAsync(query));
+    }
+
+    @Override
+    public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+        return searchKeywordAsync(query);
     }
 
 }
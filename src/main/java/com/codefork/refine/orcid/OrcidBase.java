@@ -1,6 +1,7 @@
 package com.codefork.refine.orcid;
 
 import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.ConcurrencyLimiter;
 import com.codefork.refine.PropertyValue;
 import com.codefork.refine.SearchQuery;
 import com.codefork.refine.StringUtil;
@@ -16,17 +17,16 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.web.util.UriUtils;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
-import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
+import org.xml.sax.SAXException;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * This isn't very "abstract" since it is aware of smartnames mode.
@@ -37,20 +37,18 @@ public abstract class OrcidBase extends WebServiceDataSource {
 
     Log log = LogFactory.getLog(Orcid.class);
 
-    private SAXParserFactory spf = SAXParserFactory.newInstance();
-
+    // record fetches get their own pool: a search holds a slot in the main
+    // pool until its records are filled in, so waiting for more slots there
+    // could deadlock
     private final ThreadPool threadPoolForIndividualRecords;
 
     @Autowired
     public OrcidBase(ApplicationConfig config, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory) {
         super(config, cacheManager, threadPoolFactory, connectionFactory);
+
         threadPoolForIndividualRecords = threadPoolFactory.createThreadPool();
         threadPoolForIndividualRecords.setPoolSize(20);
-    }
-
-    @Override
-    public ServiceMetaDataResponse createServiceMetaDataResponse(String baseUrl) {
-        return new OrcidMetaDataResponse(getName());
+        applyRateLimit(threadPoolForIndividualRecords);
     }
 
     @Override
@@ -59,6 +57,11 @@ public abstract class OrcidBase extends WebServiceDataSource {
         getThreadPoolFactory().releaseThreadPool(threadPoolForIndividualRecords);
     }
 
+    @Override
+    public ServiceMetaDataResponse createServiceMetaDataResponse(String baseUrl) {
+        return new OrcidMetaDataResponse(getName());
+    }
+
     protected static String createQueryString(SearchQuery query) {
         StringBuilder buf = new StringBuilder();
         buf.append(query.getQuery());
@@ -96,110 +99,104 @@ public abstract class OrcidBase extends WebServiceDataSource {
     }
 
 
-    protected List<Result> searchKeyword(SearchQuery query) throws Exception {
+    protected CompletableFuture<List<Result>> searchKeywordAsync(SearchQuery query) {
         String q = createQueryString(query);
-        String url = String.format("https://pub.orcid.org/v2.1/search/?rows=%d&q=", query.getLimit()) +
-                UriUtils.encodeQueryParam(q, "UTF-8");
-        return doSearch(query, url);
+        return doSearchAsync(query, q);
     }
 
-    protected List<Result> doSearch(SearchQuery query, String url) throws Exception {
-        log.debug("Making request to " + url);
-        HttpURLConnection conn = getConnectionFactory().createConnection(url);
-
-        InputStream response = conn.getInputStream();
-
-        SAXParser parser = spf.newSAXParser();
-        OrcidSearchResultsParser orcidParser = new OrcidSearchResultsParser();
-
-        long start = System.currentTimeMillis();
-        parser.parse(response, orcidParser);
-        long parseTime = System.currentTimeMillis() - start;
-
+    /**
+     * Fetches search results for a query string, then fills them in by fetching the individual
+     * records all at once, without holding a thread for each of them. Responses are parsed
+     * as they arrive.
+     */
+    protected CompletableFuture<List<Result>> doSearchAsync(SearchQuery query, String q) {
+        String url;
         try {
-            response.close();
-            conn.disconnect();
-        } catch(IOException ioe) {
-            log.error("Ignoring error from trying to close input stream and connection: " + ioe);
+            url = String.format("https://pub.orcid.org/v2.1/search/?rows=%d&q=", query.getLimit()) +
+                    UriUtils.encodeQueryParam(q, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            CompletableFuture<List<Result>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
         }
-
-        log.debug(String.format("Query: %s - parsing took %dms, got %d results",
-                query.getQuery(), parseTime, orcidParser.getResults().size()));
-
-        return fillInResults(query, orcidParser.getResults());
+        log.debug("Making request to " + url);
+        OrcidSearchResultsParser orcidParser = new OrcidSearchResultsParser();
+        return getConnectionFactory().fetchAsync(url, (buf, offset, length) -> !orcidParser.feed(buf, offset, length))
+                .thenCompose(ignored -> {
+                    try {
+                        orcidParser.endOfInput();
+                    } catch (XMLStreamException | SAXException e) {
+                        throw new CompletionException(e);
+                    }
+
+                    log.debug(String.format("Query: %s - got %d results",
+                            query.getQuery(), orcidParser.getResults().size()));
+
+                    return fillInResults(query, orcidParser.getResults());
+                });
     }
 
-    class FillInResultTask implements Callable<Result> {
-
-        private SearchQuery query;
-        private Result result;
+    private CompletableFuture<Result> fillInResult(SearchQuery query, Result result) {
+        String url = String.format("https://pub.orcid.org/v2.1/%s/record", result.getId());
 
-        public FillInResultTask(SearchQuery query, Result result) {
-            this.query = query;
-            this.result = result;
-        }
-
-        @Override
-        public Result call() throws Exception {
-            String url = String.format("https://pub.orcid.org/v2.1/%s/record", result.getId());
-
-            log.debug("Filling in ORCID result: making request to " + url);
+        log.debug("Filling in ORCID result: making request to " + url);
 
-            HttpURLConnection conn = getConnectionFactory().createConnection(url);
-            InputStream response = conn.getInputStream();
-
-            SAXParser parser = spf.newSAXParser();
+        return submitAsyncWithRetries(threadPoolForIndividualRecords, "ORCID record " + result.getId(), () -> {
             OrcidIndividualRecordParser orcidParser = new OrcidIndividualRecordParser(result);
+            return getConnectionFactory().fetchAsync(url, (buf, offset, length) -> !orcidParser.feed(buf, offset, length)).thenApply(ignored -> {
+                try {
+                    orcidParser.endOfInput();
+                } catch (XMLStreamException | SAXException e) {
+                    throw new CompletionException(e);
+                }
 
-            parser.parse(response, orcidParser);
-
-            try {
-                response.close();
-                conn.disconnect();
-            } catch(IOException ioe) {
-                log.error("Ignoring error from trying to close input stream and connection: " + ioe);
-            }
-
-            Result result = orcidParser.getParseState().result;
+                Result filledIn = orcidParser.getParseState().result;
 
-            if(result != null) {
-                if(result.getName() != null) {
-                    result.setScore(StringUtil.levenshteinDistanceRatio(result.getName(), query.getQuery()));
-                } else {
-                    log.warn("Name not found in record for " + result.getId());
+                if(filledIn != null) {
+                    if(filledIn.getName() != null) {
+                        filledIn.setScore(StringUtil.levenshteinDistanceRatio(filledIn.getName(), query.getQuery()));
+                    } else {
+                        log.warn("Name not found in record for " + filledIn.getId());
+                    }
                 }
-            }
 
-            return result;
-        }
+                return filledIn;
+            });
+        });
     }
 
     /**
-     * given a list of Results with id field populated, fills in the name and other fields
+     * given a list of Results with id field populated, fills in the name and other fields;
+     * results whose records couldn't be fetched are left out, unless ORCID turned the
+     * requests away, in which case the search fails rather than return (and cache)
+     * a partial list
      * @param results
      * @return
      */
-    private List<Result> fillInResults(SearchQuery query, List<Result> results) {
-        List<FillInResultTask> tasks = new ArrayList<>();
+    private CompletableFuture<List<Result>> fillInResults(SearchQuery query, List<Result> results) {
+        List<CompletableFuture<Result>> futures = new ArrayList<>();
         for (Result result : results) {
-            tasks.add(new FillInResultTask(query, result));
-        }
-
-        List<Future<Result>> futures = new ArrayList<>();
-        for (FillInResultTask task : tasks) {
-            futures.add(threadPoolForIndividualRecords.submit(task));
+            futures.add(fillInResult(query, result).exceptionally(t -> {
+                Throwable e = unwrap(t);
+                if (ConcurrencyLimiter.isOverloaded(e) || e instanceof CancellationException) {
+                    throw new CompletionException(e);
+                }
+                log.error("fillInResults: error filling in result: " + StringUtil.getStackTrace(e));
+                return null;
+            }));
         }
 
-        List<Result> returnResults = new ArrayList<>();
-        for (Future<Result> future : futures) {
-            try {
-                Result result = future.get();
-                returnResults.add(result);
-            } catch (InterruptedException | ExecutionException  e) {
-                log.error("fillInResults: error getting value from future: " + StringUtil.getStackTrace(e));
-            }
-        }
-        return returnResults;
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(ignored -> {
+                    List<Result> returnResults = new ArrayList<>();
+                    for (CompletableFuture<Result> future : futures) {
+                        Result result = future.join();
+                        if (result != null) {
+                            returnResults.add(result);
+                        }
+                    }
+                    return returnResults;
+                });
     }
 
 }
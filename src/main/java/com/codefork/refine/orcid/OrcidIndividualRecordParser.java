@@ -51,6 +51,14 @@ public class OrcidIndividualRecordParser extends XMLParser<ParseState> {
                         parseState.captureChars = false;
                     }
                 });
+
+        // the rest of the record (works, fundings...) isn't needed
+        staticEndElementHandlers.put("record/person/name",
+                new EndElementHandler<ParseState>() {
+                    public void handle(ParseState parseState, String uri, String localName, String qName) {
+                        parseState.done = true;
+                    }
+                });
     }
 
     public OrcidIndividualRecordParser(Result result) {
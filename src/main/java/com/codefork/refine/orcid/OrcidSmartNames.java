@@ -11,10 +11,10 @@ import com.fasterxml.jackson.databind.JsonNode;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
-import org.springframework.web.util.UriUtils;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 @Component("orcidsmartnames")
 public class OrcidSmartNames extends OrcidBase {
@@ -39,30 +39,35 @@ public class OrcidSmartNames extends OrcidBase {
 
     @Override
     public List<Result> search(SearchQuery query) throws Exception {
-        List<Result> results = Collections.emptyList();
+        return await(searchAsync(query));
+    }
+
+    @Override
+    public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+        CompletableFuture<List<Result>> results = CompletableFuture.completedFuture(Collections.emptyList());
 
         if(query.isOrcidSmartNamesMode()) {
             String name = query.getQuery();
             String[] namePieces = parseName(name);
             if(namePieces != null) {
-                results = searchSmartNames(query, namePieces[0], namePieces[1]);
+                results = searchSmartNamesAsync(query, namePieces[0], namePieces[1]);
             }
         }
-        if(results.isEmpty()) {
-            results = searchKeyword(query);
-        }
-        return results;
+        return results.thenCompose(smartNamesResults -> {
+            if(smartNamesResults.isEmpty()) {
+                return searchKeywordAsync(query);
+            }
+            return CompletableFuture.completedFuture(smartNamesResults);
+        });
     }
 
-    private List<Result> searchSmartNames(SearchQuery query, String givenName, String familyName) throws Exception {
+    private CompletableFuture<List<Result>> searchSmartNamesAsync(SearchQuery query, String givenName, String familyName) {
         String q = String.format("given-names:%s AND family-name:%s", givenName, familyName);
         String fields = createSearchFieldsQueryString(query);
         if(fields.length() > 0) {
             q += " " + fields;
         }
-        String url = String.format("https://pub.orcid.org/v2.1/search/?rows=%d&q=", query.getLimit()) +
-                UriUtils.encodeQueryParam(q, "UTF-8");
-        return doSearch(query, url);
+        return doSearchAsync(query, q);
     }
 
     /**
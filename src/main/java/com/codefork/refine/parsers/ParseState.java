@@ -15,4 +15,7 @@ public class ParseState {
     /** buffer for collecting contents of an Element as parser does processing */
     public StringBuilder buf = new StringBuilder();
 
+    /** set by handlers once the rest of the document isn't needed */
+    public boolean done = false;
+
 }
@@ -0,0 +1,170 @@
+package com.codefork.refine.parsers.json;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pulls a few fields out of the elements of an array in a JSON document,
+ * e.g. the key and title of the docs in a search response, with a
+ * streaming parser instead of building a tree of the whole document.
+ * Everything else is skipped, and reading stops once enough elements
+ * have been read.
+ *
+ * Extractors keep no state between calls, so they can be shared.
+ */
+public class JsonArrayExtractor {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private final JsonPointer arrayPointer;
+    private final Set<String> fields;
+
+    /**
+     * @param arrayPointer JSON pointer to the array, e.g. /docs or /0/categories
+     * @param fields names of the fields to read from each element
+     */
+    public JsonArrayExtractor(String arrayPointer, String... fields) {
+        this.arrayPointer = JsonPointer.compile(arrayPointer);
+        this.fields = new HashSet<>(Arrays.asList(fields));
+    }
+
+    /**
+     * Closes the stream when done.
+     * @param limit max number of elements to read
+     * @return an object for each element read, with whichever of the fields
+     * the element has; empty if the document has no array at the pointer
+     */
+    public List<ObjectNode> extract(InputStream in, int limit) throws IOException {
+        return extract(in, limit, null);
+    }
+
+    /**
+     * Closes the stream when done. Closing a pooled connection's stream
+     * reads the rest of the response, so if reading stops before the end
+     * of the array, or fails, the connection is dropped first instead.
+     * @param limit max number of elements to read
+     * @param conn connection the stream comes from, or null
+     * @return an object for each element read, with whichever of the fields
+     * the element has; empty if the document has no array at the pointer
+     */
+    public List<ObjectNode> extract(InputStream in, int limit, HttpURLConnection conn) throws IOException {
+        List<ObjectNode> elements = new ArrayList<>();
+        JsonParser parser = mapper.getFactory().createParser(in);
+        // until we get to the end of the array
+        boolean stoppedEarly = true;
+        try {
+            stoppedEarly = !readArray(parser, limit, elements);
+        } finally {
+            if (stoppedEarly && conn != null) {
+                conn.disconnect();
+            }
+            parser.close();
+        }
+        return elements;
+    }
+
+    /**
+     * @return true if it got to the end of the array
+     */
+    private boolean readArray(JsonParser parser, int limit, List<ObjectNode> elements) throws IOException {
+        if (!moveTo(parser, arrayPointer)) {
+            return false;
+        }
+        while (elements.size() < limit) {
+            JsonToken token = parser.nextToken();
+            if (token == JsonToken.END_ARRAY || token == null) {
+                return token == JsonToken.END_ARRAY;
+            }
+            if (token != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            elements.add(readFields(parser));
+        }
+        // the limit is often the length of the array, so look at the next
+        // token; anything else there, even if it's malformed, isn't read
+        try {
+            return parser.nextToken() == JsonToken.END_ARRAY;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private ObjectNode readFields(JsonParser parser) throws IOException {
+        ObjectNode element = mapper.createObjectNode();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.getCurrentName();
+            parser.nextToken();
+            if (fields.contains(name)) {
+                JsonNode value = mapper.readTree(parser);
+                element.set(name, value != null ? value : NullNode.getInstance());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return element;
+    }
+
+    /**
+     * Reads up to the start of the array the pointer points to.
+     * @return false if there's no array there
+     */
+    private static boolean moveTo(JsonParser parser, JsonPointer pointer) throws IOException {
+        JsonToken token = parser.nextToken();
+        while (!pointer.matches()) {
+            if (token == JsonToken.START_OBJECT && pointer.mayMatchProperty()) {
+                token = moveToField(parser, pointer.getMatchingProperty());
+            } else if (token == JsonToken.START_ARRAY && pointer.mayMatchElement()) {
+                token = moveToElement(parser, pointer.getMatchingIndex());
+            } else {
+                return false;
+            }
+            if (token == null) {
+                return false;
+            }
+            pointer = pointer.tail();
+        }
+        return token == JsonToken.START_ARRAY;
+    }
+
+    /**
+     * @return first token of the field's value, or null if the object has no such field
+     */
+    private static JsonToken moveToField(JsonParser parser, String name) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            JsonToken value = parser.nextToken();
+            if (name.equals(parser.getCurrentName())) {
+                return value;
+            }
+            parser.skipChildren();
+        }
+        return null;
+    }
+
+    /**
+     * @return first token of the element, or null if the array is too short
+     */
+    private static JsonToken moveToElement(JsonParser parser, int index) throws IOException {
+        JsonToken token = parser.nextToken();
+        for (int i = 0; i < index && token != JsonToken.END_ARRAY && token != null; i++) {
+            parser.skipChildren();
+            token = parser.nextToken();
+        }
+        return token != JsonToken.END_ARRAY ? token : null;
+    }
+
+}
@@ -0,0 +1,80 @@
+package com.codefork.refine.parsers.xml;
+
+import com.codefork.refine.parsers.ParseState;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The start and end element handlers of an XMLParser, compiled into a
+ * trie of element names, so the parser can follow the current path one
+ * element at a time instead of building and looking up path strings.
+ *
+ * A trie is immutable once built and can be shared by parsers running
+ * in different threads.
+ */
+final class ElementPathTrie<R extends ParseState> {
+
+    static final class Node<R extends ParseState> {
+        final Node<R> parent;
+        final Map<String, Node<R>> children = new HashMap<>();
+        StartElementHandler<R> startHandler;
+        EndElementHandler<R> endHandler;
+
+        // children by prefixed qName (e.g. ns2:record), resolved on first sight
+        private final Map<String, Node<R>> childrenByQName = new ConcurrentHashMap<>();
+
+        Node(Node<R> parent) {
+            this.parent = parent;
+        }
+
+        /**
+         * @param qName element name, with or without a namespace prefix
+         * @return child for the element, or null if no handlers are
+         * registered at or below it
+         */
+        Node<R> getChild(String qName) {
+            Node<R> child = children.get(qName);
+            if (child != null || qName.indexOf(':') == -1) {
+                return child;
+            }
+            child = childrenByQName.get(qName);
+            if (child == null) {
+                child = children.get(qName.substring(qName.indexOf(':') + 1));
+                childrenByQName.put(qName, child != null ? child : noMatch());
+            }
+            return child != NO_MATCH ? child : null;
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private static final Node NO_MATCH = new Node<>(null);
+
+    @SuppressWarnings("unchecked")
+    private static <R extends ParseState> Node<R> noMatch() {
+        return (Node<R>) NO_MATCH;
+    }
+
+    final Node<R> root = new Node<>(null);
+
+    ElementPathTrie(Map<String, StartElementHandler<R>> startElementHandlers,
+                    Map<String, EndElementHandler<R>> endElementHandlers) {
+        for (Map.Entry<String, StartElementHandler<R>> entry : startElementHandlers.entrySet()) {
+            getOrCreate(entry.getKey()).startHandler = entry.getValue();
+        }
+        for (Map.Entry<String, EndElementHandler<R>> entry : endElementHandlers.entrySet()) {
+            getOrCreate(entry.getKey()).endHandler = entry.getValue();
+        }
+    }
+
+    private Node<R> getOrCreate(String path) {
+        Node<R> node = root;
+        for (String name : path.split("/")) {
+            Node<R> parent = node;
+            node = node.children.computeIfAbsent(name, k -> new Node<>(parent));
+        }
+        return node;
+    }
+
+}
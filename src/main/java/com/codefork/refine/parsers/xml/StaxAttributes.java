@@ -0,0 +1,97 @@
+package com.codefork.refine.parsers.xml;
+
+import org.xml.sax.Attributes;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * SAX Attributes view of the attributes of the current START_ELEMENT of
+ * an XMLStreamReader, so element handlers work the same with pull parsing.
+ * Like SAX Attributes, it's only valid during the handler call.
+ */
+class StaxAttributes implements Attributes {
+
+    private final XMLStreamReader reader;
+
+    StaxAttributes(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public int getLength() {
+        return reader.getAttributeCount();
+    }
+
+    @Override
+    public String getURI(int index) {
+        String uri = reader.getAttributeNamespace(index);
+        return uri != null ? uri : "";
+    }
+
+    @Override
+    public String getLocalName(int index) {
+        return reader.getAttributeLocalName(index);
+    }
+
+    @Override
+    public String getQName(int index) {
+        String prefix = reader.getAttributePrefix(index);
+        String localName = reader.getAttributeLocalName(index);
+        return prefix == null || prefix.isEmpty() ? localName : prefix + ":" + localName;
+    }
+
+    @Override
+    public String getType(int index) {
+        return reader.getAttributeType(index);
+    }
+
+    @Override
+    public String getValue(int index) {
+        return reader.getAttributeValue(index);
+    }
+
+    @Override
+    public int getIndex(String uri, String localName) {
+        for (int i = 0; i < getLength(); i++) {
+            if (getURI(i).equals(uri) && getLocalName(i).equals(localName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public int getIndex(String qName) {
+        for (int i = 0; i < getLength(); i++) {
+            if (getQName(i).equals(qName)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String getType(String uri, String localName) {
+        int i = getIndex(uri, localName);
+        return i != -1 ? getType(i) : null;
+    }
+
+    @Override
+    public String getType(String qName) {
+        int i = getIndex(qName);
+        return i != -1 ? getType(i) : null;
+    }
+
+    @Override
+    public String getValue(String uri, String localName) {
+        int i = getIndex(uri, localName);
+        return i != -1 ? getValue(i) : null;
+    }
+
+    @Override
+    public String getValue(String qName) {
+        int i = getIndex(qName);
+        return i != -1 ? getValue(i) : null;
+    }
+
+}
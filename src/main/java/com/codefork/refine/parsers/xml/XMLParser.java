@@ -2,24 +2,85 @@ package com.codefork.refine.parsers.xml;
 
 import com.codefork.refine.parsers.ParseState;
 import com.codefork.refine.resources.Result;
+import com.fasterxml.aalto.AsyncByteArrayFeeder;
+import com.fasterxml.aalto.AsyncXMLInputFactory;
+import com.fasterxml.aalto.AsyncXMLStreamReader;
+import com.fasterxml.aalto.stax.InputFactoryImpl;
 import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * SAX parser handler. We use SAX b/c it's faster than loading a whole DOM.
+ *
+ * Subclasses register handlers by slash-separated element path, without
+ * namespace prefixes. Before parsing, the handlers are compiled into an
+ * ElementPathTrie, which all instances of a subclass share when they use
+ * the same handler maps (e.g. static ones) and which is otherwise compiled
+ * once per instance; the parser then tracks the current element by walking
+ * the trie.
+ *
+ * Besides being used as a SAX handler, a parser can pull-parse a stream
+ * with parse(InputStream), which skips over subtrees without handlers and
+ * stops as soon as isDone() returns true, or be fed a document as it
+ * arrives with feed() and endOfInput(), which parse it the same way
+ * without blocking on a stream.
  */
 public abstract class XMLParser<R extends ParseState> extends DefaultHandler {
 
+    private static class CompiledHandlers {
+        final Map<?, ?> startElementHandlers;
+        final Map<?, ?> endElementHandlers;
+        final ElementPathTrie<?> trie;
+
+        CompiledHandlers(Map<?, ?> startElementHandlers, Map<?, ?> endElementHandlers, ElementPathTrie<?> trie) {
+            this.startElementHandlers = startElementHandlers;
+            this.endElementHandlers = endElementHandlers;
+            this.trie = trie;
+        }
+    }
+
+    // Aalto, which can also parse documents fed to it a chunk at a time
+    private static final AsyncXMLInputFactory xmlInputFactory = new InputFactoryImpl();
+
+    static {
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        // like the default SAX parser; the trie ignores prefixes anyway
+        xmlInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, false);
+    }
+
+    // handlers of each subclass, compiled for the first instance
+    private static final Map<Class<?>, CompiledHandlers> compiledHandlers = new ConcurrentHashMap<>();
+
+    // marks subclasses whose instances don't share their handler maps
+    private static final CompiledHandlers PER_INSTANCE = new CompiledHandlers(null, null, null);
+
     protected Map<String, StartElementHandler<R>> startElementHandlers = new HashMap<>();
     protected Map<String, EndElementHandler<R>> endElementHandlers = new HashMap<>();
 
-    public final Stack<String> path = new Stack<>();
+    private ElementPathTrie<R> trie;
+
+    private ElementPathTrie.Node<R> current;
+
+    // depth of the current element below the deepest one in the trie
+    private int unmatchedDepth;
+
+    // reader for documents passed to feed(), created by the first call
+    private AsyncXMLStreamReader<AsyncByteArrayFeeder> asyncReader;
+    private StaxAttributes asyncAttributes;
+    private boolean stopped;
 
     protected R parseState;
 
@@ -42,48 +103,201 @@ public abstract class XMLParser<R extends ParseState> extends DefaultHandler {
         return parseState;
     }
 
-    public String getPath() {
-        StringBuilder buf = new StringBuilder();
-        String delim = "";
-        for(String part : path) {
-            buf.append(delim);
-            buf.append(part);
-            delim = "/";
+    @SuppressWarnings("unchecked")
+    ElementPathTrie<R> getTrie() {
+        if (trie == null) {
+            CompiledHandlers compiled = compiledHandlers.computeIfAbsent(getClass(),
+                    c -> new CompiledHandlers(startElementHandlers, endElementHandlers,
+                            new ElementPathTrie<>(startElementHandlers, endElementHandlers)));
+            if (compiled.startElementHandlers == startElementHandlers
+                    && compiled.endElementHandlers == endElementHandlers) {
+                trie = (ElementPathTrie<R>) compiled.trie;
+            } else {
+                // this subclass fills its own maps in every instance, so stop
+                // holding on to the first instance's handlers
+                if (compiled != PER_INSTANCE) {
+                    compiledHandlers.put(getClass(), PER_INSTANCE);
+                }
+                trie = new ElementPathTrie<>(startElementHandlers, endElementHandlers);
+            }
         }
-        return buf.toString();
+        return trie;
     }
 
-    @Override
-    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+    /**
+     * Subclasses return true once they've got everything they need
+     * from the document, so pull parsing can stop there.
+     * @return true once the parse state has been marked done
+     */
+    public boolean isDone() {
+        return parseState.done;
+    }
+
+    /**
+     * Pull-parses a document, calling the same handlers as SAX parsing
+     * would, but skipping the contents of elements without any handlers
+     * at or below them, and stopping after the end of the element at which
+     * isDone() becomes true. Doesn't close the stream.
+     *
+     * @return true if parsing stopped before the end of the document,
+     * in which case the rest of the stream hasn't been read
+     */
+    public boolean parse(InputStream in) throws XMLStreamException, SAXException {
+        XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in);
+        try {
+            startDocument();
+            boolean stopped = process(reader, new StaxAttributes(reader));
+            endDocument();
+            return stopped;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Parses the next chunk of a document that arrives a piece at a time,
+     * e.g. from a non-blocking HTTP client, handling whatever the chunk
+     * completes the same way parse(InputStream) would. Nothing is kept
+     * from the buffer after this returns, so the caller can reuse it.
+     *
+     * @return true once isDone(), in which case the rest of the document
+     * doesn't need to be fed, and endOfInput() doesn't need to be called
+     */
+    public boolean feed(byte[] buf, int offset, int length) throws XMLStreamException, SAXException {
+        if (stopped) {
+            return true;
+        }
+        if (asyncReader == null) {
+            startFeeding();
+        }
+        asyncReader.getInputFeeder().feedInput(buf, offset, length);
+        if (process(asyncReader, asyncAttributes)) {
+            stopFeeding();
+        }
+        return stopped;
+    }
 
-        // strip ns prefix
-        String name = qName;
-        if(name.contains(":")) {
-            name = qName.split("\\:")[1];
+    /**
+     * Signals the end of a document passed to feed(), handling whatever
+     * was left of it. Fails if the document is incomplete.
+     */
+    public void endOfInput() throws XMLStreamException, SAXException {
+        if (stopped) {
+            return;
+        }
+        if (asyncReader == null) {
+            startFeeding();
+        }
+        asyncReader.getInputFeeder().endOfInput();
+        if (!process(asyncReader, asyncAttributes) && (current.parent != null || unmatchedDepth > 0)) {
+            // e.g. a response that got cut off
+            throw new XMLStreamException("Unexpected end of input inside an element");
         }
-        path.push(name);
+        stopFeeding();
+    }
+
+    private void startFeeding() throws SAXException {
+        asyncReader = xmlInputFactory.createAsyncForByteArray();
+        asyncAttributes = new StaxAttributes(asyncReader);
+        startDocument();
+    }
 
-        String path = getPath();
-        //System.out.println(path);
+    private void stopFeeding() throws XMLStreamException, SAXException {
+        stopped = true;
+        endDocument();
+        asyncReader.close();
+    }
 
-        StartElementHandler<R> handler = startElementHandlers.get(path);
-        if(handler != null) {
-            handler.handle(parseState, uri, localName, qName, attributes);
+    /**
+     * Handles events until the reader reaches the end of the document,
+     * runs out of input that has been fed to it, or isDone() becomes true.
+     * @return true if isDone() became true
+     */
+    private boolean process(XMLStreamReader reader, StaxAttributes attributes) throws XMLStreamException, SAXException {
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case XMLStreamConstants.START_ELEMENT:
+                    if (unmatchedDepth > 0) {
+                        unmatchedDepth++;
+                        break;
+                    }
+                    ElementPathTrie.Node<R> child = current.getChild(reader.getLocalName());
+                    if (child == null) {
+                        unmatchedDepth = 1;
+                        break;
+                    }
+                    current = child;
+                    if (child.startHandler != null) {
+                        child.startHandler.handle(parseState, "", "", reader.getLocalName(), attributes);
+                    }
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    if (unmatchedDepth > 0) {
+                        unmatchedDepth--;
+                        break;
+                    }
+                    if (current.endHandler != null) {
+                        current.endHandler.handle(parseState, "", "", reader.getLocalName());
+                    }
+                    current = current.parent;
+                    if (isDone()) {
+                        return true;
+                    }
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    // like characters(), this keeps text inside unmatched children,
+                    // e.g. the "b" in <title>a <i>b</i></title>
+                    if (parseState.captureChars) {
+                        parseState.buf.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+                    }
+                    break;
+                case AsyncXMLStreamReader.EVENT_INCOMPLETE:
+                    return false;
+                default:
+                    break;
+            }
         }
+        return false;
     }
 
     @Override
-    public void endElement(String uri, String localName, String qName) throws SAXException {
+    public void startDocument() throws SAXException {
+        current = getTrie().root;
+        unmatchedDepth = 0;
+    }
 
-        String path = getPath();
-        //System.out.println(path);
+    @Override
+    public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
+        if (unmatchedDepth > 0) {
+            unmatchedDepth++;
+            return;
+        }
 
-        EndElementHandler<R> handler = endElementHandlers.get(path);
-        if(handler != null) {
-            handler.handle(parseState, uri, localName, qName);
+        ElementPathTrie.Node<R> child = current.getChild(qName);
+        if (child == null) {
+            unmatchedDepth = 1;
+            return;
         }
+        current = child;
 
-        this.path.pop();
+        if (child.startHandler != null) {
+            child.startHandler.handle(parseState, uri, localName, qName, attributes);
+        }
+    }
+
+    @Override
+    public void endElement(String uri, String localName, String qName) throws SAXException {
+        if (unmatchedDepth > 0) {
+            unmatchedDepth--;
+            return;
+        }
+
+        if (current.endHandler != null) {
+            current.endHandler.handle(parseState, uri, localName, qName);
+        }
+        current = current.parent;
     }
 
     @Override
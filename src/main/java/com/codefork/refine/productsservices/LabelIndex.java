@@ -0,0 +1,149 @@
+package com.codefork.refine.productsservices;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.apache.jena.rdf.model.Literal;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.RDFNode;
+import org.apache.jena.rdf.model.Resource;
+import org.apache.jena.rdf.model.ResIterator;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.vocabulary.RDF;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory index of the skos:prefLabel / skos:altLabel pairs in the
+ * ProductsServices model. It's built once from the Jena model so that
+ * searches are a single pass over flat arrays, instead of a SPARQL query
+ * over the whole model (plus one more per hit) for every search.
+ *
+ * Each row corresponds to one (subject, prefLabel, altLabel) solution of
+ * the query we used to run, so scoring is unchanged. For the same reason
+ * the labels are stored as they are in the model rather than normalized:
+ * Jaro-Winkler is case and punctuation sensitive, so lowercasing or
+ * stripping them would change scores and which results count as matches.
+ */
+public class LabelIndex {
+
+    public static final String SKOS_PREFIX = "http://www.w3.org/2004/02/skos/core#";
+    public static final String ID_PREFIX = "http://www.jot-im.com/rdf/adwords/";
+
+    // one entry per (subject, prefLabel, altLabel) row
+    private final String[] prefLabels;
+    private final String[] altLabels;
+    private final int[] rowEntities;
+
+    // one entry per subject that can be turned into a Result
+    private final String[] ids;
+    private final String[] titles;
+    private final List<List<NameType>> types;
+
+    public LabelIndex(Model model) {
+        Property prefLabel = model.createProperty(SKOS_PREFIX + "prefLabel");
+        Property altLabel = model.createProperty(SKOS_PREFIX + "altLabel");
+
+        List<String> prefs = new ArrayList<>();
+        List<String> alts = new ArrayList<>();
+        List<Integer> rows = new ArrayList<>();
+
+        List<String> idList = new ArrayList<>();
+        List<String> titleList = new ArrayList<>();
+        List<List<NameType>> typeList = new ArrayList<>();
+
+        // NameTypes are shared by many entities, so keep one instance of each
+        Map<String, NameType> nameTypes = new HashMap<>();
+
+        ResIterator subjects = model.listSubjectsWithProperty(prefLabel);
+        while (subjects.hasNext()) {
+            Resource subject = subjects.next();
+            if (!subject.isURIResource()) {
+                continue;
+            }
+
+            String title = null;
+            for (RDFNode o : listObjects(subject, prefLabel)) {
+                if (o.isLiteral()) {
+                    title = ((Literal) o).getString();
+                }
+            }
+
+            List<NameType> entityTypes = new ArrayList<>();
+            for (RDFNode o : listObjects(subject, RDF.type)) {
+                String type = o.toString();
+                entityTypes.add(nameTypes.computeIfAbsent(type, t -> new NameType(t, t)));
+            }
+
+            // same requirements as a lookup by identifier: no title or
+            // no type means the entity can never be returned
+            if (title == null || entityTypes.isEmpty()) {
+                continue;
+            }
+
+            int entity = idList.size();
+            idList.add(subject.getURI().replace(ID_PREFIX, ""));
+            titleList.add(title);
+            typeList.add(entityTypes);
+
+            List<RDFNode> altObjects = listObjects(subject, altLabel);
+            for (RDFNode pref : listObjects(subject, prefLabel)) {
+                for (RDFNode alt : altObjects) {
+                    if (pref.isLiteral() && alt.isLiteral()) {
+                        prefs.add(((Literal) pref).getString());
+                        alts.add(((Literal) alt).getString());
+                        rows.add(entity);
+                    }
+                }
+            }
+        }
+
+        this.prefLabels = prefs.toArray(new String[0]);
+        this.altLabels = alts.toArray(new String[0]);
+        this.rowEntities = new int[rows.size()];
+        for (int i = 0; i < rowEntities.length; i++) {
+            rowEntities[i] = rows.get(i);
+        }
+
+        this.ids = idList.toArray(new String[0]);
+        this.titles = titleList.toArray(new String[0]);
+        this.types = typeList;
+    }
+
+    private static List<RDFNode> listObjects(Resource subject, Property property) {
+        List<RDFNode> objects = new ArrayList<>();
+        StmtIterator iter = subject.listProperties(property);
+        while (iter.hasNext()) {
+            objects.add(iter.next().getObject());
+        }
+        return objects;
+    }
+
+    /**
+     * @return number of (subject, prefLabel, altLabel) rows in the index
+     */
+    public int size() {
+        return prefLabels.length;
+    }
+
+    public String getPrefLabel(int row) {
+        return prefLabels[row];
+    }
+
+    public String getAltLabel(int row) {
+        return altLabels[row];
+    }
+
+    /**
+     * Creates a new Result for the entity of the given row. A new object is
+     * returned on each call, since callers modify score and match.
+     */
+    public Result createResult(int row, double score) {
+        int entity = rowEntities[row];
+        return new Result(ids[entity], titles[entity], new ArrayList<>(types.get(entity)), score, false);
+    }
+
+}
@@ -10,7 +10,6 @@ import com.codefork.refine.resources.Result;
 import com.codefork.refine.resources.ServiceMetaDataResponse;
 import org.apache.commons.text.similarity.JaroWinklerDistance;
 import org.apache.commons.text.similarity.SimilarityScore;
-import org.apache.jena.query.*;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.riot.RDFDataMgr;
@@ -25,14 +24,16 @@ import java.util.List;
 @Component("productsservices")
 public class ProductsServices extends WebServiceDataSource {
 
-    private final Model model = ModelFactory.createDefaultModel();
+    private final LabelIndex labelIndex;
     private final double threshold = 0.9;
     private final double alpha = 0.5;
 
     @Autowired
     public ProductsServices(ApplicationConfig config, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory) {
         super(config, cacheManager, threadPoolFactory, connectionFactory);
-        RDFDataMgr.read(this.model, "productsservices.ttl"); // TODO should be a SPARQL endpoint
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, "productsservices.ttl"); // TODO should be a SPARQL endpoint
+        this.labelIndex = new LabelIndex(model);
     }
 
     @Override
@@ -45,87 +46,27 @@ public class ProductsServices extends WebServiceDataSource {
         return "Google ProductsServices Categories";
     }
 
-    private Result getResultFromIdentifier(String identifier) {
-        String queryString = String.format("SELECT * WHERE { <%s> ?p ?o . }", identifier);
-
-        Query sparqlQuery = QueryFactory.create(queryString) ;
-        String title = null;
-        List<NameType> nameTypes = new ArrayList<>();
-
-        try (QueryExecution qexec = QueryExecutionFactory.create(sparqlQuery, this.model)) {
-            ResultSet sparqlResults = qexec.execSelect() ;
-
-            for ( ; sparqlResults.hasNext() ; )
-            {
-                QuerySolution soln = sparqlResults.nextSolution() ;
-                if (soln.get("p") != null) {
-                    switch (soln.get("p").toString()) {
-                        case "http://www.w3.org/2004/02/skos/core#prefLabel":
-                            title = soln.getLiteral("o").getString();
-                            break;
-                        case "http://www.w3.org/1999/02/22-rdf-syntax-ns#type":
-                            nameTypes.add(new NameType(soln.get("o").toString(), soln.get("o").toString()));
-                            break;
-                        default:
-                            break;
-                    }
-                }
-            }
-        }
-
-        if (title != null && !nameTypes.isEmpty()) {
-            identifier = identifier.replace("http://www.jot-im.com/rdf/adwords/", "");
-            return new Result(identifier, title, nameTypes, 1, true);
-        }
-
-        return null;
-    }
-
     @Override
     public List<Result> search(SearchQuery query) {
 
         List<Result> results = new ArrayList<>();
 
-        String queryString = "PREFIX skos: <http://www.w3.org/2004/02/skos/core#>" +
-                "SELECT * WHERE { ?s skos:prefLabel ?pref ; skos:altLabel ?alt }"; // get all ProductsServices names
-
-        Query sparqlQuery = QueryFactory.create(queryString) ;
-
-        try (QueryExecution qexec = QueryExecutionFactory.create(sparqlQuery, this.model)) {
-            ResultSet sparqlResults = qexec.execSelect() ;
-
-            for ( ; sparqlResults.hasNext() ; )
-            {
-                QuerySolution soln = sparqlResults.nextSolution() ;
-                SimilarityScore<Double> jw = new JaroWinklerDistance();
-                double prefSim = -1.;
-                double altSim = -1.;
-                double similarity = -1.;
-
-                if (soln.get("pref") != null) {
-                    prefSim = jw.apply(query.getQuery(), soln.getLiteral("pref").getString());
-                }
-
-                if (soln.get("alt") != null) {
-                    altSim = jw.apply(query.getQuery(), soln.getLiteral("alt").getString());
-                }
-
-                if (prefSim == 1.0 || altSim == 1.0) {
-                    similarity = 1.0;
-                } else {
-                    similarity = alpha * prefSim + (1 - alpha) * altSim;
-                }
-
-                if (similarity > this.threshold && soln.get("s") != null) {
-                    String resource = soln.getResource("s").toString();
-
-                    Result res = this.getResultFromIdentifier(resource);
-                    if (res != null) {
-                        res.setScore(similarity);
-                        res.setMatch(false);
-                        results.add(res);
-                    }
-                }
+        SimilarityScore<Double> jw = new JaroWinklerDistance();
+        String q = query.getQuery();
+
+        for (int row = 0; row < labelIndex.size(); row++) {
+            double prefSim = jw.apply(q, labelIndex.getPrefLabel(row));
+            double altSim = jw.apply(q, labelIndex.getAltLabel(row));
+            double similarity;
+
+            if (prefSim == 1.0 || altSim == 1.0) {
+                similarity = 1.0;
+            } else {
+                similarity = alpha * prefSim + (1 - alpha) * altSim;
+            }
+
+            if (similarity > this.threshold) {
+                results.add(labelIndex.createResult(row, similarity));
             }
         }
 
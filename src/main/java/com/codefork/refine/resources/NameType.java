@@ -1,6 +1,8 @@
 
 package com.codefork.refine.resources;
 
+import java.io.Serializable;
+
 /**
  * Name Types are a JSON object found in the service metadata
  * and in the results data.
@@ -8,7 +10,9 @@ package com.codefork.refine.resources;
  * the id/name combo is used in at least 2 diff places to represent
  * name types but also Properties
  */
-public class NameType {
+public class NameType implements Serializable {
+
+    private static final long serialVersionUID = 1L;
 
     private String id;
     private String name;
@@ -1,6 +1,7 @@
 
 package com.codefork.refine.resources;
 
+import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -21,8 +22,10 @@ import java.util.List;
  *     'match': true
  * }
  */
-public class Result {
-    
+public class Result implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
     private String id;
     private String name;
 
@@ -14,13 +14,15 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriUtils;
+import org.xml.sax.SAXException;
 
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * Data source for a Solr interface
@@ -31,8 +33,6 @@ public class Solr extends WebServiceDataSource {
     private SolrConfig solrConfig;
     Log log = LogFactory.getLog(Solr.class);
 
-    private SAXParserFactory spf = SAXParserFactory.newInstance();
-
     @Autowired
     public Solr(ApplicationConfig config, SolrConfig solrConfig, CacheManager cacheManager, ThreadPoolFactory threadPoolFactory, ConnectionFactory connectionFactory) {
         super(config, cacheManager, threadPoolFactory, connectionFactory);
@@ -50,13 +50,7 @@ public class Solr extends WebServiceDataSource {
                 .replace("{{ROWS}}", String.valueOf(query.getLimit()));
     }
 
-    @Override
-    public List<Result> search(SearchQuery query) throws Exception {
-        String url = createURL(query);
-        log.debug("Making request to " + url);
-        HttpURLConnection conn = getConnectionFactory().createConnection(url);
-
-        InputStream response = conn.getInputStream();
+    private SolrParser createParser() {
         MultiValueFieldStrategy multiValueFieldStrategy = MultiValueFieldStrategy.CONCAT;
         if(MultiValueFieldStrategy.CONCAT.toString().toLowerCase().equals(this.solrConfig.getField().getMultiValue().getStrategy())) {
             multiValueFieldStrategy = MultiValueFieldStrategy.CONCAT;
@@ -64,29 +58,76 @@ public class Solr extends WebServiceDataSource {
             multiValueFieldStrategy = MultiValueFieldStrategy.FIRST;
         }
 
-        SAXParser parser = spf.newSAXParser();
-        SolrParser solrParser = new SolrParser(
+        return new SolrParser(
                 this.solrConfig.getField().getId(),
                 this.solrConfig.getField().getName(),
                 multiValueFieldStrategy,
                 this.solrConfig.getField().getMultiValue().getDelimiter(),
                 new NameType(this.solrConfig.getNameType().getId(), this.solrConfig.getNameType().getName())
         );
+    }
 
-        long start = System.currentTimeMillis();
-        parser.parse(response, solrParser);
-        long parseTime = System.currentTimeMillis() - start;
+    @Override
+    public List<Result> search(SearchQuery query) throws Exception {
+        String url = createURL(query);
+        log.debug("Making request to " + url);
+        HttpURLConnection conn = getConnectionFactory().createConnection(url);
+
+        InputStream response = getInputStream(conn);
+        SolrParser solrParser = createParser();
 
+        long start = System.currentTimeMillis();
+        // until the parser gets to the end of the response
+        boolean stoppedEarly = true;
         try {
-            response.close();
-            conn.disconnect();
-        } catch(IOException ioe) {
-            log.error("Ignoring error from trying to close input stream and connection: " + ioe);
+            stoppedEarly = solrParser.parse(response);
+        } finally {
+            if (stoppedEarly) {
+                // drop the connection rather than read the rest of the
+                // response, which also frees it if parsing failed
+                conn.disconnect();
+            }
+            try {
+                response.close();
+            } catch(IOException ioe) {
+                log.error("Ignoring error from trying to close input stream: " + ioe);
+            }
         }
+        long parseTime = System.currentTimeMillis() - start;
 
         log.debug(String.format("Query: %s - parsing took %dms, got %d results",
                 query.getQuery(), parseTime, solrParser.getResults().size()));
 
         return solrParser.getResults();
     }
+
+    /**
+     * Makes the request without blocking, and parses the response
+     * as it arrives.
+     */
+    @Override
+    public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+        String url;
+        try {
+            url = createURL(query);
+        } catch (Exception e) {
+            CompletableFuture<List<Result>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        SolrParser solrParser = createParser();
+        return getConnectionFactory().fetchAsync(url, (buf, offset, length) -> !solrParser.feed(buf, offset, length))
+                .thenApply(ignored -> {
+                    try {
+                        solrParser.endOfInput();
+                    } catch (XMLStreamException | SAXException e) {
+                        throw new CompletionException(e);
+                    }
+
+                    log.debug(String.format("Query: %s - got %d results",
+                            query.getQuery(), solrParser.getResults().size()));
+                    return solrParser.getResults();
+                });
+    }
 }
@@ -10,6 +10,12 @@ public class SolrParseState extends ParseState {
 
     enum Field { ID, NAME }
 
+    // settings of the Solr data source
+    String fieldId;
+    String fieldName;
+    MultiValueFieldStrategy multiValueFieldStrategy;
+    String multiValueFieldDelimiter;
+
     Field fieldBeingCaptured;
 
     List<String> multipleValues = new ArrayList<>();
@@ -7,38 +7,29 @@ import com.codefork.refine.resources.NameType;
 import com.codefork.refine.resources.Result;
 import org.xml.sax.Attributes;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public class SolrParser extends XMLParser<SolrParseState> {
 
-    private String fieldId;
-    private String fieldName;
-    private MultiValueFieldStrategy multiValueFieldStrategy;
-    private String multiValueFieldDelimiter;
+    // the handlers get the fields to read from the parse state,
+    // so every parser shares them and their compiled trie
+    private final static Map<String, StartElementHandler<SolrParseState>> staticStartElementHandlers = new HashMap<>();
+    private final static Map<String, EndElementHandler<SolrParseState>> staticEndElementHandlers = new HashMap<>();
 
-    /**
-     * @param fieldId solr fieldname to use for 'id' field in reconciliation result
-     * @param fieldName solr fieldname to use for 'name' field in reconciliation result
-     * @param nameType all records parsed from Solr will have this nameType
-     */
-    public SolrParser(String fieldId, String fieldName, final MultiValueFieldStrategy multiValueFieldStrategy, String multiValueFieldDelimiter, NameType nameType) {
-        super();
-        this.fieldId = fieldId;
-        this.fieldName = fieldName;
-        this.multiValueFieldStrategy = multiValueFieldStrategy;
-        this.multiValueFieldDelimiter = multiValueFieldDelimiter;
-        this.getParseState().nameTypes.add(nameType);
-
-        startElementHandlers.put("response/result/doc/arr",
+    static {
+        staticStartElementHandlers.put("response/result/doc/arr",
                 new StartElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName, Attributes attributes) {
-                        if (SolrParser.this.fieldId.equals(attributes.getValue("name"))) {
+                        if (parseState.fieldId.equals(attributes.getValue("name"))) {
                             parseState.fieldBeingCaptured = SolrParseState.Field.ID;
-                        } else if (SolrParser.this.fieldName.equals(attributes.getValue("name"))) {
+                        } else if (parseState.fieldName.equals(attributes.getValue("name"))) {
                             parseState.fieldBeingCaptured = SolrParseState.Field.NAME;
                         }
                     }
         });
 
-        startElementHandlers.put("response/result/doc/arr/str",
+        staticStartElementHandlers.put("response/result/doc/arr/str",
                 new StartElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName, Attributes attributes) {
                         if(parseState.fieldBeingCaptured != null) {
@@ -47,12 +38,12 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
         });
 
-        startElementHandlers.put("response/result/doc/str",
+        staticStartElementHandlers.put("response/result/doc/str",
                 new StartElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName, Attributes attributes) {
-                        if (SolrParser.this.fieldId.equals(attributes.getValue("name"))) {
+                        if (parseState.fieldId.equals(attributes.getValue("name"))) {
                             parseState.fieldBeingCaptured = SolrParseState.Field.ID;
-                        } else if(SolrParser.this.fieldName.equals(attributes.getValue("name"))) {
+                        } else if(parseState.fieldName.equals(attributes.getValue("name"))) {
                             parseState.fieldBeingCaptured = SolrParseState.Field.NAME;
                         }
                         if(parseState.fieldBeingCaptured != null) {
@@ -61,7 +52,7 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        startElementHandlers.put("response/result/doc/float",
+        staticStartElementHandlers.put("response/result/doc/float",
                 new StartElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName, Attributes attributes) {
                         if ("score".equals(attributes.getValue("name"))) {
@@ -70,7 +61,7 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        startElementHandlers.put("response/result/doc",
+        staticStartElementHandlers.put("response/result/doc",
                 new StartElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName, Attributes attributes) {
                         parseState.result = new Result();
@@ -78,20 +69,20 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        endElementHandlers.put("response/result/doc/arr",
+        staticEndElementHandlers.put("response/result/doc/arr",
                 new EndElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName) {
                         if (SolrParseState.Field.NAME.equals(parseState.fieldBeingCaptured)) {
-                            if(MultiValueFieldStrategy.CONCAT.equals(SolrParser.this.multiValueFieldStrategy)) {
+                            if(MultiValueFieldStrategy.CONCAT.equals(parseState.multiValueFieldStrategy)) {
                                 StringBuilder buf = new StringBuilder();
                                 String delim = "";
                                 for(String s: parseState.multipleValues) {
                                     buf.append(delim);
                                     buf.append(s);
-                                    delim = SolrParser.this.multiValueFieldDelimiter;
+                                    delim = parseState.multiValueFieldDelimiter;
                                 }
                                 parseState.result.setName(buf.toString());
-                            } else if(MultiValueFieldStrategy.FIRST.equals(SolrParser.this.multiValueFieldStrategy)) {
+                            } else if(MultiValueFieldStrategy.FIRST.equals(parseState.multiValueFieldStrategy)) {
                                 if(parseState.multipleValues.size() > 0) {
                                     parseState.result.setName(parseState.multipleValues.get(0));
                                 }
@@ -102,7 +93,7 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        endElementHandlers.put("response/result/doc/arr/str",
+        staticEndElementHandlers.put("response/result/doc/arr/str",
                 new EndElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName) {
                         String s = parseState.buf.toString();
@@ -114,7 +105,7 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        endElementHandlers.put("response/result/doc/str",
+        staticEndElementHandlers.put("response/result/doc/str",
                 new EndElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName) {
                         String s = parseState.buf.toString();
@@ -129,7 +120,7 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        endElementHandlers.put("response/result/doc/float",
+        staticEndElementHandlers.put("response/result/doc/float",
                 new EndElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName) {
                         String s = parseState.buf.toString();
@@ -139,7 +130,7 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
-        endElementHandlers.put("response/result/doc",
+        staticEndElementHandlers.put("response/result/doc",
                 new EndElementHandler<SolrParseState>() {
                     public void handle(SolrParseState parseState, String uri, String localName, String qName) {
                         parseState.results.add(parseState.result);
@@ -147,6 +138,30 @@ public class SolrParser extends XMLParser<SolrParseState> {
                     }
                 });
 
+        // facets, highlighting etc. come after the results
+        staticEndElementHandlers.put("response/result",
+                new EndElementHandler<SolrParseState>() {
+                    public void handle(SolrParseState parseState, String uri, String localName, String qName) {
+                        parseState.done = true;
+                    }
+                });
+    }
+
+    /**
+     * @param fieldId solr fieldname to use for 'id' field in reconciliation result
+     * @param fieldName solr fieldname to use for 'name' field in reconciliation result
+     * @param nameType all records parsed from Solr will have this nameType
+     */
+    public SolrParser(String fieldId, String fieldName, final MultiValueFieldStrategy multiValueFieldStrategy, String multiValueFieldDelimiter, NameType nameType) {
+        super();
+        this.startElementHandlers = staticStartElementHandlers;
+        this.endElementHandlers = staticEndElementHandlers;
+        SolrParseState parseState = getParseState();
+        parseState.fieldId = fieldId;
+        parseState.fieldName = fieldName;
+        parseState.multiValueFieldStrategy = multiValueFieldStrategy;
+        parseState.multiValueFieldDelimiter = multiValueFieldDelimiter;
+        parseState.nameTypes.add(nameType);
     }
 
     @Override
@@ -20,16 +20,17 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.util.UriUtils;
 import org.xml.sax.SAXException;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpURLConnection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * VIAF data source base class. This is the "basic" service without
@@ -41,7 +42,6 @@ import java.util.Map;
 @Component("viaf")
 public class VIAF extends WebServiceDataSource {
 
-    private SAXParserFactory spf;
 
     private VIAFSource viafSource = null;
     private Map<String, NonVIAFSource> nonViafSources = new HashMap<>();
@@ -51,8 +51,6 @@ public class VIAF extends WebServiceDataSource {
         super(config, cacheManager, threadPoolFactory, connectionFactory);
 
         setCacheEnabled(true);
-
-        spf = SAXParserFactory.newInstance();
     }
 
     /**
@@ -124,40 +122,54 @@ public class VIAF extends WebServiceDataSource {
     }
 
     /**
-     * Does actual work of performing a search and parsing the XML.
-     * @param query
-     * @return
-     * @throws ParserConfigurationException
-     * @throws SAXException
-     * @throws IOException
+     * @return URL of the VIAF search API for the query, or null if
+     * the query can't be sent to VIAF
      */
-    @Override
-    public List<Result> search(SearchQuery query) throws Exception {
+    private static String createSearchUrl(SearchQuery query) throws UnsupportedEncodingException {
         String cql = createCqlQueryString(query);
 
         if(cql == null) {
-            return Collections.emptyList();
+            return null;
         }
 
-        String url = String.format("http://www.viaf.org/viaf/search?query=%s&sortKeys=holdingscount&maximumRecords=%s&httpAccept=application/xml",
+        return String.format("http://www.viaf.org/viaf/search?query=%s&sortKeys=holdingscount&maximumRecords=%s&httpAccept=application/xml",
                 UriUtils.encodeQueryParam(cql, "UTF-8"), query.getLimit());
+    }
 
-        HttpURLConnection conn = getConnectionFactory().createConnection(url);
-        InputStream response = conn.getInputStream();
-
-        SAXParser parser = spf.newSAXParser();
+    /**
+     * Does actual work of parsing the XML.
+     * @param query
+     * @param response
+     * @param conn connection the response is read from; if parsing fails,
+     *             it's dropped instead of reading the rest of the response
+     * @return
+     * @throws XMLStreamException
+     * @throws SAXException
+     */
+    private List<Result> parse(SearchQuery query, InputStream response, HttpURLConnection conn) throws XMLStreamException, SAXException {
         VIAFParser viafParser = new VIAFParser(findSource(query), query);
 
         long start = System.currentTimeMillis();
-        parser.parse(response, viafParser);
-        long parseTime = System.currentTimeMillis() - start;
-
+        boolean parsed = false;
         try {
-            response.close();
-            conn.disconnect();
-        } catch(IOException ioe) {
-            getLog().error("Ignoring error from trying to close input stream and connection: " + ioe);
+            if (viafParser.parse(response)) {
+                // after a full page of records, usually only the echoed
+                // request is left, which is cheaper to read than to drop
+                // the connection for
+                ConnectionFactory.skipRest(conn, response);
+            }
+            parsed = true;
+        } finally {
+            if (!parsed) {
+                conn.disconnect();
+            }
+            try {
+                response.close();
+            } catch(IOException ioe) {
+                getLog().error("Ignoring error from trying to close input stream: " + ioe);
+            }
         }
+        long parseTime = System.currentTimeMillis() - start;
 
         List<Result> results = viafParser.getResults();
         getLog().debug(String.format("Query: %s - parsing took %dms, got %d results",
@@ -166,6 +178,52 @@ public class VIAF extends WebServiceDataSource {
         return results;
     }
 
+    @Override
+    public List<Result> search(SearchQuery query) throws Exception {
+        String url = createSearchUrl(query);
+
+        if(url == null) {
+            return Collections.emptyList();
+        }
+
+        HttpURLConnection conn = getConnectionFactory().createConnection(url);
+        return parse(query, getInputStream(conn), conn);
+    }
+
+    /**
+     * Makes the request without blocking, and parses the response
+     * as it arrives.
+     */
+    @Override
+    public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+        String url;
+        try {
+            url = createSearchUrl(query);
+        } catch (UnsupportedEncodingException e) {
+            CompletableFuture<List<Result>> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+
+        if(url == null) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+
+        VIAFParser viafParser = new VIAFParser(findSource(query), query);
+        return getConnectionFactory().fetchAsync(url, (buf, offset, length) -> !viafParser.feed(buf, offset, length))
+                .thenApply(ignored -> {
+                    try {
+                        viafParser.endOfInput();
+                    } catch (XMLStreamException | SAXException e) {
+                        throw new CompletionException(e);
+                    }
+
+                    List<Result> results = viafParser.getResults();
+                    getLog().debug(String.format("Query: %s - got %d results", query.getQuery(), results.size()));
+                    return results;
+                });
+    }
+
     public static class SourceSpecificSearchQueryFactory implements SearchQueryFactory {
         private String source;
 
@@ -215,6 +215,15 @@ public class VIAFParser extends XMLParser<VIAFParseState> {
         return new VIAFParseState();
     }
 
+    /**
+     * Done once there's a record for every result asked for,
+     * e.g. before the echoed request and diagnostics.
+     */
+    @Override
+    public boolean isDone() {
+        return query.getLimit() > 0 && parseState.viafResults.size() >= query.getLimit();
+    }
+
     @Override
     public void endDocument() {
         for (VIAFResult viafResult : parseState.viafResults) {
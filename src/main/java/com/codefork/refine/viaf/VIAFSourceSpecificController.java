@@ -1,5 +1,6 @@
 package com.codefork.refine.viaf;
 
+import com.codefork.refine.controllers.SearchResponseStreamWriter;
 import com.codefork.refine.resources.SearchResponse;
 import com.codefork.refine.viaf.VIAF;
 import com.codefork.refine.viaf.VIAFMetaDataResponse;
@@ -11,6 +12,8 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -51,4 +54,13 @@ public class VIAFSourceSpecificController {
         return viaf.queryMultiple(queries, new VIAF.SourceSpecificSearchQueryFactory(source));
     }
 
+    @RequestMapping(value = { "", "/" }, params = { "queries", "stream" })
+    public void sourceSpecificQueryMultipleStreaming(
+            @PathVariable String source, @RequestParam(value = "queries") String queries,
+            @RequestParam(value = "stream") String stream, HttpServletResponse response) throws IOException {
+        try (SearchResponseStreamWriter writer = new SearchResponseStreamWriter(response, stream)) {
+            viaf.queryMultiple(queries, new VIAF.SourceSpecificSearchQueryFactory(source), writer);
+        }
+    }
+
 }
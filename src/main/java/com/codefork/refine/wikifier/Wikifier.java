@@ -5,11 +5,11 @@ import com.codefork.refine.SearchQuery;
 import com.codefork.refine.ThreadPoolFactory;
 import com.codefork.refine.datasource.ConnectionFactory;
 import com.codefork.refine.datasource.WebServiceDataSource;
+import com.codefork.refine.parsers.json.JsonArrayExtractor;
 import com.codefork.refine.resources.NameType;
 import com.codefork.refine.resources.Result;
 import com.codefork.refine.resources.ServiceMetaDataResponse;
 import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
@@ -17,14 +17,15 @@ import org.springframework.stereotype.Component;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.util.ArrayList;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Properties;
 
 @Component("wikifier")
 public class Wikifier extends WebServiceDataSource {
 
-    private final ObjectMapper mapper = new ObjectMapper();
+    private static final JsonArrayExtractor annotationsExtractor =
+            new JsonArrayExtractor("/annotations", "title", "dbPediaIri", "dbPediaTypes", "pageRank");
+
     private String apiToken;
 
     @Autowired
@@ -64,22 +65,15 @@ public class Wikifier extends WebServiceDataSource {
 
         HttpURLConnection conn = getConnectionFactory().createConnection(url);
 
-        JsonNode root = mapper.readTree(conn.getInputStream());
-        JsonNode annotations = root.get("annotations");
-        if (annotations.isArray()) {
-            Iterator<JsonNode> iter = annotations.iterator();
-            while (iter.hasNext() && results.size() < query.getLimit()) {
-                JsonNode doc = iter.next();
-                String title = doc.get("title").asText();
-                String key = doc.get("dbPediaIri").asText().replace("http://dbpedia.org/resource/","");
-                JsonNode types = doc.get("dbPediaTypes");
-                List<NameType> nameTypes = new ArrayList<>();
-                for (JsonNode type : types) {
-                    nameTypes.add(new NameType(type.asText(), type.asText()));
-                }
-                Double pageRank = doc.get("pageRank").asDouble();
-                results.add(new Result(key, title, nameTypes, pageRank, false));
+        for (JsonNode doc : annotationsExtractor.extract(getInputStream(conn), query.getLimit(), conn)) {
+            String title = doc.path("title").asText();
+            String key = doc.path("dbPediaIri").asText().replace("http://dbpedia.org/resource/","");
+            List<NameType> nameTypes = new ArrayList<>();
+            for (JsonNode type : doc.path("dbPediaTypes")) {
+                nameTypes.add(new NameType(type.asText(), type.asText()));
             }
+            Double pageRank = doc.path("pageRank").asDouble();
+            results.add(new Result(key, title, nameTypes, pageRank, false));
         }
         return results;
     }
@@ -0,0 +1,79 @@
+package com.codefork.refine;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CacheManagerTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ApplicationConfig createApplicationConfig() throws Exception {
+        ApplicationConfig config = new ApplicationConfig();
+        ApplicationConfig.Cache cacheConfig = new ApplicationConfig.Cache();
+        cacheConfig.setEnabled(true);
+        cacheConfig.setTtl(3600);
+        cacheConfig.setSize("1MB");
+        cacheConfig.setOffheap("2MB");
+        cacheConfig.getDisk().setPath(folder.newFolder("cache").getAbsolutePath());
+        cacheConfig.getDisk().setSize("4MB");
+        config.setCache(cacheConfig);
+        return config;
+    }
+
+    @Test
+    public void testPersistentTier() throws Exception {
+        ApplicationConfig config = createApplicationConfig();
+
+        List<Result> results = new ArrayList<>();
+        results.add(new Result("96994048", "Shakespeare, William, 1564-1616.",
+                new NameType("/people/person", "Person"), 0.3125, false));
+
+        CacheManager cacheManager = new Application().cacheManager(config);
+        cacheManager.getCache(Application.CACHE_DEFAULT).put("VIAF|shakespeare", results);
+        ((Application.ClosingJCacheCacheManager) cacheManager).destroy();
+
+        // a new cache manager, e.g. after a restart, should find the entry on disk
+        cacheManager = new Application().cacheManager(config);
+        Cache.ValueWrapper value = cacheManager.getCache(Application.CACHE_DEFAULT).get("VIAF|shakespeare");
+        assertTrue(value != null);
+
+        List<Result> cached = (List<Result>) value.get();
+        assertEquals(1, cached.size());
+        assertEquals("96994048", cached.get(0).getId());
+        assertEquals("Shakespeare, William, 1564-1616.", cached.get(0).getName());
+        assertEquals("/people/person", cached.get(0).getType().get(0).getId());
+        assertEquals(0.3125, cached.get(0).getScore(), 0.0);
+
+        ((Application.ClosingJCacheCacheManager) cacheManager).destroy();
+    }
+
+    @Test
+    public void testExtensionCache() throws Exception {
+        ApplicationConfig config = createApplicationConfig();
+
+        List<NameType> properties = new ArrayList<>();
+        properties.add(new NameType("population", "population"));
+
+        CacheManager cacheManager = new Application().cacheManager(config);
+        Cache cache = cacheManager.getCache(Application.CACHE_EXTENSION);
+        assertTrue(cache != null);
+        cache.put("Geonames|propose|null|0", properties);
+        assertEquals(properties, cache.get("Geonames|propose|null|0").get());
+        assertTrue(cacheManager.getCache(Application.CACHE_DEFAULT).get("Geonames|propose|null|0") == null);
+
+        ((Application.ClosingJCacheCacheManager) cacheManager).destroy();
+    }
+
+}
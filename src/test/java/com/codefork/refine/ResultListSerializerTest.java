@@ -0,0 +1,100 @@
+package com.codefork.refine;
+
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.ehcache.impl.serialization.PlainJavaSerializer;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ResultListSerializerTest {
+
+    private final ResultListSerializer serializer = new ResultListSerializer(getClass().getClassLoader());
+
+    private static List<Result> createResults() {
+        List<Result> results = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            results.add(new Result(String.valueOf(96994048 + i), "Shakespeare, William, 1564-1616. " + i,
+                    new NameType("/people/person", "Person"), 0.3125, i == 0));
+        }
+        results.add(new Result("102333412", "Wittgenstein, Ludwig, 1889–1951",
+                new NameType("/organization/organization", "Corporate Name"), 0.5, false));
+        results.add(new Result(null, "no id or types", (List<NameType>) null, -1, false));
+        return results;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<Result> results = createResults();
+
+        List<Result> read = (List<Result>) serializer.read(serializer.serialize(results));
+
+        assertEquals(results.size(), read.size());
+        for (int i = 0; i < results.size(); i++) {
+            Result expected = results.get(i);
+            Result actual = read.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getName(), actual.getName());
+            assertEquals(expected.getScore(), actual.getScore(), 0.0);
+            assertEquals(expected.isMatch(), actual.isMatch());
+            if (expected.getType() == null) {
+                assertNull(actual.getType());
+            } else {
+                assertEquals(expected.getType().get(0).getId(), actual.getType().get(0).getId());
+                assertEquals(expected.getType().get(0).getName(), actual.getType().get(0).getName());
+            }
+        }
+
+        // types are shared between results and between entries
+        assertSame(read.get(0).getType().get(0), read.get(1).getType().get(0));
+        List<Result> readAgain = (List<Result>) serializer.read(serializer.serialize(results));
+        assertSame(read.get(0).getType().get(0), readAgain.get(0).getType().get(0));
+    }
+
+    @Test
+    public void testReadFromDirectBuffer() throws Exception {
+        ByteBuffer serialized = serializer.serialize(createResults());
+        ByteBuffer direct = ByteBuffer.allocateDirect(serialized.remaining());
+        direct.put(serialized);
+        direct.flip();
+
+        List<Result> read = (List<Result>) serializer.read(direct);
+        assertEquals("Wittgenstein, Ludwig, 1889–1951", read.get(10).getName());
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() throws Exception {
+        List<Result> results = createResults();
+        int size = serializer.serialize(results).remaining();
+        int javaSize = new PlainJavaSerializer<>(getClass().getClassLoader()).serialize(results).remaining();
+        assertTrue(size + " vs " + javaSize, size * 2 < javaSize);
+    }
+
+    @Test
+    public void testEquals() throws Exception {
+        List<Result> results = createResults();
+        ByteBuffer serialized = serializer.serialize(results);
+        assertTrue(serializer.equals(results, serialized));
+
+        results.get(0).setScore(1);
+        assertTrue(!serializer.equals(results, serialized));
+    }
+
+    @Test
+    public void testOtherObjects() throws Exception {
+        Map<String, String> map = new HashMap<>();
+        map.put("key", "value");
+        assertEquals(map, serializer.read(serializer.serialize(map)));
+        assertEquals("string", serializer.read(serializer.serialize("string")));
+    }
+
+}
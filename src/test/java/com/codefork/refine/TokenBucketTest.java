@@ -0,0 +1,41 @@
+package com.codefork.refine;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TokenBucketTest {
+
+    @Test
+    public void testUnlimited() {
+        TokenBucket bucket = new TokenBucket();
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, bucket.tryAcquire());
+        }
+    }
+
+    @Test
+    public void testBurstThenWait() {
+        TokenBucket bucket = new TokenBucket(2, 3);
+        // the bucket starts with one token, and fills at 2 per second
+        assertEquals(0, bucket.tryAcquire());
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 0);
+        assertTrue(wait <= 500000000L);
+    }
+
+    @Test
+    public void testPause() {
+        TokenBucket bucket = new TokenBucket();
+        bucket.pauseFor(10000);
+        long wait = bucket.tryAcquire();
+        assertTrue(wait > 9000000000L);
+        assertTrue(wait <= 10000000000L);
+
+        // a shorter pause doesn't cut a longer one short
+        bucket.pauseFor(10);
+        assertTrue(bucket.tryAcquire() > 9000000000L);
+    }
+
+}
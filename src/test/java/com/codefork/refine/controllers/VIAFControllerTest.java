@@ -28,8 +28,11 @@ import org.springframework.test.context.junit4.SpringRunner;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.*;
@@ -394,6 +397,72 @@ public class VIAFControllerTest {
         assertEquals(1, cf.getNumCallsToCreateConnection() - numCallsAtStart);
     }
 
+    @Test
+    public void testDuplicateQueriesInBatch() throws Exception {
+
+        SimulatedConnectionFactory cf = (SimulatedConnectionFactory) viaf.getConnectionFactory();
+        int numCallsAtStart = cf.getNumCallsToCreateConnection();
+
+        String json = "{\"q0\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}," +
+                "\"q1\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}," +
+                "\"q2\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
+
+        JsonNode root = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+
+        assertEquals(3, root.size());
+        for (String key : new String[] { "q0", "q1", "q2" }) {
+            JsonNode results = root.get(key).get("result");
+            assertEquals(3, results.size());
+            assertEquals("24609378", results.get(0).get("id").asText());
+        }
+
+        assertEquals(1, cf.getNumCallsToCreateConnection() - numCallsAtStart);
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+
+        String json = "{\"q0\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}," +
+                "\"q1\":{\"query\": \"steinbeck\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json).param("stream", "json")).andReturn();
+
+        JsonNode root = new ObjectMapper().readTree(mvcResult.getResponse().getContentAsString());
+
+        assertEquals(2, root.size());
+        assertEquals(3, root.get("q0").get("result").size());
+        assertEquals("24609378", root.get("q0").get("result").get(0).get("id").asText());
+        assertTrue(root.has("q1"));
+    }
+
+    @Test
+    public void testStreamingNdjson() throws Exception {
+
+        String json = "{\"q0\":{\"query\": \"wittgenstein\",\"type\":\"/people/person\",\"type_strict\":\"should\"}," +
+                "\"q1\":{\"query\": \"steinbeck\",\"type_strict\":\"should\"}}";
+
+        MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json).param("stream", "ndjson")).andReturn();
+
+        assertTrue(mvcResult.getResponse().getContentType().startsWith(SearchResponseStreamWriter.NDJSON_CONTENT_TYPE));
+
+        String[] lines = mvcResult.getResponse().getContentAsString().split("\n");
+        assertEquals(2, lines.length);
+
+        Set<String> keys = new HashSet<>();
+        for (String line : lines) {
+            JsonNode root = new ObjectMapper().readTree(line);
+            assertEquals(1, root.size());
+            String key = root.fieldNames().next();
+            keys.add(key);
+            if (key.equals("q0")) {
+                assertEquals(3, root.get("q0").get("result").size());
+            }
+        }
+        assertEquals(new HashSet<>(Arrays.asList("q0", "q1")), keys);
+    }
+
     @Test
     public void testExpireCache() throws Exception {
 
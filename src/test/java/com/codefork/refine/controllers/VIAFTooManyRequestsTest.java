@@ -53,12 +53,10 @@ public class VIAFTooManyRequestsTest {
     VIAF viaf;
 
     // test that getting an http response 429 ("too many requests") code
-    // results in shrinking the thread pool
+    // results in cutting the thread pool's concurrency limit
     @Test
     public void testTooManyRequestsResponse() throws Exception {
 
-        int startSize = viaf.getThreadPool().getPoolSize();
-
         String json = "{\"q0\":{\"query\": \"whatever\",\"type_strict\":\"should\"}}";
 
         MvcResult mvcResult = mvc.perform(get("/reconcile/viaf").param("queries", json)).andReturn();
@@ -71,7 +69,8 @@ public class VIAFTooManyRequestsTest {
 
         assertEquals(0, results.size());
 
-        assertEquals(startSize - 1, viaf.getThreadPool().getPoolSize());
+        // halved for the first try and each retry
+        assertEquals(1, viaf.getThreadPool().getLimit());
     }
 
 }
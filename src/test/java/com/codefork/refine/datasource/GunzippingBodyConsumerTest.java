@@ -0,0 +1,59 @@
+package com.codefork.refine.datasource;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GunzippingBodyConsumerTest {
+
+    private static byte[] gzip(String s) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(s.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+
+    @Test
+    public void testByteAtATime() throws Exception {
+        byte[] gzipped = gzip("some text, some more text");
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (GunzippingBodyConsumer consumer = new GunzippingBodyConsumer((buf, offset, length) -> {
+            body.write(buf, offset, length);
+            return true;
+        })) {
+            for (int i = 0; i < gzipped.length; i++) {
+                assertTrue(consumer.consume(gzipped, i, 1));
+            }
+        }
+        assertEquals("some text, some more text", body.toString("UTF-8"));
+    }
+
+    @Test
+    public void testStops() throws Exception {
+        byte[] gzipped = gzip("some text");
+        try (GunzippingBodyConsumer consumer = new GunzippingBodyConsumer((buf, offset, length) -> false)) {
+            assertFalse(consumer.consume(gzipped, 0, gzipped.length));
+        }
+    }
+
+    @Test
+    public void testHeaderLength() throws Exception {
+        byte[] header = new byte[] { 0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, 0 };
+        assertEquals(-1, GunzippingBodyConsumer.getHeaderLength(new byte[] { 0x1f, (byte) 0x8b, 8 }));
+        assertEquals(10, GunzippingBodyConsumer.getHeaderLength(header));
+
+        // with a file name and a header CRC
+        header[3] = 8 | 2;
+        byte[] withName = new byte[] { 0x1f, (byte) 0x8b, 8, 8 | 2, 0, 0, 0, 0, 0, 0, 'a', 'b', 0, 1, 2 };
+        assertEquals(-1, GunzippingBodyConsumer.getHeaderLength(new byte[] { 0x1f, (byte) 0x8b, 8, 8 | 2, 0, 0, 0, 0, 0, 0, 'a' }));
+        assertEquals(15, GunzippingBodyConsumer.getHeaderLength(withName));
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.ApplicationConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledConnectionFactoryTest {
+
+    private static final byte[] BIG_BODY = new byte[4 * 1024 * 1024];
+
+    // a few records and a short trailer, a little more than a chunk
+    private static final byte[] PAGE_BODY = new byte[12 * 1024];
+
+    static {
+        new Random(42).nextBytes(BIG_BODY);
+        new Random(42).nextBytes(PAGE_BODY);
+    }
+
+    private HttpServer server;
+    private String baseUrl;
+    private PooledConnectionFactory connectionFactory;
+
+    // remote ports of the client connections the server has seen
+    private final Set<Integer> clientPorts = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/hello", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            byte[] body = "hello".getBytes(StandardCharsets.UTF_8);
+            String acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+            if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, 0);
+                try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                    out.write(body);
+                }
+            } else {
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        });
+        server.createContext("/echo", exchange -> {
+            byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.createContext("/big", exchange -> {
+            exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+            exchange.sendResponseHeaders(200, 0);
+            try (OutputStream out = new GZIPOutputStream(exchange.getResponseBody())) {
+                out.write(BIG_BODY);
+            } catch (IOException e) {
+                // the client hung up
+            }
+        });
+        server.createContext("/page", exchange -> {
+            clientPorts.add(exchange.getRemoteAddress().getPort());
+            exchange.sendResponseHeaders(200, PAGE_BODY.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(PAGE_BODY);
+            }
+        });
+        server.createContext("/busy", exchange -> {
+            exchange.getResponseHeaders().add("Retry-After", "5");
+            exchange.sendResponseHeaders(429, -1);
+            exchange.close();
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        connectionFactory = new PooledConnectionFactory(new ApplicationConfig.Http());
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        connectionFactory.close();
+        server.stop(0);
+    }
+
+    private String get(String path) throws IOException {
+        HttpURLConnection conn = connectionFactory.createConnection(baseUrl + path);
+        try (InputStream in = conn.getInputStream()) {
+            return IOUtils.toString(in, StandardCharsets.UTF_8);
+        }
+    }
+
+    @Test
+    public void testConnectionsAreReused() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hello", get("/hello"));
+        }
+        assertEquals(1, clientPorts.size());
+        assertEquals(0, connectionFactory.getStats().getLeased());
+        assertEquals(1, connectionFactory.getStats().getAvailable());
+    }
+
+    @Test
+    public void testPost() throws Exception {
+        HttpURLConnection conn = connectionFactory.createConnection(baseUrl + "/echo");
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        try (OutputStream out = conn.getOutputStream()) {
+            out.write("some body".getBytes(StandardCharsets.UTF_8));
+        }
+        try (InputStream in = conn.getInputStream()) {
+            assertEquals("some body", IOUtils.toString(in, StandardCharsets.UTF_8));
+        }
+        assertEquals(200, conn.getResponseCode());
+    }
+
+    @Test
+    public void testErrorResponse() throws Exception {
+        HttpURLConnection conn = connectionFactory.createConnection(baseUrl + "/busy");
+        try {
+            conn.getInputStream();
+            fail("expected an IOException");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("HTTP response code: 429"));
+        }
+        assertEquals(429, conn.getResponseCode());
+        assertEquals("5", conn.getHeaderField("Retry-After"));
+        assertEquals(0, connectionFactory.getStats().getLeased());
+    }
+
+    @Test
+    public void testFetchAsync() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            byte[] body = connectionFactory.fetchAsync(baseUrl + "/hello").get(10, TimeUnit.SECONDS);
+            assertEquals("hello", new String(body, StandardCharsets.UTF_8));
+        }
+        assertEquals(1, clientPorts.size());
+
+        try {
+            connectionFactory.fetchAsync(baseUrl + "/busy").get(10, TimeUnit.SECONDS);
+            fail("expected a TooManyRequestsException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TooManyRequestsException);
+            assertEquals(5000, ((TooManyRequestsException) e.getCause()).getRetryAfterMs());
+        }
+    }
+
+    @Test
+    public void testFetchAsyncCompletesOnCallbackThreads() throws Exception {
+        CompletableFuture<String> thread = connectionFactory.fetchAsync(baseUrl + "/hello")
+                .thenApply(body -> Thread.currentThread().getName());
+        assertTrue(thread.get(10, TimeUnit.SECONDS).startsWith("http-callback-"));
+
+        CompletableFuture<String> streamingThread = connectionFactory.fetchAsync(baseUrl + "/hello", (buf, offset, length) -> true)
+                .thenApply(ignored -> Thread.currentThread().getName());
+        assertTrue(streamingThread.get(10, TimeUnit.SECONDS).startsWith("http-callback-"));
+    }
+
+    @Test
+    public void testFetchAsyncStreaming() throws Exception {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        AtomicInteger chunks = new AtomicInteger();
+        connectionFactory.fetchAsync(baseUrl + "/big", (buf, offset, length) -> {
+            body.write(buf, offset, length);
+            chunks.incrementAndGet();
+            return true;
+        }).get(10, TimeUnit.SECONDS);
+        assertArrayEquals(BIG_BODY, body.toByteArray());
+        assertTrue(chunks.get() > 1);
+    }
+
+    @Test
+    public void testFetchAsyncStreamingStopsEarly() throws Exception {
+        AtomicLong received = new AtomicLong();
+        connectionFactory.fetchAsync(baseUrl + "/big", (buf, offset, length) -> {
+            received.addAndGet(length);
+            return false;
+        }).get(10, TimeUnit.SECONDS);
+        assertTrue(received.get() < BIG_BODY.length);
+
+        // the dropped connection isn't reused
+        byte[] body = connectionFactory.fetchAsync(baseUrl + "/hello").get(10, TimeUnit.SECONDS);
+        assertEquals("hello", new String(body, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testFetchAsyncStreamingSkipsShortRest() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            AtomicInteger chunks = new AtomicInteger();
+            connectionFactory.fetchAsync(baseUrl + "/page", (buf, offset, length) -> {
+                chunks.incrementAndGet();
+                return false;
+            }).get(10, TimeUnit.SECONDS);
+            assertEquals(1, chunks.get());
+        }
+        // the rest was read, so the connection was reused
+        assertEquals(1, clientPorts.size());
+    }
+
+    @Test
+    public void testFetchAsyncStreamingErrors() throws Exception {
+        try {
+            connectionFactory.fetchAsync(baseUrl + "/busy", (buf, offset, length) -> true).get(10, TimeUnit.SECONDS);
+            fail("expected a TooManyRequestsException");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof TooManyRequestsException);
+        }
+
+        // whatever the consumer throws fails the fetch
+        IllegalStateException thrown = new IllegalStateException("bad body");
+        try {
+            connectionFactory.fetchAsync(baseUrl + "/hello", (buf, offset, length) -> {
+                throw thrown;
+            }).get(10, TimeUnit.SECONDS);
+            fail("expected an IllegalStateException");
+        } catch (ExecutionException e) {
+            assertSame(thrown, e.getCause());
+        }
+    }
+
+}
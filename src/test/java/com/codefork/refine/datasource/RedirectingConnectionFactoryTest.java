@@ -0,0 +1,22 @@
+package com.codefork.refine.datasource;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class RedirectingConnectionFactoryTest {
+
+    @Test
+    public void testRedirect() throws Exception {
+        assertEquals("http://127.0.0.1:8099/http/www.viaf.org/viaf/search?query=local.mainHeadingEl%20all%20%22steinbeck%22&maximumRecords=3",
+                RedirectingConnectionFactory.redirect("http://127.0.0.1:8099",
+                        "http://www.viaf.org/viaf/search?query=local.mainHeadingEl%20all%20%22steinbeck%22&maximumRecords=3"));
+        assertEquals("http://127.0.0.1:8099/https/pub.orcid.org/v2.1/0000-0002-4166-6322/record",
+                RedirectingConnectionFactory.redirect("http://127.0.0.1:8099",
+                        "https://pub.orcid.org/v2.1/0000-0002-4166-6322/record"));
+        assertEquals("http://127.0.0.1:8099/http/localhost:8983/solr/test-core/select?wt=xml",
+                RedirectingConnectionFactory.redirect("http://127.0.0.1:8099",
+                        "http://localhost:8983/solr/test-core/select?wt=xml"));
+    }
+
+}
@@ -27,7 +27,7 @@ public class SimulatedConnectionFactory implements ConnectionFactory {
         // and update test expectations accordingly
 
         urlsToFiles.put(
-                "https://openlibrary.org/search.json?q=through%20the%20arc%20of%20the%20rainforest",
+                "https://openlibrary.org/search.json?q=through%20the%20arc%20of%20the%20rainforest&fields=key,title&limit=3",
                 "/openlibrary_rainforest.json");
 
         urlsToFiles.put(
@@ -120,6 +120,13 @@ public class SimulatedConnectionFactory implements ConnectionFactory {
         }
     }
 
+    /**
+     * @return map of URLs => classpath resources of their recorded responses
+     */
+    public Map<String, String> getUrlsToFiles() {
+        return urlsToFiles;
+    }
+
     public int getNumCallsToCreateConnection() {
         return numCalls;
     }
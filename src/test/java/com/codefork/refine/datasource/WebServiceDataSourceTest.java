@@ -0,0 +1,371 @@
+package com.codefork.refine.datasource;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.ExtensionQuery;
+import com.codefork.refine.PropertyValueIdAndSettings;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.resources.Cell;
+import com.codefork.refine.resources.CellList;
+import com.codefork.refine.resources.ColumnMetaData;
+import com.codefork.refine.resources.ExtensionResponse;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import com.codefork.refine.resources.SearchResponse;
+import com.codefork.refine.resources.ServiceMetaDataResponse;
+import org.junit.Test;
+
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WebServiceDataSourceTest {
+
+    /**
+     * Data source whose searches block until released
+     */
+    static class BlockingDataSource extends WebServiceDataSource {
+
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger numSearches = new AtomicInteger();
+
+        BlockingDataSource(ApplicationConfig config) {
+            super(config, null, new ThreadPoolFactory(), null);
+        }
+
+        @Override
+        public List<Result> search(SearchQuery query) throws Exception {
+            numSearches.incrementAndGet();
+            release.await(10, TimeUnit.SECONDS);
+            List<Result> results = new ArrayList<>();
+            results.add(new Result("1", query.getQuery(), new NameType("/thing", "Thing"), 1.0, true));
+            return results;
+        }
+
+        @Override
+        public ServiceMetaDataResponse createServiceMetaDataResponse(String baseUrl) {
+            return null;
+        }
+    }
+
+    /**
+     * Data source that is turned away with a Retry-After the first time
+     */
+    static class TooManyRequestsDataSource extends WebServiceDataSource {
+
+        final AtomicInteger numSearches = new AtomicInteger();
+        private final String retryAfter;
+
+        TooManyRequestsDataSource(ApplicationConfig config, String retryAfter) {
+            super(config, null, new ThreadPoolFactory(), null);
+            this.retryAfter = retryAfter;
+        }
+
+        @Override
+        public List<Result> search(SearchQuery query) throws Exception {
+            if (numSearches.incrementAndGet() == 1) {
+                throw new TooManyRequestsException("Server returned HTTP response code: 429 for URL: http://localhost",
+                        TooManyRequestsException.parseRetryAfter(retryAfter), null);
+            }
+            List<Result> results = new ArrayList<>();
+            results.add(new Result("1", query.getQuery(), new NameType("/thing", "Thing"), 1.0, true));
+            return results;
+        }
+
+        @Override
+        public ServiceMetaDataResponse createServiceMetaDataResponse(String baseUrl) {
+            return null;
+        }
+    }
+
+    /**
+     * Data source whose searches are asynchronous, completed by the test
+     */
+    static class AsyncDataSource extends WebServiceDataSource {
+
+        final Queue<CompletableFuture<List<Result>>> started = new ConcurrentLinkedQueue<>();
+
+        AsyncDataSource(ApplicationConfig config) {
+            super(config, null, new ThreadPoolFactory(), null);
+        }
+
+        @Override
+        public List<Result> search(SearchQuery query) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CompletableFuture<List<Result>> searchAsync(SearchQuery query) {
+            CompletableFuture<List<Result>> future = new CompletableFuture<>();
+            started.add(future);
+            return future.thenApply(ignored -> {
+                List<Result> results = new ArrayList<>();
+                results.add(new Result("1", query.getQuery(), new NameType("/thing", "Thing"), 1.0, true));
+                return results;
+            });
+        }
+
+        @Override
+        public ServiceMetaDataResponse createServiceMetaDataResponse(String baseUrl) {
+            return null;
+        }
+    }
+
+    /**
+     * Data source whose extend() takes a while, recording how many run at once
+     */
+    static class ExtendingDataSource extends WebServiceDataSource {
+
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+
+        ExtendingDataSource(ApplicationConfig config) {
+            super(config, null, new ThreadPoolFactory(), null);
+        }
+
+        @Override
+        public List<Result> search(SearchQuery query) throws Exception {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public CellList extend(String id, List<PropertyValueIdAndSettings> idsAndSettings) {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+            CellList<String> cells = new CellList<>();
+            for (PropertyValueIdAndSettings prop : idsAndSettings) {
+                List<Cell> values = new ArrayList<>();
+                values.add(new Cell(id + "-" + prop.getId()));
+                cells.put(prop.getId(), values);
+            }
+            return cells;
+        }
+
+        @Override
+        public ColumnMetaData columnMetaData(PropertyValueIdAndSettings prop) {
+            ColumnMetaData col = new ColumnMetaData();
+            col.setId(prop.getId());
+            col.setName(prop.getId());
+            return col;
+        }
+
+        @Override
+        public ServiceMetaDataResponse createServiceMetaDataResponse(String baseUrl) {
+            return null;
+        }
+    }
+
+    private static ApplicationConfig createApplicationConfig() {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        return config;
+    }
+
+    @Test
+    public void testConcurrentSearchesAreCoalesced() throws Exception {
+        BlockingDataSource dataSource = new BlockingDataSource(createApplicationConfig());
+        SearchQuery query = new SearchQuery("test", 3, null, null);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<List<Result>>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(executor.submit(() -> dataSource.searchCheckCache(query)));
+        }
+
+        // wait for all callers to arrive before letting the search finish
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dataSource.getNumCoalescedSearches() < 3 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1, dataSource.getNumSearchesInFlight());
+        dataSource.release.countDown();
+
+        List<Result> first = futures.get(0).get();
+        for (Future<List<Result>> future : futures) {
+            assertSame(first, future.get());
+        }
+
+        assertEquals(1, dataSource.numSearches.get());
+        assertEquals(3, dataSource.getNumCoalescedSearches());
+        assertEquals(0, dataSource.getNumSearchesInFlight());
+
+        executor.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void testRetryAfter() throws Exception {
+        TooManyRequestsDataSource dataSource = new TooManyRequestsDataSource(createApplicationConfig(), "1");
+        Map<String, SearchQuery> queries = new HashMap<>();
+        queries.put("q0", new SearchQuery("test", 3, null, null));
+
+        long start = System.currentTimeMillis();
+        Map<String, SearchResponse> responses = dataSource.search(queries);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertEquals(2, dataSource.numSearches.get());
+        assertEquals(1, responses.get("q0").getResult().size());
+        assertTrue(elapsed >= 1000);
+
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void testLongRetryAfterDoesNotPauseOtherQueries() throws Exception {
+        TooManyRequestsDataSource dataSource = new TooManyRequestsDataSource(createApplicationConfig(), "86400");
+        Map<String, SearchQuery> queries = new HashMap<>();
+        queries.put("q0", new SearchQuery("test", 3, null, null));
+
+        // the query is given up rather than retried in a day
+        Map<String, SearchResponse> responses = dataSource.search(queries);
+        assertEquals(1, dataSource.numSearches.get());
+        assertEquals(0, responses.get("q0").getResult().size());
+
+        // and the next batch runs right away
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        queries.put("q0", new SearchQuery("test2", 3, null, null));
+        responses = executor.submit(() -> dataSource.search(queries)).get(10, TimeUnit.SECONDS);
+        assertEquals(2, dataSource.numSearches.get());
+        assertEquals(1, responses.get("q0").getResult().size());
+
+        executor.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void testAsyncSearchesHoldSlotsUntilComplete() throws Exception {
+        AsyncDataSource dataSource = new AsyncDataSource(createApplicationConfig());
+        int limit = dataSource.getThreadPool().getLimit();
+        Map<String, SearchQuery> queries = new HashMap<>();
+        for (int i = 0; i < limit * 2; i++) {
+            queries.put("q" + i, new SearchQuery("test" + i, 3, null, null));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Map<String, SearchResponse>> responses = executor.submit(() -> dataSource.search(queries));
+
+        // the pool's threads are free, but no more searches start
+        // until the ones in flight complete
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dataSource.started.size() < limit && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(limit, dataSource.started.size());
+        assertEquals(limit, dataSource.getThreadPool().getInFlight());
+        assertEquals(limit, dataSource.getThreadPool().getNumPending());
+
+        int completed = 0;
+        while (completed < queries.size() && System.currentTimeMillis() < deadline) {
+            CompletableFuture<List<Result>> future = dataSource.started.poll();
+            if (future != null) {
+                future.complete(null);
+                completed++;
+            } else {
+                Thread.sleep(10);
+            }
+        }
+
+        Map<String, SearchResponse> results = responses.get(10, TimeUnit.SECONDS);
+        assertEquals(queries.size(), results.size());
+        assertEquals("test0", results.get("q0").getResult().get(0).getName());
+        assertEquals(0, dataSource.getThreadPool().getInFlight());
+        assertEquals(0, dataSource.getNumSearchesInFlight());
+
+        executor.shutdown();
+        dataSource.shutdown();
+    }
+
+    // blocking searches only take slots once they have a thread, even if
+    // more async tasks than threads are allowed in flight
+    @Test
+    public void testBlockingSearchesDoNotOutnumberThreads() throws Exception {
+        ApplicationConfig config = createApplicationConfig();
+        ApplicationConfig.RateLimit rateLimit = new ApplicationConfig.RateLimit();
+        rateLimit.setMaxInFlight(16);
+        config.getRateLimit().put("blockingdatasource", rateLimit);
+        BlockingDataSource dataSource = new BlockingDataSource(config);
+        int poolSize = dataSource.getThreadPool().getPoolSize();
+        Map<String, SearchQuery> queries = new HashMap<>();
+        for (int i = 0; i < poolSize * 2; i++) {
+            queries.put("q" + i, new SearchQuery("test" + i, 3, null, null));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Map<String, SearchResponse>> responses = executor.submit(() -> dataSource.search(queries));
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (dataSource.numSearches.get() < poolSize && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(poolSize, dataSource.numSearches.get());
+        assertEquals(poolSize, dataSource.getThreadPool().getInFlight());
+
+        dataSource.release.countDown();
+        assertEquals(queries.size(), responses.get(10, TimeUnit.SECONDS).size());
+
+        executor.shutdown();
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void testExtendRunsConcurrently() throws Exception {
+        ExtendingDataSource dataSource = new ExtendingDataSource(createApplicationConfig());
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            ids.add("id" + i);
+        }
+        List<PropertyValueIdAndSettings> properties = new ArrayList<>();
+        properties.add(new PropertyValueIdAndSettings("p1"));
+        properties.add(new PropertyValueIdAndSettings("p2"));
+
+        ExtensionResponse<String> response = dataSource.extend(new ExtensionQuery(ids, properties));
+
+        assertEquals(20, response.getRows().size());
+        CellList<String> row = response.getRows().get("id7");
+        assertEquals("id7-p2", row.get("p2").get(0).getStr());
+        assertEquals(2, response.getMeta().size());
+        assertEquals("p1", response.getMeta().get(0).getId());
+
+        int limit = dataSource.getThreadPool().getLimit();
+        assertTrue(dataSource.maxRunning.get() > 1);
+        assertTrue(dataSource.maxRunning.get() <= limit);
+
+        dataSource.shutdown();
+    }
+
+    @Test
+    public void testParseRetryAfter() {
+        assertEquals(120000, TooManyRequestsException.parseRetryAfter("120"));
+        assertEquals(-1, TooManyRequestsException.parseRetryAfter(null));
+        assertEquals(-1, TooManyRequestsException.parseRetryAfter("soon"));
+        assertEquals(0, TooManyRequestsException.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+        long ms = TooManyRequestsException.parseRetryAfter(DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                ZonedDateTime.now(ZoneOffset.UTC).plusSeconds(30)));
+        assertTrue(ms > 25000 && ms <= 30000);
+    }
+
+}
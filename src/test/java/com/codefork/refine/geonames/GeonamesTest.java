@@ -0,0 +1,415 @@
+package com.codefork.refine.geonames;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.ExtensionQuery;
+import com.codefork.refine.PropertyValue;
+import com.codefork.refine.PropertyValueId;
+import com.codefork.refine.PropertyValueIdAndSettings;
+import com.codefork.refine.PropertyValueString;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.resources.Cell;
+import com.codefork.refine.resources.CellList;
+import com.codefork.refine.resources.NameType;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.QuerySolutionMap;
+import org.apache.jena.rdf.model.ResourceFactory;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.MultiGetItemResponse;
+import org.elasticsearch.action.get.MultiGetRequest;
+import org.elasticsearch.action.get.MultiGetResponse;
+import org.elasticsearch.action.search.MultiSearchRequest;
+import org.elasticsearch.action.search.MultiSearchResponse;
+import org.elasticsearch.action.search.SearchResponse;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.text.Text;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.search.SearchHit;
+import org.elasticsearch.search.SearchHits;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class GeonamesTest {
+
+    private static String source(String id, String name) {
+        return String.format("{\"geonameid\": \"%s\", \"name\": \"%s\", \"fclass\": \"P\", \"fcode\": \"PPL\"}", id, name);
+    }
+
+    /**
+     * Stands in for the index: finds one place for every search, and
+     * every id except 999, whose document has no name
+     */
+    private static class StubIndexGeonames extends Geonames {
+
+        private StubIndexGeonames(ApplicationConfig config, GeonamesConfig geonamesConfig) {
+            super(config, geonamesConfig, null, new ThreadPoolFactory(), null);
+        }
+
+        @Override
+        CompletableFuture<MultiSearchResponse> multiSearchIndex(MultiSearchRequest request) {
+            MultiSearchResponse.Item[] items = new MultiSearchResponse.Item[request.requests().size()];
+            for (int i = 0; i < items.length; i++) {
+                SearchHit hit = new SearchHit(i, String.valueOf(100 + i), new Text("geoname"), Collections.emptyMap());
+                hit.sourceRef(new BytesArray(source(String.valueOf(100 + i), "place " + i)));
+                hit.score(0.5f);
+                SearchResponse response = mock(SearchResponse.class);
+                when(response.getHits()).thenReturn(new SearchHits(new SearchHit[] { hit }, 1, 0.5f));
+                items[i] = new MultiSearchResponse.Item(response, null);
+            }
+            return CompletableFuture.completedFuture(new MultiSearchResponse(items));
+        }
+
+        @Override
+        CompletableFuture<MultiGetResponse> multiGetFromIndex(MultiGetRequest request) {
+            MultiGetItemResponse[] items = new MultiGetItemResponse[request.getItems().size()];
+            for (int i = 0; i < items.length; i++) {
+                String id = request.getItems().get(i).id();
+                String source = id.equals("999") ?
+                        "{\"geonameid\": \"999\", \"fclass\": \"P\"}" : source(id, "place " + id);
+                GetResult getResult = new GetResult("geonames", "geoname", id, 1, true, new BytesArray(source), null);
+                items[i] = new MultiGetItemResponse(new GetResponse(getResult), null);
+            }
+            return CompletableFuture.completedFuture(new MultiGetResponse(items));
+        }
+    }
+
+    /**
+     * Stands in for an index that doesn't answer until the test says so
+     */
+    private static class PendingIndexGeonames extends Geonames {
+
+        final Queue<CompletableFuture<MultiSearchResponse>> requests = new ConcurrentLinkedQueue<>();
+
+        private PendingIndexGeonames(ApplicationConfig config, GeonamesConfig geonamesConfig) {
+            super(config, geonamesConfig, null, new ThreadPoolFactory(), null);
+        }
+
+        @Override
+        CompletableFuture<MultiSearchResponse> multiSearchIndex(MultiSearchRequest request) {
+            CompletableFuture<MultiSearchResponse> future = new CompletableFuture<>();
+            requests.add(future);
+            return future;
+        }
+    }
+
+    /**
+     * Stands in for the index and the SPARQL endpoint, which says that
+     * place 100 has whatever properties it's asked about
+     */
+    private static class StubGraphGeonames extends StubIndexGeonames {
+
+        final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+
+        private StubGraphGeonames(ApplicationConfig config, GeonamesConfig geonamesConfig) {
+            super(config, geonamesConfig);
+        }
+
+        @Override
+        List<QuerySolution> selectFromGraph(Query query) {
+            queries.add(query.toString());
+            QuerySolutionMap soln = new QuerySolutionMap();
+            soln.add("s", ResourceFactory.createResource("http://sws.geonames.org/100/"));
+            return Collections.singletonList(soln);
+        }
+    }
+
+    /**
+     * Stands in for the SPARQL endpoint when extending data: every place
+     * asked about has a population, except that queries about place 102 fail
+     */
+    private static class StubExtendGeonames extends StubIndexGeonames {
+
+        final List<String> queries = Collections.synchronizedList(new ArrayList<>());
+
+        private StubExtendGeonames(ApplicationConfig config, GeonamesConfig geonamesConfig) {
+            super(config, geonamesConfig);
+        }
+
+        @Override
+        List<QuerySolution> selectFromGraph(Query query) {
+            String queryString = query.toString();
+            queries.add(queryString);
+            if (queryString.contains("<http://sws.geonames.org/102/>")) {
+                throw new IllegalStateException("endpoint unavailable");
+            }
+            List<QuerySolution> solutions = new ArrayList<>();
+            Matcher uris = Pattern.compile("<http://sws.geonames.org/(\\d+)/>").matcher(queryString);
+            while (uris.find()) {
+                QuerySolutionMap soln = new QuerySolutionMap();
+                soln.add("s", ResourceFactory.createResource(uris.group()
+                        .substring(1, uris.group().length() - 1)));
+                soln.add("o", ResourceFactory.createPlainLiteral("population of " + uris.group(1)));
+                solutions.add(soln);
+            }
+            return solutions;
+        }
+    }
+
+    private static ApplicationConfig createConfig() {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        return config;
+    }
+
+    private static GeonamesConfig createGeonamesConfig() {
+        GeonamesConfig geonamesConfig = new GeonamesConfig();
+        GeonamesConfig.Elastic elastic = new GeonamesConfig.Elastic();
+        elastic.setHost("localhost");
+        elastic.setPort(9200);
+        geonamesConfig.getElastic().add(elastic);
+        geonamesConfig.setVirtuoso(new GeonamesConfig.Virtuoso());
+        return geonamesConfig;
+    }
+
+    private static Geonames createGeonames() {
+        return new StubIndexGeonames(createConfig(), createGeonamesConfig());
+    }
+
+    private static Future<Map<String, com.codefork.refine.resources.SearchResponse>> searchInBackground(
+            ExecutorService executor, Geonames geonames, Map<String, SearchQuery> queries) {
+        return executor.submit(() -> {
+            Map<String, com.codefork.refine.resources.SearchResponse> responses = new ConcurrentHashMap<>();
+            geonames.search(queries, responses::put);
+            return responses;
+        });
+    }
+
+    private static SearchQuery query(String query, String typeStrict) {
+        return new SearchQuery(query, 3, null, typeStrict, new HashMap<String, PropertyValue>());
+    }
+
+    // a query that fails, e.g. type_strict without a type, or a document
+    // that can't be read, only fails itself and not the rest of its batch
+    @Test
+    public void testBatchSearchIsolatesFailedQueries() throws Exception {
+        Geonames geonames = createGeonames();
+
+        Map<String, SearchQuery> queries = new LinkedHashMap<>();
+        queries.put("q0", query("Rome", null));
+        queries.put("q1", query("Milan", "should"));
+        queries.put("q2", query("3169070", "should"));
+        queries.put("q3", query("999", null));
+        queries.put("q4", query("3173435", null));
+
+        Map<String, com.codefork.refine.resources.SearchResponse> responses = new ConcurrentHashMap<>();
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        executor.submit(() -> {
+            geonames.search(queries, responses::put);
+            return null;
+        }).get(10, TimeUnit.SECONDS);
+
+        assertEquals(queries.size(), responses.size());
+        assertEquals(1, responses.get("q0").getResult().size());
+        assertEquals(1, responses.get("q1").getResult().size());
+
+        List<com.codefork.refine.resources.Result> results = responses.get("q2").getResult();
+        assertEquals(1, results.size());
+        assertEquals("3169070", results.get(0).getId());
+        assertTrue(results.get(0).isMatch());
+
+        assertEquals(0, responses.get("q3").getResult().size());
+        assertEquals("3173435", responses.get("q4").getResult().get(0).getId());
+
+        executor.shutdown();
+        geonames.shutdown();
+    }
+
+    // each batch request holds a slot in the pool until the index answers,
+    // so no more go out than the concurrency limit allows
+    @Test
+    public void testBatchRequestsHoldSlotsWhileInFlight() throws Exception {
+        GeonamesConfig geonamesConfig = createGeonamesConfig();
+        geonamesConfig.getElasticClient().setBatchSize(1);
+        PendingIndexGeonames geonames = new PendingIndexGeonames(createConfig(), geonamesConfig);
+        int limit = geonames.getThreadPool().getLimit();
+
+        Map<String, SearchQuery> queries = new LinkedHashMap<>();
+        for (int i = 0; i < limit * 2; i++) {
+            queries.put("q" + i, query("place " + i, null));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Future<Map<String, com.codefork.refine.resources.SearchResponse>> responses =
+                searchInBackground(executor, geonames, queries);
+
+        long deadline = System.currentTimeMillis() + 10000;
+        while (geonames.requests.size() < limit && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(limit, geonames.requests.size());
+        assertEquals(limit, geonames.getThreadPool().getInFlight());
+
+        // failed requests give their queries no results, and free their slots
+        int answered = 0;
+        while (answered < queries.size() && System.currentTimeMillis() < deadline) {
+            CompletableFuture<MultiSearchResponse> request = geonames.requests.poll();
+            if (request != null) {
+                request.completeExceptionally(new IOException("index unavailable"));
+                answered++;
+            } else {
+                Thread.sleep(10);
+            }
+        }
+
+        Map<String, com.codefork.refine.resources.SearchResponse> results = responses.get(10, TimeUnit.SECONDS);
+        assertEquals(queries.size(), results.size());
+        assertEquals(0, results.get("q0").getResult().size());
+        assertEquals(0, geonames.getThreadPool().getInFlight());
+
+        executor.shutdown();
+        geonames.shutdown();
+    }
+
+    @Test
+    public void testBatchGivesUpAfterTimeout() throws Exception {
+        GeonamesConfig geonamesConfig = createGeonamesConfig();
+        geonamesConfig.getElasticClient().setBatchTimeout(200);
+        PendingIndexGeonames geonames = new PendingIndexGeonames(createConfig(), geonamesConfig);
+
+        Map<String, SearchQuery> queries = new LinkedHashMap<>();
+        queries.put("q0", query("Rome", null));
+        queries.put("q1", query("Milan", null));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Map<String, com.codefork.refine.resources.SearchResponse> results =
+                searchInBackground(executor, geonames, queries).get(10, TimeUnit.SECONDS);
+
+        assertEquals(queries.size(), results.size());
+        assertEquals(0, results.get("q1").getResult().size());
+
+        executor.shutdown();
+        geonames.shutdown();
+    }
+
+    // requests the pool won't run, e.g. while shutting down,
+    // still give every query a response
+    @Test
+    public void testBatchIsAnsweredWhenPoolIsShutDown() throws Exception {
+        Geonames geonames = createGeonames();
+        geonames.getThreadPool().shutdown();
+
+        Map<String, SearchQuery> queries = new LinkedHashMap<>();
+        queries.put("q0", query("Rome", null));
+        queries.put("q1", query("3169070", null));
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Map<String, com.codefork.refine.resources.SearchResponse> results =
+                searchInBackground(executor, geonames, queries).get(10, TimeUnit.SECONDS);
+
+        assertEquals(queries.size(), results.size());
+        assertEquals(0, results.get("q0").getResult().size());
+        assertEquals(0, results.get("q1").getResult().size());
+
+        executor.shutdown();
+        geonames.shutdown();
+    }
+
+    // property values are written as escaped literals, so quotes and
+    // line breaks in them don't break the query
+    @Test
+    public void testPropertiesQueryEscapesLiterals() throws Exception {
+        Geonames geonames = createGeonames();
+        SearchQuery query = query("Rome", null);
+        query.getProperties().put("alternateName", new PropertyValueString("Roma \"caput mundi\"\n\\"));
+        query.getProperties().put("parentCountry", new PropertyValueId("3175395"));
+
+        List<com.codefork.refine.resources.Result> candidates = new ArrayList<>();
+        candidates.add(new com.codefork.refine.resources.Result("100", "Rome", (NameType) null, 1.0, false));
+        candidates.add(new com.codefork.refine.resources.Result("101", "Rome", (NameType) null, 0.5, false));
+
+        String queryString = geonames.createPropertiesQuery(query, candidates).toString();
+        assertTrue(queryString, queryString.contains("<http://sws.geonames.org/100/>"));
+        assertTrue(queryString, queryString.contains("<http://sws.geonames.org/101/>"));
+        assertTrue(queryString, queryString.contains("\"Roma \\\"caput mundi\\\"\\n\\\\\""));
+        assertTrue(queryString, queryString.contains("<http://sws.geonames.org/3175395/>"));
+
+        geonames.shutdown();
+    }
+
+    // the candidates of each query are checked with a single SPARQL query,
+    // keeping the ones it selects
+    @Test
+    public void testBatchSearchFiltersByProperties() throws Exception {
+        StubGraphGeonames geonames = new StubGraphGeonames(createConfig(), createGeonamesConfig());
+
+        Map<String, SearchQuery> queries = new LinkedHashMap<>();
+        queries.put("q0", query("Rome", null));
+        queries.put("q1", query("Milan", null));
+        for (SearchQuery query : queries.values()) {
+            query.getProperties().put("alternateName", new PropertyValueString("say \"hi\""));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        Map<String, com.codefork.refine.resources.SearchResponse> results =
+                searchInBackground(executor, geonames, queries).get(10, TimeUnit.SECONDS);
+
+        // the index finds place 100 for q0 and place 101 for q1
+        assertEquals("100", results.get("q0").getResult().get(0).getId());
+        assertEquals(0, results.get("q1").getResult().size());
+        assertEquals(2, geonames.queries.size());
+
+        executor.shutdown();
+        geonames.shutdown();
+    }
+
+    // ids are looked up in chunks, one query per chunk and property;
+    // rows of a chunk whose query fails are null
+    @Test
+    public void testExtendRowsInChunks() throws Exception {
+        GeonamesConfig geonamesConfig = createGeonamesConfig();
+        geonamesConfig.getVirtuoso().setExtendBatchSize(2);
+        StubExtendGeonames geonames = new StubExtendGeonames(createConfig(), geonamesConfig);
+
+        List<PropertyValueIdAndSettings> properties = new ArrayList<>();
+        properties.add(new PropertyValueIdAndSettings("population"));
+        Map<String, CellList> rows = geonames.extendRows(new ExtensionQuery(
+                Arrays.asList("100", "not-an-id", "102", "103", "100"), properties));
+
+        // the repeated id is only looked up once
+        assertEquals(2, geonames.queries.size());
+        assertEquals(4, rows.size());
+
+        List<Cell> cells = (List<Cell>) rows.get("100").get("population");
+        assertEquals(1, cells.size());
+        assertEquals("population of 100", cells.get(0).getStr());
+
+        // ids that aren't numbers aren't sent, and have no values
+        for (String query : geonames.queries) {
+            assertFalse(query.contains("not-an-id"));
+        }
+        assertEquals(0, ((List<Cell>) rows.get("not-an-id").get("population")).size());
+
+        assertNull(rows.get("102"));
+        assertNull(rows.get("103"));
+
+        geonames.shutdown();
+    }
+
+}
@@ -0,0 +1,56 @@
+package com.codefork.refine.geonames;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+
+public class PropertyStatsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private PropertyStats createStats() {
+        PropertyStats stats = new PropertyStats();
+        stats.add(PropertyStats.ALL_TYPES, "name", 100);
+        stats.add(PropertyStats.ALL_TYPES, "population", 20);
+        stats.add(PropertyStats.ALL_TYPES, "featureCode", 100);
+        stats.add("A", "name", 10);
+        stats.add("A", "parentCountry", 8);
+        stats.add("A.ADM1", "parentCountry", 3);
+        stats.add("A.ADM1", "parentCountry", 2);
+        stats.setComputedAt(12345L);
+        return stats;
+    }
+
+    @Test
+    public void testGetProperties() {
+        PropertyStats stats = createStats();
+        assertEquals(Arrays.asList("featureCode", "name", "population"), stats.getProperties(null, 0));
+        assertEquals(Arrays.asList("featureCode", "name"), stats.getProperties("", 2));
+        assertEquals(Arrays.asList("name", "parentCountry"), stats.getProperties("A", 10));
+        assertEquals(Collections.singletonList("parentCountry"), stats.getProperties("A.ADM1", 0));
+        assertEquals(5L, (long) stats.getCounts().get("A.ADM1").get("parentCountry"));
+        assertEquals(Collections.emptyList(), stats.getProperties("P.PPL", 0));
+    }
+
+    @Test
+    public void testSaveAndLoad() throws Exception {
+        File file = new File(folder.getRoot(), "stats/geonames-stats.json");
+        createStats().save(file);
+        // overwriting an existing file
+        createStats().save(file);
+
+        PropertyStats loaded = PropertyStats.load(file);
+        assertEquals(12345L, loaded.getComputedAt());
+        assertEquals(Arrays.asList("name", "parentCountry"), loaded.getProperties("A", 0));
+        assertEquals(Arrays.asList("featureCode", "name", "population"), loaded.getProperties(null, 0));
+        assertEquals(1, folder.getRoot().listFiles()[0].listFiles().length);
+    }
+
+}
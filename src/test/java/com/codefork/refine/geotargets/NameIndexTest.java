@@ -0,0 +1,76 @@
+package com.codefork.refine.geotargets;
+
+import com.codefork.refine.resources.Result;
+import org.apache.commons.text.similarity.JaroWinklerDistance;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.rdf.model.Property;
+import org.apache.jena.rdf.model.Statement;
+import org.apache.jena.rdf.model.StmtIterator;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NameIndexTest {
+
+    private static final double THRESHOLD = 0.9;
+
+    private static Model model;
+    private static NameIndex index;
+
+    @BeforeClass
+    public static void setUp() {
+        model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, "AdWords_API_Location_Criteria_DE_ES.ttl");
+        GeotargetsMetaDataResponse meta = new GeotargetsMetaDataResponse("test");
+        index = new NameIndex(model, meta.getIdentifierSpace(), meta.getSchemaSpace());
+    }
+
+    /**
+     * count names with a score above the threshold the slow way
+     */
+    private int countByScan(String query) {
+        JaroWinklerDistance jw = new JaroWinklerDistance();
+        Property foafName = model.createProperty(NameIndex.FOAF_NAME);
+        int count = 0;
+        StmtIterator iter = model.listStatements(null, foafName, (String) null);
+        while (iter.hasNext()) {
+            Statement stmt = iter.next();
+            if (jw.apply(query, stmt.getLiteral().getString()) > THRESHOLD) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Test
+    public void testLookupSameAsScan() {
+        String[] queries = { "Berlin", "Berln", "Munchen", "München", "Madrid", "Barcelona",
+                "Sevila", "Frankfurt am Main", "Koln", "x", "Adlershof" };
+        for (String query : queries) {
+            List<Result> results = index.lookup(query, THRESHOLD);
+            assertEquals(query, countByScan(query), results.size());
+            for (Result result : results) {
+                assertTrue(result.getScore() > THRESHOLD);
+            }
+        }
+    }
+
+    @Test
+    public void testGetById() {
+        Result result = index.getById("1003854");
+        assertEquals("Berlin", result.getName());
+        assertEquals("City", result.getType().get(0).getId());
+        assertEquals(1.0, result.getScore(), 0.0);
+        assertTrue(result.isMatch());
+
+        assertNull(index.getById("999999999"));
+    }
+
+}
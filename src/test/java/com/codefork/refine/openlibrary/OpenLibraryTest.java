@@ -0,0 +1,133 @@
+package com.codefork.refine.openlibrary;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.PropertyValueString;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.datasource.SimulatedConnectionFactory;
+import com.codefork.refine.resources.Result;
+import com.codefork.refine.resources.SearchResponse;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class OpenLibraryTest {
+
+    private SimulatedConnectionFactory connectionFactory;
+    private OpenLibrary openLibrary;
+
+    @Before
+    public void setUp() throws Exception {
+        connectionFactory = new SimulatedConnectionFactory();
+        connectionFactory.getUrlsToFiles().put(OpenLibrary.createSearchUrl("nothing", 3), "/openlibrary_no_results.json");
+        connectionFactory.getUrlsToFiles().put(OpenLibrary.createSearchUrl("nothing by nobody", 3), "/openlibrary_no_results.json");
+        connectionFactory.getUrlsToFiles().put(OpenLibrary.createSearchUrl("through the arc of the rainforest yamashita", 3), "/openlibrary_rainforest.json");
+
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        openLibrary = new OpenLibrary(config, new OpenLibraryConfig(), null, new ThreadPoolFactory(), connectionFactory);
+    }
+
+    @After
+    public void tearDown() {
+        openLibrary.shutdown();
+    }
+
+    private static SearchQuery createQuery(String q) {
+        return new SearchQuery(q, 3, null, "should", new HashMap<>());
+    }
+
+    @Test
+    public void testSearchUrl() throws Exception {
+        assertEquals("https://openlibrary.org/search.json?q=through%20the%20arc&fields=key,title&limit=3",
+                OpenLibrary.createSearchUrl("through the arc", 3));
+    }
+
+    @Test
+    public void testMaxConcurrentRequests() {
+        assertEquals(4, openLibrary.getThreadPool().getPoolSize());
+    }
+
+    @Test
+    public void testOneRequestWithoutProperties() throws Exception {
+        List<Result> results = openLibrary.search(createQuery("nothing"));
+        assertTrue(results.isEmpty());
+        // the second try would have been the same request
+        assertEquals(1, connectionFactory.getNumCallsToCreateConnection());
+    }
+
+    @Test
+    public void testOneRequestWithResults() throws Exception {
+        SearchQuery query = createQuery("through the arc of the rainforest");
+        query.getProperties().put("author", new PropertyValueString("yamashita"));
+        List<Result> results = openLibrary.search(query);
+        assertEquals(1, results.size());
+        assertEquals("/works/OL9467604W", results.get(0).getId());
+        assertEquals(1, connectionFactory.getNumCallsToCreateConnection());
+    }
+
+    @Test
+    public void testRetryWithoutProperties() throws Exception {
+        SearchQuery query = createQuery("nothing");
+        query.getProperties().put("author", new PropertyValueString("by nobody"));
+        assertTrue(openLibrary.search(query).isEmpty());
+        assertEquals(2, connectionFactory.getNumCallsToCreateConnection());
+    }
+
+    // searches run as async tasks, so they only start the request
+    @Test
+    public void testSearchAsyncDoesNotWaitForResponse() throws Exception {
+        CompletableFuture<byte[]> response = new CompletableFuture<>();
+        openLibrary.setConnectionFactory(new ConnectionFactory() {
+            @Override
+            public HttpURLConnection createConnection(String url) throws IOException {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<byte[]> fetchAsync(String url) {
+                return response;
+            }
+        });
+
+        CompletableFuture<List<Result>> results = openLibrary.searchAsync(createQuery("nothing"));
+        assertFalse(results.isDone());
+
+        response.complete(IOUtils.toByteArray(getClass().getResourceAsStream("/openlibrary_no_results.json")));
+        assertTrue(results.get(10, TimeUnit.SECONDS).isEmpty());
+    }
+
+    @Test
+    public void testRetryWithoutPropertiesIsPaced() throws Exception {
+        SearchQuery query = createQuery("nothing");
+        query.getProperties().put("author", new PropertyValueString("by nobody"));
+        Map<String, SearchQuery> queries = new HashMap<>();
+        queries.put("q0", query);
+
+        // the default of 2 per second: the first request takes the only
+        // token, so the second try waits for the next one
+        long start = System.currentTimeMillis();
+        Map<String, SearchResponse> responses = openLibrary.search(queries);
+        long elapsed = System.currentTimeMillis() - start;
+
+        assertTrue(responses.get("q0").getResult().isEmpty());
+        assertEquals(2, connectionFactory.getNumCallsToCreateConnection());
+        assertTrue("second try took " + elapsed + "ms", elapsed >= 400);
+        assertEquals(0, openLibrary.getThreadPool().getInFlight());
+    }
+
+}
@@ -0,0 +1,98 @@
+package com.codefork.refine.orcid;
+
+import com.codefork.refine.Application;
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.PropertyValue;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.datasource.SimulatedConnectionFactory;
+import com.codefork.refine.datasource.TooManyRequestsException;
+import com.codefork.refine.resources.Result;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class OrcidTest {
+
+    private static final String THROTTLED_RECORD = "https://pub.orcid.org/v2.1/0000-0002-5081-5887/record";
+
+    /**
+     * Turns away requests for some URLs with a 429, a given number of times
+     */
+    private static class ThrottlingConnectionFactory extends SimulatedConnectionFactory {
+
+        final Map<String, AtomicInteger> numThrottled = new ConcurrentHashMap<>();
+
+        void throttle(String url, int times) {
+            numThrottled.put(url, new AtomicInteger(times));
+        }
+
+        @Override
+        public HttpURLConnection createConnection(String url) throws IOException {
+            AtomicInteger remaining = numThrottled.get(url);
+            if (remaining != null && remaining.getAndDecrement() > 0) {
+                throw new TooManyRequestsException("Server returned HTTP response code: 429 for URL: " + url, -1, null);
+            }
+            return super.createConnection(url);
+        }
+    }
+
+    private static Orcid createOrcid(ThrottlingConnectionFactory connectionFactory) {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        config.getCache().setEnabled(true);
+        ApplicationConfig.RateLimit rateLimit = new ApplicationConfig.RateLimit();
+        rateLimit.setBackoffMs(20);
+        config.getRateLimit().put("orcid", rateLimit);
+        return new Orcid(config, new ConcurrentMapCacheManager(Application.CACHE_DEFAULT),
+                new ThreadPoolFactory(), connectionFactory);
+    }
+
+    private static SearchQuery query() {
+        return new SearchQuery("stephen hawking", 3, null, "should", new HashMap<String, PropertyValue>());
+    }
+
+    @Test
+    public void testTurnedAwayRecordIsRetried() throws Exception {
+        ThrottlingConnectionFactory connectionFactory = new ThrottlingConnectionFactory();
+        connectionFactory.throttle(THROTTLED_RECORD, 1);
+        Orcid orcid = createOrcid(connectionFactory);
+
+        List<Result> results = orcid.searchCheckCache(query());
+        assertEquals(3, results.size());
+
+        orcid.shutdown();
+    }
+
+    // leaving out a record ORCID wouldn't send yet would cache a partial list
+    @Test
+    public void testSearchFailsWhenRecordIsTurnedAway() throws Exception {
+        ThrottlingConnectionFactory connectionFactory = new ThrottlingConnectionFactory();
+        connectionFactory.throttle(THROTTLED_RECORD, Integer.MAX_VALUE);
+        Orcid orcid = createOrcid(connectionFactory);
+        SearchQuery query = query();
+
+        try {
+            orcid.searchCheckCache(query);
+            fail("expected the search to be turned away");
+        } catch (TooManyRequestsException expected) {
+            // fall through
+        }
+
+        connectionFactory.throttle(THROTTLED_RECORD, 0);
+        assertEquals(3, orcid.searchCheckCache(query).size());
+
+        orcid.shutdown();
+    }
+
+}
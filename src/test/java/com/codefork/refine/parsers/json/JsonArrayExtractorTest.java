@@ -0,0 +1,91 @@
+package com.codefork.refine.parsers.json;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class JsonArrayExtractorTest {
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testExtract() throws Exception {
+        JsonArrayExtractor extractor = new JsonArrayExtractor("/docs", "key", "title");
+        List<ObjectNode> docs = extractor.extract(stream("{\"numFound\": 3, \"skipped\": {\"docs\": [1]}, \"docs\": [" +
+                "{\"key\": \"/works/1\", \"isbn\": [\"1\", \"2\"], \"title\": \"One\", \"more\": {\"title\": \"no\"}}," +
+                "\"not an object\"," +
+                "{\"title\": \"Two\", \"authors\": [{\"key\": \"/authors/1\"}]}," +
+                "{\"key\": \"/works/3\", \"title\": \"Three\"}" +
+                "], \"after\": true}"), 10);
+
+        assertEquals(3, docs.size());
+        assertEquals("{\"key\":\"/works/1\",\"title\":\"One\"}", docs.get(0).toString());
+        assertEquals("{\"title\":\"Two\"}", docs.get(1).toString());
+        assertEquals("/works/3", docs.get(2).get("key").asText());
+    }
+
+    @Test
+    public void testStopsAtLimit() throws Exception {
+        JsonArrayExtractor extractor = new JsonArrayExtractor("/docs", "title");
+        // anything after the limit isn't read, so it can even be malformed
+        List<ObjectNode> docs = extractor.extract(stream("{\"docs\": [{\"title\": \"One\"}, {\"title\": \"Two\"}, {\"ti"), 2);
+        assertEquals(2, docs.size());
+        assertEquals("Two", docs.get(1).get("title").asText());
+    }
+
+    @Test
+    public void testDropsConnectionWhenStoppedEarly() throws Exception {
+        JsonArrayExtractor extractor = new JsonArrayExtractor("/docs", "title");
+
+        // more after the limit: the rest of the response isn't wanted
+        HttpURLConnection conn = mock(HttpURLConnection.class);
+        extractor.extract(stream("{\"docs\": [{\"title\": \"One\"}, {\"title\": \"Two\"}, {\"title\": \"Three\"}]}"), 2, conn);
+        verify(conn).disconnect();
+
+        // the limit is the length of the array, so the connection can be reused
+        conn = mock(HttpURLConnection.class);
+        extractor.extract(stream("{\"docs\": [{\"title\": \"One\"}, {\"title\": \"Two\"}], \"numFound\": 2}"), 2, conn);
+        verify(conn, never()).disconnect();
+
+        conn = mock(HttpURLConnection.class);
+        try {
+            extractor.extract(stream("{\"docs\": [{\"title\": "), 2, conn);
+        } catch (IOException expected) {
+            // fall through
+        }
+        verify(conn).disconnect();
+    }
+
+    @Test
+    public void testArrayInArray() throws Exception {
+        JsonArrayExtractor extractor = new JsonArrayExtractor("/1/categories", "id", "distance");
+        List<ObjectNode> categories = extractor.extract(stream("[{\"categories\": [{\"id\": \"x\"}]}," +
+                "{\"categories\": [{\"id\": \"a\", \"category\": \"A\", \"distance\": 0.25}]}]"), 3);
+        assertEquals(1, categories.size());
+        assertEquals("a", categories.get(0).get("id").asText());
+        assertEquals(0.25, categories.get(0).get("distance").asDouble(), 0);
+    }
+
+    @Test
+    public void testNoArray() throws Exception {
+        JsonArrayExtractor extractor = new JsonArrayExtractor("/docs", "title");
+        assertTrue(extractor.extract(stream("{\"error\": \"oops\"}"), 3).isEmpty());
+        assertTrue(extractor.extract(stream("{\"docs\": {\"title\": \"One\"}}"), 3).isEmpty());
+        assertTrue(extractor.extract(stream("[]"), 3).isEmpty());
+    }
+
+}
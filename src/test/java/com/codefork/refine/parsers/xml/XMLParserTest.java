@@ -0,0 +1,263 @@
+package com.codefork.refine.parsers.xml;
+
+import com.codefork.refine.parsers.ParseState;
+import com.codefork.refine.resources.NameType;
+import com.codefork.refine.resources.Result;
+import org.junit.Test;
+import org.xml.sax.Attributes;
+
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class XMLParserTest {
+
+    /**
+     * Collects the text of a/b/name elements as results
+     */
+    static class NameParser extends XMLParser<ParseState> {
+
+        final List<String> events = new ArrayList<>();
+
+        // stop pull parsing after this many results, 0 for no limit
+        int limit = 0;
+
+        NameParser() {
+            startElementHandlers.put("a/b",
+                    new StartElementHandler<ParseState>() {
+                        public void handle(ParseState parseState, String uri, String localName, String qName, Attributes attributes) {
+                            events.add("start b " + attributes.getValue("id"));
+                        }
+                    });
+            startElementHandlers.put("a/b/name",
+                    new StartElementHandler<ParseState>() {
+                        public void handle(ParseState parseState, String uri, String localName, String qName, Attributes attributes) {
+                            parseState.captureChars = true;
+                        }
+                    });
+            endElementHandlers.put("a/b/name",
+                    new EndElementHandler<ParseState>() {
+                        public void handle(ParseState parseState, String uri, String localName, String qName) {
+                            parseState.results.add(new Result(null, parseState.buf.toString(), (NameType) null, 0, false));
+                            parseState.buf = new StringBuilder();
+                            parseState.captureChars = false;
+                        }
+                    });
+            endElementHandlers.put("a/b",
+                    new EndElementHandler<ParseState>() {
+                        public void handle(ParseState parseState, String uri, String localName, String qName) {
+                            events.add("end b");
+                        }
+                    });
+        }
+
+        @Override
+        public ParseState createParseState() {
+            return new ParseState();
+        }
+
+        @Override
+        public boolean isDone() {
+            return limit > 0 && parseState.results.size() >= limit;
+        }
+    }
+
+    /**
+     * Registers its handlers once for all instances
+     */
+    static class SharedNameParser extends XMLParser<ParseState> {
+
+        private static final Map<String, StartElementHandler<ParseState>> staticStartElementHandlers = new HashMap<>();
+        private static final Map<String, EndElementHandler<ParseState>> staticEndElementHandlers = new HashMap<>();
+
+        static {
+            staticStartElementHandlers.put("a/b/name",
+                    new StartElementHandler<ParseState>() {
+                        public void handle(ParseState parseState, String uri, String localName, String qName, Attributes attributes) {
+                            parseState.captureChars = true;
+                        }
+                    });
+            staticEndElementHandlers.put("a/b/name",
+                    new EndElementHandler<ParseState>() {
+                        public void handle(ParseState parseState, String uri, String localName, String qName) {
+                            parseState.results.add(new Result(null, parseState.buf.toString(), (NameType) null, 0, false));
+                            parseState.buf = new StringBuilder();
+                            parseState.captureChars = false;
+                        }
+                    });
+        }
+
+        SharedNameParser() {
+            startElementHandlers = staticStartElementHandlers;
+            endElementHandlers = staticEndElementHandlers;
+        }
+
+        @Override
+        public ParseState createParseState() {
+            return new ParseState();
+        }
+    }
+
+    private NameParser parse(String xml) throws Exception {
+        NameParser parser = new NameParser();
+        SAXParserFactory.newInstance().newSAXParser().parse(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8)), parser);
+        return parser;
+    }
+
+    private static InputStream stream(String xml) {
+        return new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> names(List<Result> results) {
+        List<String> names = new ArrayList<>();
+        for (Result result : results) {
+            names.add(result.getName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testDispatchByPath() throws Exception {
+        NameParser parser = parse("<a>" +
+                "<b id=\"1\"><name>one</name><x><name>nested</name></x></b>" +
+                "<c><b id=\"2\"><name>elsewhere</name></b></c>" +
+                "<b id=\"3\"><name>three</name></b>" +
+                "</a>");
+        assertEquals("[one, three]", names(parser.getResults()).toString());
+        assertEquals("[start b 1, end b, start b 3, end b]", parser.events.toString());
+    }
+
+    @Test
+    public void testNamespacePrefixesAreIgnored() throws Exception {
+        NameParser parser = parse("<ns:a xmlns:ns=\"urn:x\"><ns:b id=\"1\"><ns:name>one</ns:name></ns:b>" +
+                "<ns:b id=\"2\"><name>two</name></ns:b></ns:a>");
+        assertEquals("[one, two]", names(parser.getResults()).toString());
+    }
+
+    @Test
+    public void testParserCanBeReused() throws Exception {
+        // a second parse shares the compiled handlers and starts from the root again
+        parse("<b><name>not at root</name></b>");
+        NameParser parser = parse("<a><b><name>one</name></b></a>");
+        assertEquals("[one]", names(parser.getResults()).toString());
+    }
+
+    @Test
+    public void testStaticHandlersAreCompiledOnce() throws Exception {
+        assertSame(new SharedNameParser().getTrie(), new SharedNameParser().getTrie());
+
+        SharedNameParser parser = new SharedNameParser();
+        parser.parse(stream("<a><b><name>one</name></b></a>"));
+        assertEquals("[one]", names(parser.getResults()).toString());
+    }
+
+    @Test
+    public void testInstanceHandlersAreCompiledPerInstance() throws Exception {
+        NameParser first = new NameParser();
+        NameParser second = new NameParser();
+        assertNotSame(first.getTrie(), second.getTrie());
+        // an instance keeps its own trie however many others are parsing
+        assertSame(first.getTrie(), first.getTrie());
+
+        // and one instance's handlers don't end up in another's trie
+        first.parse(stream("<a><b id=\"1\"><name>one</name></b></a>"));
+        second.parse(stream("<a><b id=\"2\"><name>two</name></b></a>"));
+        assertEquals("[start b 1, end b]", first.events.toString());
+        assertEquals("[start b 2, end b]", second.events.toString());
+    }
+
+    @Test
+    public void testPullParse() throws Exception {
+        NameParser parser = new NameParser();
+        assertFalse(parser.parse(stream("<ns:a xmlns:ns=\"urn:x\">" +
+                "<ns:b id=\"1\"><name>o<![CDATA[n]]>e</name><x><name>nested</name></x></ns:b>" +
+                "<c><b id=\"2\"><name>elsewhere</name></b></c>" +
+                "<b id=\"3\"><name>three</name></b>" +
+                "</ns:a>")));
+        assertEquals("[one, three]", names(parser.getResults()).toString());
+        assertEquals("[start b 1, end b, start b 3, end b]", parser.events.toString());
+    }
+
+    @Test
+    public void testPullParseStopsWhenDone() throws Exception {
+        NameParser parser = new NameParser();
+        parser.limit = 1;
+        // the document is cut off after the first result, which would
+        // fail if the parser read any further; parsing stops right after
+        // the element that completed the result
+        assertTrue(parser.parse(stream("<a><b id=\"1\"><name>one</name></b><b id=\"2\"><na")));
+        assertEquals("[one]", names(parser.getResults()).toString());
+        assertEquals("[start b 1]", parser.events.toString());
+    }
+
+    @Test
+    public void testFeedByteAtATime() throws Exception {
+        byte[] xml = ("<ns:a xmlns:ns=\"urn:x\">" +
+                "<ns:b id=\"1\"><name>o\u00efn<![CDATA[<e>]]></name><x><name>nested</name></x></ns:b>" +
+                "<c><b id=\"2\"><name>elsewhere</name></b></c>" +
+                "<b id=\"3\"><name>three</name></b>" +
+                "</ns:a>").getBytes(StandardCharsets.UTF_8);
+        NameParser parser = new NameParser();
+        for (int i = 0; i < xml.length; i++) {
+            assertFalse(parser.feed(xml, i, 1));
+        }
+        parser.endOfInput();
+        assertEquals("[o\u00efn<e>, three]", names(parser.getResults()).toString());
+        assertEquals("[start b 1, end b, start b 3, end b]", parser.events.toString());
+    }
+
+    @Test
+    public void testFeedStopsWhenDone() throws Exception {
+        byte[] xml = "<a><b id=\"1\"><name>one</name></b><b id=\"2\"><name>two</name></b></a>"
+                .getBytes(StandardCharsets.UTF_8);
+        NameParser parser = new NameParser();
+        parser.limit = 1;
+        assertFalse(parser.feed(xml, 0, 10));
+        assertTrue(parser.feed(xml, 10, 20));
+        // anything fed afterwards is ignored
+        assertTrue(parser.feed(xml, 30, xml.length - 30));
+        parser.endOfInput();
+        assertEquals("[one]", names(parser.getResults()).toString());
+    }
+
+    @Test
+    public void testMixedContentIsTheSameInEveryMode() throws Exception {
+        String xml = "<a><b id=\"1\"><name>a <i>b</i> c</name></b></a>";
+
+        assertEquals("[a b c]", names(parse(xml).getResults()).toString());
+
+        NameParser pullParser = new NameParser();
+        pullParser.parse(stream(xml));
+        assertEquals("[a b c]", names(pullParser.getResults()).toString());
+
+        byte[] bytes = xml.getBytes(StandardCharsets.UTF_8);
+        NameParser feedParser = new NameParser();
+        for (int i = 0; i < bytes.length; i++) {
+            feedParser.feed(bytes, i, 1);
+        }
+        feedParser.endOfInput();
+        assertEquals("[a b c]", names(feedParser.getResults()).toString());
+    }
+
+    @Test(expected = XMLStreamException.class)
+    public void testEndOfIncompleteInput() throws Exception {
+        byte[] xml = "<a><b><name>one</name>".getBytes(StandardCharsets.UTF_8);
+        NameParser parser = new NameParser();
+        parser.feed(xml, 0, xml.length);
+        parser.endOfInput();
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.codefork.refine.productsservices;
+
+import com.codefork.refine.resources.Result;
+import org.apache.commons.text.similarity.JaroWinklerDistance;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QuerySolution;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.rdf.model.Model;
+import org.apache.jena.rdf.model.ModelFactory;
+import org.apache.jena.riot.RDFDataMgr;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class LabelIndexTest {
+
+    @Test
+    public void testIndex() {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, "productsservices.ttl");
+
+        LabelIndex index = new LabelIndex(model);
+
+        // every concept in the file has exactly one prefLabel and one altLabel
+        assertEquals(3180, index.size());
+
+        int row = -1;
+        for (int i = 0; i < index.size(); i++) {
+            if ("Bags & Packs".equals(index.getPrefLabel(i))) {
+                row = i;
+            }
+        }
+        assertEquals("BagsPacks", index.getAltLabel(row));
+
+        Result result = index.createResult(row, 0.95);
+        assertEquals("Apparel/ApparelAccessories/BagsPacks", result.getId());
+        assertEquals("Bags & Packs", result.getName());
+        assertEquals("http://www.w3.org/2004/02/skos/core#Concept", result.getType().get(0).getId());
+        assertEquals(0.95, result.getScore(), 0.0);
+        assertFalse(result.isMatch());
+    }
+
+    // the labels are kept exactly as they are in the model, so scoring the
+    // index rows gives the same scores as scoring the rows of the SPARQL
+    // query that searches used to run
+    @Test
+    public void testScoresMatchQueryRows() {
+        Model model = ModelFactory.createDefaultModel();
+        RDFDataMgr.read(model, "productsservices.ttl");
+        LabelIndex index = new LabelIndex(model);
+        JaroWinklerDistance jw = new JaroWinklerDistance();
+        String q = "bags and packs";
+
+        List<String> expected = new ArrayList<>();
+        String sparql = "PREFIX skos: <" + LabelIndex.SKOS_PREFIX + "> " +
+                "SELECT * WHERE { ?s skos:prefLabel ?pref ; skos:altLabel ?alt }";
+        try (QueryExecution qexec = QueryExecutionFactory.create(sparql, model)) {
+            ResultSet rs = qexec.execSelect();
+            while (rs.hasNext()) {
+                QuerySolution solution = rs.next();
+                expected.add(solution.getResource("s").getURI().replace(LabelIndex.ID_PREFIX, "") + " "
+                        + jw.apply(q, solution.getLiteral("pref").getString()) + " "
+                        + jw.apply(q, solution.getLiteral("alt").getString()));
+            }
+        }
+
+        List<String> actual = new ArrayList<>();
+        for (int row = 0; row < index.size(); row++) {
+            actual.add(index.createResult(row, 0).getId() + " "
+                    + jw.apply(q, index.getPrefLabel(row)) + " "
+                    + jw.apply(q, index.getAltLabel(row)));
+        }
+
+        Collections.sort(expected);
+        Collections.sort(actual);
+        assertEquals(expected, actual);
+    }
+
+}
@@ -3,41 +3,145 @@ package com.codefork.refine.viaf;
 import com.codefork.refine.ThreadPool;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class ThreadPoolTest {
 
     @Test
-    public void testShrinkAndGrow() throws Exception {
-        // test shrink and grow, using much smaller wait period times
+    public void testDecreaseAndRecover() throws Exception {
+        ThreadPool pool = new ThreadPool();
+        assertEquals(ThreadPool.INITIAL_POOL_SIZE, pool.getLimit());
+
+        Future<String> future = pool.submit(() -> {
+            throw new IOException("Server returned HTTP response code: 429 for URL: http://localhost");
+        });
+        try {
+            future.get();
+            fail("expected an exception");
+        } catch (ExecutionException e) {
+            // expected
+        }
+        assertEquals(ThreadPool.INITIAL_POOL_SIZE / 2, pool.getLimit());
 
-        long waitPeriodBeforeShrinkingMs = 1000;
-        long waitPeriodBeforeGrowingMs = 2000;
-        long waitPeriodBeforeResetMs = 3600000; // 1 hour
+        // a result can also say the request was dropped
+        pool.submit(() -> "dropped", result -> result.equals("dropped")).get();
+        assertEquals(ThreadPool.INITIAL_POOL_SIZE / 4, pool.getLimit());
 
-        ThreadPool pool = new ThreadPool(waitPeriodBeforeShrinkingMs, waitPeriodBeforeGrowingMs, waitPeriodBeforeResetMs);
-        assertEquals(pool.getPoolSize(), ThreadPool.INITIAL_POOL_SIZE);
+        // grows back to the initial size, and no further
+        for (int i = 0; i < 1000 && pool.getLimit() < ThreadPool.INITIAL_POOL_SIZE; i++) {
+            pool.submit(() -> "ok").get();
+        }
+        assertEquals(ThreadPool.INITIAL_POOL_SIZE, pool.getLimit());
+        for (int i = 0; i < 20; i++) {
+            pool.submit(() -> "ok").get();
+        }
+        assertTrue(pool.getLimit() <= ThreadPool.INITIAL_POOL_SIZE);
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testInFlightStaysWithinLimit() throws Exception {
+        // grows back up to the pool's own size, not INITIAL_POOL_SIZE
+        ThreadPool pool = new ThreadPool(8);
+        pool.submit(() -> "dropped", result -> true).get();
+        assertEquals(4, pool.getLimit());
 
-        pool.shrink();
-        assertEquals(pool.getPoolSize(), ThreadPool.INITIAL_POOL_SIZE - 1);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(pool.submit(() -> {
+                int n = running.incrementAndGet();
+                maxRunning.accumulateAndGet(n, Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        for (Future<Integer> future : futures) {
+            future.get();
+        }
+
+        assertTrue(maxRunning.get() > 4);
+        assertTrue(maxRunning.get() <= 8);
+        assertTrue(pool.getLimit() > 4);
+        assertEquals(0, pool.getInFlight());
+        assertEquals(0, pool.getNumPending());
+
+        pool.shutdown();
+    }
+
+    @Test
+    public void testAsyncTasksCanOutnumberThreads() throws Exception {
+        ThreadPool pool = new ThreadPool(2);
+        pool.setMaxAsyncInFlight(8);
+        assertEquals(2, pool.getPoolSize());
+        assertEquals(8, pool.getLimit());
 
-        // this one shouldn't do anything
-        pool.shrink();
-        assertEquals(pool.getPoolSize(), ThreadPool.INITIAL_POOL_SIZE - 1);
+        ConcurrentLinkedQueue<CompletableFuture<String>> started = new ConcurrentLinkedQueue<>();
+        List<Future<String>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(pool.submitAsync(() -> {
+                CompletableFuture<String> future = new CompletableFuture<>();
+                started.add(future);
+                return future;
+            }, result -> false, 0));
+        }
 
-        // wait a bit, then shrink
-        Thread.sleep(waitPeriodBeforeShrinkingMs + 500);
-        pool.shrink();
-        assertEquals(pool.getPoolSize(), ThreadPool.INITIAL_POOL_SIZE - 2);
+        long deadline = System.currentTimeMillis() + 10000;
+        while (started.size() < 8 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(8, started.size());
+        assertEquals(8, pool.getInFlight());
+        assertEquals(2, pool.getNumPending());
 
-        // this one shouldn't do anything
-        pool.grow();
-        assertEquals(pool.getPoolSize(), ThreadPool.INITIAL_POOL_SIZE - 2);
+        int completed = 0;
+        while (completed < futures.size() && System.currentTimeMillis() < deadline) {
+            CompletableFuture<String> future = started.poll();
+            if (future != null) {
+                future.complete("ok");
+                completed++;
+            } else {
+                Thread.sleep(10);
+            }
+        }
+        for (Future<String> future : futures) {
+            assertEquals("ok", future.get(10, TimeUnit.SECONDS));
+        }
+        assertEquals(0, pool.getInFlight());
 
-        // wait a bit, then grow
-        Thread.sleep(waitPeriodBeforeGrowingMs + 500);
-        pool.grow();
-        assertEquals(pool.getPoolSize(), ThreadPool.INITIAL_POOL_SIZE - 1);
+        // other tasks still get no more than a thread each
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<Future<Integer>> blocking = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            blocking.add(pool.submit(() -> {
+                int n = running.incrementAndGet();
+                maxRunning.accumulateAndGet(n, Math::max);
+                Thread.sleep(5);
+                running.decrementAndGet();
+                return n;
+            }));
+        }
+        for (Future<Integer> future : blocking) {
+            future.get();
+        }
+        assertTrue(maxRunning.get() <= 2);
 
         pool.shutdown();
     }
@@ -0,0 +1,87 @@
+package com.codefork.refine.viaf;
+
+import com.codefork.refine.ApplicationConfig;
+import com.codefork.refine.SearchQuery;
+import com.codefork.refine.ThreadPoolFactory;
+import com.codefork.refine.datasource.ConnectionFactory;
+import com.codefork.refine.resources.Result;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.net.HttpURLConnection;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class VIAFTest {
+
+    private static VIAF createVIAF(HttpURLConnection conn) {
+        ApplicationConfig config = new ApplicationConfig();
+        config.setCache(new ApplicationConfig.Cache());
+        return new VIAF(config, null, new ThreadPoolFactory(), url -> conn);
+    }
+
+    // parsing stops after the last record of a full page, but the short
+    // rest of the response is read so the connection can be reused
+    @Test
+    public void testFullPageKeepsConnection() throws Exception {
+        HttpURLConnection conn = mock(HttpURLConnection.class);
+        ByteArrayInputStream response = new ByteArrayInputStream(
+                IOUtils.toByteArray(getClass().getResourceAsStream("/wittgenstein.xml")));
+        when(conn.getInputStream()).thenReturn(response);
+
+        List<Result> results = createVIAF(conn).search(new SearchQuery("wittgenstein", 3, null, null));
+
+        assertEquals(3, results.size());
+        assertEquals(0, response.available());
+        verify(conn, never()).disconnect();
+    }
+
+    @Test
+    public void testConnectionIsDroppedWhenMuchIsLeftAfterFullPage() throws Exception {
+        HttpURLConnection conn = mock(HttpURLConnection.class);
+        byte[] page = IOUtils.toByteArray(getClass().getResourceAsStream("/wittgenstein.xml"));
+        byte[] padding = new byte[ConnectionFactory.MAX_BYTES_TO_SKIP * 2];
+        Arrays.fill(padding, (byte) ' ');
+        InputStream response = new SequenceInputStream(
+                new ByteArrayInputStream(page), new ByteArrayInputStream(padding));
+        when(conn.getInputStream()).thenReturn(response);
+
+        List<Result> results = createVIAF(conn).search(new SearchQuery("wittgenstein", 3, null, null));
+
+        assertEquals(3, results.size());
+        verify(conn).disconnect();
+    }
+
+    // a response that can't be parsed shouldn't leave its connection
+    // checked out of the pool
+    @Test
+    public void testConnectionIsDroppedWhenParsingFails() throws Exception {
+        HttpURLConnection conn = mock(HttpURLConnection.class);
+        InputStream response = new ByteArrayInputStream(
+                "<searchRetrieveResponse><records><record>".getBytes(StandardCharsets.UTF_8));
+        when(conn.getInputStream()).thenReturn(response);
+
+        VIAF viaf = createVIAF(conn);
+
+        try {
+            viaf.search(new SearchQuery("test", 3, null, null));
+            fail("expected a parse error");
+        } catch (Exception expected) {
+            // fall through
+        }
+
+        verify(conn).disconnect();
+    }
+
+}